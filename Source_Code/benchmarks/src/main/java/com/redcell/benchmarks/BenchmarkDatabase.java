@@ -0,0 +1,148 @@
+package com.redcell.benchmarks;
+
+import com.redcell.DataGenerator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * Generated databases for the benchmarks. Each size is generated once into a template file
+ * (under -Dredcell.bench.dir, default target/bench-db) and every trial works on a fresh copy,
+ * so writes made by one benchmark never leak into the next.
+ *
+ * A database of N rows holds N requests and N donations, N/10 donors and N/1000 facilities,
+ * filled by {@link DataGenerator} with the number of rows as its seed.
+ *
+ * An inventory database of N units spreads about N units of stock in lots over
+ * INVENTORY_FACILITIES facilities, with expiry dates counted from the day it was generated.
+ */
+public final class BenchmarkDatabase {
+
+    public static final String[] BLOOD_TYPES = DataGenerator.BLOOD_TYPES;
+    public static final String[] AREAS = DataGenerator.AREAS;
+
+    public static final int INVENTORY_FACILITIES = 100;
+
+    private static final LocalDate END_DATE = LocalDate.of(2024, 12, 31);
+    // DataGenerator lots hold 1 to 20 units
+    private static final double UNITS_PER_LOT = 10.5;
+
+    private BenchmarkDatabase() {
+    }
+
+    public static int donorCount(int rows) {
+        return Math.max(100, rows / 10);
+    }
+
+    public static int facilityCount(int rows) {
+        return Math.max(10, rows / 1000);
+    }
+
+    public static String donorUsername(int index) {
+        return DataGenerator.donorUsername("", index);
+    }
+
+    public static String facilityUsername(int index) {
+        return DataGenerator.facilityUsername("", index);
+    }
+
+    public static String password(String username) {
+        return DataGenerator.PASSWORD;
+    }
+
+    /**
+     * Copies the template database for this size to a temporary file, generating the template first if needed
+     * @return Path of the copy; delete it with {@link #delete(Path)} when the trial ends
+     */
+    public static Path copyOf(int rows) throws IOException, SQLException {
+        return copy(template("redcell-" + rows, file -> generate(file, rows)), String.valueOf(rows));
+    }
+
+    /**
+     * Copies the inventory database for this many units, generating it first if needed.
+     * The template is generated once per day, so its lots are never already past their expiry.
+     * @return Path of the copy; delete it with {@link #delete(Path)} when the trial ends
+     */
+    public static Path inventoryCopyOf(int units) throws IOException, SQLException {
+        LocalDate today = LocalDate.now();
+        return copy(template("redcell-inventory-" + units + "-" + today, file -> generateInventory(file, units, today)),
+                "inventory-" + units);
+    }
+
+    /**
+     * Deletes a database copy along with its WAL and shared-memory files
+     */
+    public static void delete(Path database) throws IOException {
+        Files.deleteIfExists(database);
+        Files.deleteIfExists(Paths.get(database + "-wal"));
+        Files.deleteIfExists(Paths.get(database + "-shm"));
+    }
+
+    private static Path copy(Path template, String name) throws IOException {
+        Path copy = Files.createTempFile("redcell-bench-" + name + "-", ".db");
+        Files.copy(template, copy, StandardCopyOption.REPLACE_EXISTING);
+        return copy;
+    }
+
+    @FunctionalInterface
+    private interface Generator {
+        void generate(Path file) throws SQLException;
+    }
+
+    private static synchronized Path template(String name, Generator generator) throws IOException, SQLException {
+        Path dir = Paths.get(System.getProperty("redcell.bench.dir", "target/bench-db"));
+        Path template = dir.resolve(name + ".db");
+        if (Files.exists(template)) {
+            return template;
+        }
+        Files.createDirectories(dir);
+        Path partial = dir.resolve(name + ".db.partial");
+        Files.deleteIfExists(partial);
+
+        long start = System.nanoTime();
+        generator.generate(partial);
+        // Only a complete file is ever visible under the template name
+        Files.move(partial, template, StandardCopyOption.ATOMIC_MOVE);
+        System.out.printf("Generated %s in %.1f s%n", template, (System.nanoTime() - start) / 1_000_000_000.0);
+        return template;
+    }
+
+    private static void generate(Path file, int rows) throws SQLException {
+        DataGenerator generator = new DataGenerator(rows);
+        generator.setDonors(donorCount(rows));
+        generator.setFacilities(facilityCount(rows));
+        generator.setRequests(rows);
+        generator.setDonations(rows);
+        // A fixed end date keeps the template identical whenever it is regenerated
+        generator.setEndDate(END_DATE);
+        run(generator, file);
+    }
+
+    private static void generateInventory(Path file, int units, LocalDate today) throws SQLException {
+        DataGenerator generator = new DataGenerator(units);
+        generator.setDonors(100);
+        generator.setFacilities(INVENTORY_FACILITIES);
+        generator.setRequests(0);
+        generator.setDonations(0);
+        generator.setInventoryPerFacility((int) Math.ceil(units / UNITS_PER_LOT / INVENTORY_FACILITIES));
+        generator.setEndDate(today);
+        run(generator, file);
+    }
+
+    private static void run(DataGenerator generator, Path file) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath())) {
+            try (Statement stmt = conn.createStatement()) {
+                // Nothing here needs to survive a crash; the file is renamed only once it is complete
+                stmt.execute("PRAGMA journal_mode = OFF;");
+            }
+            generator.generate(conn);
+        }
+    }
+}
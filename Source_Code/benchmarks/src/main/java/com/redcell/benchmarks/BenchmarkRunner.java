@@ -0,0 +1,178 @@
+package com.redcell.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs a benchmark suite once per thread count and writes the JSON results.
+ * Arguments are key=value pairs, all optional:
+ *
+ *   suite=persistence|model|inventory   which suite to run (default persistence)
+ *   rows=10000,100000,1000000   persistence: database sizes (default 10000)
+ *   units=100000,1000000        inventory: units in stock (default both)
+ *   sizes=50,1000,10000         model: list sizes (default all three)
+ *   threads=1,8                 thread counts, one run and one JSON file each
+ *                               (persistence and inventory default: 1 and the CPU count; model default: 1)
+ *   include=...                 regular expression overriding the suite's benchmarks
+ *   gc=true                     add the GC profiler (always on for the model suite)
+ *   out=target/jmh              directory for the &lt;suite&gt;-&lt;threads&gt;t.json files
+ *   quick=true                  one short warmup and measurement iteration, for smoke runs
+ *   allocBaseline=file          model: fail if bytes allocated per operation grew more than
+ *                               allocTolerance (default 0.10) over this baseline
+ *
+ * The model suite also writes model-alloc.properties (bytes per operation for every benchmark
+ * and size), the format allocBaseline reads, so a run can be promoted to the new baseline.
+ * Plain JMH options are still available with: java -cp benchmarks.jar org.openjdk.jmh.Main
+ */
+public class BenchmarkRunner {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split <= 0) {
+                System.out.println("Ignoring argument " + arg + " (expected key=value)");
+                continue;
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+
+        String suite = options.getOrDefault("suite", "persistence");
+        boolean model = suite.equals("model");
+        boolean inventory = suite.equals("inventory");
+        if (!model && !inventory && !suite.equals("persistence")) {
+            System.out.println("Unknown suite " + suite + " (expected persistence, model or inventory)");
+            System.exit(2);
+        }
+
+        Class<?> benchmark = model ? DomainModelBenchmark.class
+                : inventory ? InventoryAllocationBenchmark.class : PersistenceBenchmark.class;
+        String include = options.getOrDefault("include", benchmark.getSimpleName());
+        String[] threadCounts = options.getOrDefault("threads",
+                model ? "1" : "1," + Runtime.getRuntime().availableProcessors()).split(",");
+        boolean gc = model || Boolean.parseBoolean(options.getOrDefault("gc", "false"));
+        boolean quick = Boolean.parseBoolean(options.getOrDefault("quick", "false"));
+        Path out = Paths.get(options.getOrDefault("out", "target/jmh"));
+        Files.createDirectories(out);
+
+        Map<String, Double> allocations = new TreeMap<>();
+        for (String threadCount : threadCounts) {
+            int threads = Integer.parseInt(threadCount.trim());
+            Path result = out.resolve(suite + "-" + threads + "t.json");
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.toString());
+            if (model) {
+                if (options.containsKey("sizes")) {
+                    builder.param("size", options.get("sizes").split(","));
+                }
+            } else if (inventory) {
+                if (options.containsKey("units")) {
+                    builder.param("units", options.get("units").split(","));
+                }
+            } else {
+                builder.param("rows", options.getOrDefault("rows", "10000").split(","));
+            }
+            if (gc) {
+                builder.addProfiler(GCProfiler.class);
+            }
+            if (quick) {
+                builder.warmupIterations(1).measurementIterations(1)
+                       .warmupTime(TimeValue.seconds(1))
+                       .measurementTime(TimeValue.seconds(1));
+            }
+            Collection<RunResult> results = new Runner(builder.build()).run();
+            System.out.println("Results for " + threads + " thread(s) written to " + result.toAbsolutePath());
+
+            if (model) {
+                for (RunResult run : results) {
+                    Result<?> allocated = run.getSecondaryResults().get(ALLOC_METRIC);
+                    if (allocated != null) {
+                        allocations.put(key(run.getParams(), threads), allocated.getScore());
+                    }
+                }
+            }
+        }
+
+        if (model && !allocations.isEmpty()) {
+            Path allocFile = out.resolve("model-alloc.properties");
+            writeAllocations(allocFile, allocations);
+            System.out.println("Bytes allocated per operation written to " + allocFile.toAbsolutePath());
+            if (options.containsKey("allocBaseline")) {
+                double tolerance = Double.parseDouble(options.getOrDefault("allocTolerance", "0.10"));
+                if (!checkAllocations(Paths.get(options.get("allocBaseline")), allocations, tolerance)) {
+                    System.exit(1);
+                }
+            }
+        }
+    }
+
+    // e.g. DomainModelBenchmark.buildRequests.size.1000.threads.1
+    private static String key(BenchmarkParams params, int threads) {
+        String benchmark = params.getBenchmark();
+        StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+        for (String param : params.getParamsKeys()) {
+            key.append('.').append(param).append('.').append(params.getParam(param));
+        }
+        return key.append(".threads.").append(threads).toString();
+    }
+
+    private static void writeAllocations(Path file, Map<String, Double> allocations) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write("# Bytes allocated per operation (" + ALLOC_METRIC + ")\n");
+            for (Map.Entry<String, Double> entry : allocations.entrySet()) {
+                writer.write(entry.getKey() + "=" + Math.round(entry.getValue()) + "\n");
+            }
+        }
+    }
+
+    /**
+     * @return false if any benchmark present in the baseline now allocates more than the tolerance allows
+     */
+    private static boolean checkAllocations(Path baselineFile, Map<String, Double> allocations,
+                                            double tolerance) throws IOException {
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(baselineFile)) {
+            baseline.load(reader);
+        }
+
+        boolean passed = true;
+        for (Map.Entry<String, Double> entry : allocations.entrySet()) {
+            String expected = baseline.getProperty(entry.getKey());
+            if (expected == null) {
+                continue;
+            }
+            double limit = Double.parseDouble(expected) * (1 + tolerance);
+            if (entry.getValue() > limit) {
+                passed = false;
+                System.out.printf("Allocation regression: %s allocates %.0f B/op, baseline %s B/op (+%.0f%% allowed)%n",
+                        entry.getKey(), entry.getValue(), expected, tolerance * 100);
+            }
+        }
+        System.out.println(passed ? "Allocations are within the baseline" : "Allocations exceed the baseline");
+        return passed;
+    }
+}
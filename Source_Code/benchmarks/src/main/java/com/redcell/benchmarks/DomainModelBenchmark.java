@@ -0,0 +1,106 @@
+package com.redcell.benchmarks;
+
+import com.redcell.Donation;
+import com.redcell.DonationStatus;
+import com.redcell.Donor;
+import com.redcell.Facility;
+import com.redcell.Request;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building lists of domain objects the way the DbHelper mappers and dashboards do.
+ * Run with the GC profiler (BenchmarkRunner suite=model) and read gc.alloc.rate.norm,
+ * the bytes allocated per list, as the memory cost of the object model.
+ *
+ * Sizes: one feed page, a dashboard's worth of rows, and a full pending request index.
+ * The field values are prepared up front so only the model objects themselves are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DomainModelBenchmark {
+
+    @Param({"50", "1000", "10000"})
+    public int size;
+
+    private String[] ids;
+    private String[] names;
+    private String[] bloodTypes;
+    private String[] areas;
+    private String[] dates;
+    private LocalDate[] localDates;
+
+    @Setup
+    public void prepare() {
+        ids = new String[size];
+        names = new String[size];
+        bloodTypes = new String[size];
+        areas = new String[size];
+        dates = new String[size];
+        localDates = new LocalDate[size];
+        LocalDate first = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < size; i++) {
+            ids[i] = String.valueOf(i + 1);
+            names[i] = "Name " + ids[i];
+            bloodTypes[i] = BenchmarkDatabase.BLOOD_TYPES[i % BenchmarkDatabase.BLOOD_TYPES.length];
+            areas[i] = BenchmarkDatabase.AREAS[i % BenchmarkDatabase.AREAS.length];
+            localDates[i] = first.plusDays(i % 365);
+            dates[i] = localDates[i].toString();
+        }
+    }
+
+    @Benchmark
+    public List<Request> buildRequests() {
+        List<Request> requests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            requests.add(new Request(ids[i], bloodTypes[i], 2, "City Hospital", areas[i], "Pending",
+                    dates[i], "Stable", "12:00", "01700000000", "facility1"));
+        }
+        return requests;
+    }
+
+    @Benchmark
+    public List<Donor> buildDonors() {
+        List<Donor> donors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            donors.add(new Donor(names[i], bloodTypes[i], localDates[i], areas[i]));
+        }
+        return donors;
+    }
+
+    @Benchmark
+    public List<Donation> buildDonations() {
+        List<Donation> donations = new ArrayList<>(size);
+        String status = DonationStatus.APPROVED.toString();
+        for (int i = 0; i < size; i++) {
+            donations.add(new Donation(ids[i], bloodTypes[i], 1, null, localDates[i], status, "donor1"));
+        }
+        return donations;
+    }
+
+    @Benchmark
+    public List<Facility> buildFacilities() {
+        List<Facility> facilities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            facilities.add(new Facility(names[i], areas[i]));
+        }
+        return facilities;
+    }
+}
@@ -0,0 +1,135 @@
+package com.redcell.benchmarks;
+
+import com.redcell.Component;
+import com.redcell.DbHelper;
+import com.redcell.InventoryAllocation;
+import com.redcell.InventoryStock;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * First-expiry-first-out allocation throughput against {@code units} units of stock spread over
+ * BenchmarkDatabase.INVENTORY_FACILITIES facilities. Every operation issues one or two units of a
+ * random blood type and component at a random facility, through the write queue, so it includes
+ * the lot updates, the ledger entry and the commit.
+ *
+ * The trial starts with one allocation per facility, blood type and component, so loading the
+ * queues and writing off lots that were already expired happen before the first warmup.
+ * Before each iteration every blood type and component is topped up to at least MIN_UNITS per
+ * facility, so allocations measure issuing rather than running out of rare blood types.
+ * As with PersistenceBenchmark, every trial must run in its own fork.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dredcell.slowQuery.file=target/bench-slow-queries.log"})
+public class InventoryAllocationBenchmark {
+
+    private static final int MIN_UNITS = 16;
+
+    @State(Scope.Benchmark)
+    public static class Stock {
+        @Param({"100000", "1000000"})
+        public int units;
+
+        Path file;
+        private PrintStream console;
+
+        @Setup(Level.Trial)
+        public void open() throws Exception {
+            file = BenchmarkDatabase.inventoryCopyOf(units);
+            System.setProperty("redcell.db.url", "jdbc:sqlite:" + file.toAbsolutePath());
+            if (!Boolean.getBoolean("redcell.bench.verbose")) {
+                // DbHelper logs every unfilled allocation to the console; keep that out of the results
+                console = System.out;
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            }
+            if (!DbHelper.initializeDatabase()) {
+                throw new IllegalStateException("Could not open " + file);
+            }
+            for (int facility = 1; facility <= BenchmarkDatabase.INVENTORY_FACILITIES; facility++) {
+                for (String bloodType : BenchmarkDatabase.BLOOD_TYPES) {
+                    for (Component component : Component.values()) {
+                        DbHelper.allocateInventory(BenchmarkDatabase.facilityUsername(facility), bloodType, component, 1, "warmup");
+                    }
+                }
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void topUp() {
+            LocalDate expiry = LocalDate.now().plusDays(30);
+            for (int facility = 1; facility <= BenchmarkDatabase.INVENTORY_FACILITIES; facility++) {
+                String username = BenchmarkDatabase.facilityUsername(facility);
+                InventoryStock stock = DbHelper.getInventoryStock(username);
+                for (String bloodType : BenchmarkDatabase.BLOOD_TYPES) {
+                    for (Component component : Component.values()) {
+                        int missing = MIN_UNITS - stock.getUnits(bloodType, component);
+                        if (missing > 0) {
+                            DbHelper.receiveInventoryLot(username, bloodType, component, missing + MIN_UNITS, expiry);
+                        }
+                    }
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            DbHelper.shutdown();
+            if (console != null) {
+                System.setOut(console);
+            }
+            BenchmarkDatabase.delete(file);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void init() {
+            random = new SplittableRandom(Thread.currentThread().threadId());
+        }
+
+        String anyFacility() {
+            return BenchmarkDatabase.facilityUsername(1 + random.nextInt(BenchmarkDatabase.INVENTORY_FACILITIES));
+        }
+
+        String anyBloodType() {
+            return BenchmarkDatabase.BLOOD_TYPES[random.nextInt(BenchmarkDatabase.BLOOD_TYPES.length)];
+        }
+
+        Component anyComponent() {
+            return Component.values()[random.nextInt(Component.values().length)];
+        }
+
+        int anyUnits() {
+            return 1 + random.nextInt(2);
+        }
+    }
+
+    @Benchmark
+    public InventoryAllocation allocateInventory(Stock stock, Caller caller) {
+        return DbHelper.allocateInventory(caller.anyFacility(), caller.anyBloodType(), caller.anyComponent(),
+                caller.anyUnits(), "benchmark");
+    }
+}
@@ -0,0 +1,164 @@
+package com.redcell.benchmarks;
+
+import com.redcell.ConcreteUser;
+import com.redcell.DbHelper;
+import com.redcell.Donation;
+import com.redcell.DonationStatus;
+import com.redcell.Request;
+import com.redcell.RequestSearchPage;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DbHelper calls against a generated database of {@code rows} requests and donations.
+ * Run with several thread counts (-t) to compare single-threaded and concurrent behaviour;
+ * BenchmarkRunner does that and writes one JSON result file per thread count.
+ *
+ * DbHelper keeps its pool and caches in static fields and reads the database URL once,
+ * so every trial must run in its own fork (never run with -f 0).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dredcell.slowQuery.file=target/bench-slow-queries.log"})
+public class PersistenceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        @Param({"10000", "100000", "1000000"})
+        public int rows;
+
+        Path file;
+        private PrintStream console;
+
+        @Setup(Level.Trial)
+        public void open() throws Exception {
+            file = BenchmarkDatabase.copyOf(rows);
+            System.setProperty("redcell.db.url", "jdbc:sqlite:" + file.toAbsolutePath());
+            if (!Boolean.getBoolean("redcell.bench.verbose")) {
+                // DbHelper logs every login and insert to the console; keep that out of the results
+                console = System.out;
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            }
+            if (!DbHelper.initializeDatabase()) {
+                throw new IllegalStateException("Could not open " + file);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            DbHelper.shutdown();
+            if (console != null) {
+                System.setOut(console);
+            }
+            BenchmarkDatabase.delete(file);
+        }
+    }
+
+    /**
+     * Loads the in-memory pending request index, for the cached variant of the feed query
+     */
+    @State(Scope.Benchmark)
+    public static class PendingIndex {
+        @Setup(Level.Trial)
+        public void load(Database database) {
+            DbHelper.loadPendingRequestIndex();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        private SplittableRandom random;
+        private int donors;
+        private int facilities;
+
+        @Setup(Level.Trial)
+        public void init(Database database) {
+            random = new SplittableRandom(Thread.currentThread().threadId());
+            donors = BenchmarkDatabase.donorCount(database.rows);
+            facilities = BenchmarkDatabase.facilityCount(database.rows);
+        }
+
+        String anyDonor() {
+            return BenchmarkDatabase.donorUsername(1 + random.nextInt(donors));
+        }
+
+        String anyFacility() {
+            return BenchmarkDatabase.facilityUsername(1 + random.nextInt(facilities));
+        }
+
+        // Half of the lookups are for names that were never registered
+        String anyUsername() {
+            return random.nextBoolean() ? anyDonor() : "nobody" + random.nextInt(donors);
+        }
+
+        // Area names appear in a large share of all requests, the costliest kind of search word
+        String anyArea() {
+            return BenchmarkDatabase.AREAS[random.nextInt(BenchmarkDatabase.AREAS.length)];
+        }
+
+        String anyBloodType() {
+            return BenchmarkDatabase.BLOOD_TYPES[random.nextInt(BenchmarkDatabase.BLOOD_TYPES.length)];
+        }
+    }
+
+    @Benchmark
+    public ConcreteUser authenticateUser(Database database, Caller caller) {
+        String username = caller.anyDonor();
+        return DbHelper.authenticateUser(username, BenchmarkDatabase.password(username));
+    }
+
+    @Benchmark
+    public boolean usernameExists(Database database, Caller caller) {
+        return DbHelper.usernameExists(caller.anyUsername());
+    }
+
+    @Benchmark
+    public boolean createBloodRequest(Database database, Caller caller) {
+        String facility = caller.anyFacility();
+        Request request = new Request(null, caller.anyBloodType(), 2, null, null, "Pending",
+                LocalDate.now().toString(), "Stable", "12:00", "01700000000", facility);
+        return DbHelper.createBloodRequest(request, facility);
+    }
+
+    @Benchmark
+    public boolean createDonation(Database database, Caller caller) {
+        Donation donation = new Donation(null, caller.anyBloodType(), 1, null, LocalDate.now(),
+                DonationStatus.APPROVED.toString());
+        return DbHelper.createDonation(donation, caller.anyDonor());
+    }
+
+    @Benchmark
+    public List<Request> getPendingBloodRequests(Database database) {
+        return DbHelper.getPendingBloodRequests();
+    }
+
+    @Benchmark
+    public List<Request> getPendingBloodRequestsIndexed(Database database, PendingIndex index) {
+        return DbHelper.getPendingBloodRequests();
+    }
+
+    @Benchmark
+    public RequestSearchPage searchRequests(Database database, Caller caller) {
+        return DbHelper.searchRequests(caller.anyArea(), 0, 20);
+    }
+}
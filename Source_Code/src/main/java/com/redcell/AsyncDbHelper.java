@@ -0,0 +1,196 @@
+package com.redcell;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javafx.application.Platform;
+
+/**
+ * Asynchronous variants of the DbHelper operations for use from controllers.
+ * Each call runs on a virtual thread so the JavaFX Application Thread never waits on SQLite.
+ * Writes go straight to the DbHelper write queue. Use {@link #deliver} to get results
+ * back onto the FX thread.
+ */
+public class AsyncDbHelper {
+
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private AsyncDbHelper() {
+    }
+
+    /**
+     * Runs an arbitrary database task on a virtual thread, e.g. several DbHelper calls that belong together
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, EXECUTOR);
+    }
+
+    /**
+     * Hands the outcome of a database future to the JavaFX Application Thread
+     * @param future The pending database result
+     * @param onSuccess Called on the FX thread with the result
+     * @param onError Called on the FX thread if the task threw
+     */
+    public static <T> void deliver(CompletableFuture<T> future, Consumer<? super T> onSuccess, Consumer<Throwable> onError) {
+        future.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                onError.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        }));
+    }
+
+    /**
+     * Subscribes to committed changes with a handler that runs on the JavaFX Application Thread
+     * @return The subscription; cancel it when the view that subscribed goes away
+     */
+    public static <E extends DomainEvent> EventBus.Subscription onEvent(Class<E> type, Consumer<? super E> handler) {
+        return DbHelper.getEventBus().subscribe(type, event -> Platform.runLater(() -> handler.accept(event)));
+    }
+
+    // ==================== USER REGISTRATION AND AUTHENTICATION ====================
+
+    public static CompletableFuture<Boolean> registerUser(String username, String password, String fullName,
+                                                          String email, String phone, String address,
+                                                          String bloodType, String dateOfBirth, String area) {
+        return supply(() -> DbHelper.registerUser(username, password, fullName, email, phone, address,
+                bloodType, dateOfBirth, area));
+    }
+
+    public static CompletableFuture<Boolean> registerFacility(String username, String password, String facilityName,
+                                                              String location, String area) {
+        return supply(() -> DbHelper.registerFacility(username, password, facilityName, location, area));
+    }
+
+    public static CompletableFuture<ConcreteUser> authenticateUser(String username, String password) {
+        return supply(() -> DbHelper.authenticateUser(username, password));
+    }
+
+    public static CompletableFuture<String> getUserRole(String username) {
+        return supply(() -> DbHelper.getUserRole(username));
+    }
+
+    public static CompletableFuture<Boolean> usernameExists(String username) {
+        return supply(() -> DbHelper.usernameExists(username));
+    }
+
+    // ==================== BLOOD REQUEST OPERATIONS ====================
+
+    public static CompletableFuture<Boolean> createBloodRequest(Request request, String facilityUsername) {
+        return DbHelper.submitBloodRequest(request, facilityUsername);
+    }
+
+    public static CompletableFuture<Boolean> updateBloodRequestStatus(int requestId, String status) {
+        return DbHelper.submitBloodRequestStatusUpdate(requestId, status);
+    }
+
+    public static CompletableFuture<List<Request>> getPendingBloodRequests() {
+        return supply(DbHelper::getPendingBloodRequests);
+    }
+
+    public static CompletableFuture<Integer> loadPendingRequestIndex() {
+        return supply(DbHelper::loadPendingRequestIndex);
+    }
+
+    public static CompletableFuture<Integer> loadEligibleDonorIndex() {
+        return supply(DbHelper::loadEligibleDonorIndex);
+    }
+
+    public static CompletableFuture<List<String>> checkQueryPlans() {
+        return supply(DbHelper::checkQueryPlans);
+    }
+
+    public static CompletableFuture<RequestPage> getPendingBloodRequestsPage(String afterDate, int afterId, int pageSize) {
+        return supply(() -> DbHelper.getPendingBloodRequestsPage(afterDate, afterId, pageSize));
+    }
+
+    public static CompletableFuture<RequestPage> getPendingBloodRequestsPage(int bloodTypeMask, String afterDate, int afterId, int pageSize) {
+        return supply(() -> DbHelper.getPendingBloodRequestsPage(bloodTypeMask, afterDate, afterId, pageSize));
+    }
+
+    public static CompletableFuture<Integer> getCompatibleRequestMask(String donorUsername) {
+        return supply(() -> DbHelper.getCompatibleRequestMask(donorUsername));
+    }
+
+    public static CompletableFuture<RequestSearchPage> searchRequests(String text, int offset, int pageSize) {
+        return supply(() -> DbHelper.searchRequests(text, offset, pageSize));
+    }
+
+    public static CompletableFuture<FacilityStats> getFacilityStats(String facilityUsername) {
+        return supply(() -> DbHelper.getFacilityStats(facilityUsername));
+    }
+
+    public static CompletableFuture<Integer> getFacilityId(String facilityUsername) {
+        return supply(() -> DbHelper.getFacilityId(facilityUsername));
+    }
+
+    public static CompletableFuture<InventoryStock> getInventoryStock(String facilityUsername) {
+        return supply(() -> DbHelper.getInventoryStock(facilityUsername));
+    }
+
+    public static CompletableFuture<List<NearbyFacility>> findNearestFacilitiesWithStock(String area, String bloodType,
+                                                                                        Component component, int units, int limit) {
+        return supply(() -> DbHelper.findNearestFacilitiesWithStock(area, bloodType, component, units, limit));
+    }
+
+    public static CompletableFuture<Boolean> recordInventoryMovement(String facilityUsername, String bloodType, Component component,
+                                                                     InventoryMovementType type, int units, String reference) {
+        return DbHelper.submitInventoryMovement(facilityUsername, bloodType, component, type, units, reference);
+    }
+
+    public static CompletableFuture<Boolean> transferInventory(String fromFacilityUsername, String toFacilityUsername,
+                                                               String bloodType, Component component, int units) {
+        return DbHelper.submitInventoryTransfer(fromFacilityUsername, toFacilityUsername, bloodType, component, units);
+    }
+
+    public static CompletableFuture<InventoryAllocation> issueInventoryForRequest(int requestId, Component component) {
+        return DbHelper.submitInventoryIssue(requestId, component);
+    }
+
+    public static CompletableFuture<InventoryAllocation> allocateInventory(String facilityUsername, String bloodType,
+                                                                           Component component, int units, String reference) {
+        return DbHelper.submitInventoryAllocation(facilityUsername, bloodType, component, units, reference);
+    }
+
+    public static CompletableFuture<Boolean> receiveInventoryLot(String facilityUsername, String bloodType, Component component,
+                                                                 int units, LocalDate expiryDate) {
+        return DbHelper.submitInventoryLot(facilityUsername, bloodType, component, units, expiryDate);
+    }
+
+    // ==================== DONATION OPERATIONS ====================
+
+    public static CompletableFuture<Boolean> createDonation(Donation donation, String donorUsername) {
+        return DbHelper.submitDonation(donation, donorUsername);
+    }
+
+    public static CompletableFuture<Boolean> updateDonationStatus(int donationId, String status) {
+        return DbHelper.submitDonationStatusUpdate(donationId, status);
+    }
+
+    public static CompletableFuture<List<Donation>> getDonationHistory(String donorUsername) {
+        return supply(() -> DbHelper.getDonationHistory(donorUsername));
+    }
+
+    public static CompletableFuture<Integer> reevaluateEligibility() {
+        return supply(DbHelper::reevaluateEligibility);
+    }
+
+    public static CompletableFuture<Boolean> isDonorEligible(String donorUsername) {
+        return supply(() -> DbHelper.isDonorEligible(donorUsername));
+    }
+
+    public static CompletableFuture<Boolean> updateDonorStatus(String donorUsername, DonorStatus status) {
+        return DbHelper.submitDonorStatusUpdate(donorUsername, status);
+    }
+
+    public static CompletableFuture<List<Request>> getDonorAlerts(String donorUsername) {
+        return supply(() -> DbHelper.getDonorAlerts(donorUsername));
+    }
+}
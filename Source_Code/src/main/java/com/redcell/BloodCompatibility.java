@@ -0,0 +1,94 @@
+package com.redcell;
+
+/**
+ * ABO/RhD compatibility between donor and recipient blood types, per blood component.
+ *
+ * Every rule is precomputed into two tables of blood type masks (see BloodType): for each
+ * donor the recipients it may supply, and for each recipient the donors it may receive from.
+ * A check is one array read and one AND.
+ *
+ * Rules:
+ * - Whole Blood and RCC/PRBC (red cells): the recipient must not have antibodies against the
+ *   donor's antigens, so A and B antigens of the donor must also be on the recipient's cells,
+ *   and RhD positive cells only go to RhD positive recipients. O- gives to all, AB+ takes from all.
+ * - FFP (plasma): the donor's plasma must not carry antibodies against the recipient's antigens,
+ *   so the ABO rule is reversed and RhD does not apply. AB gives to all, O takes from all.
+ * - SDP (platelets): plasma ABO rule, and RhD negative recipients only from RhD negative donors
+ *   because platelet units carry a few red cells.
+ */
+public final class BloodCompatibility {
+
+    private static final int TYPES = BloodType.values().length;
+    private static final int COMPONENTS = Component.values().length;
+
+    // [component][donor ordinal] -> recipient mask, [component][recipient ordinal] -> donor mask
+    private static final int[][] RECIPIENTS = new int[COMPONENTS][TYPES];
+    private static final int[][] DONORS = new int[COMPONENTS][TYPES];
+
+    static {
+        for (Component component : Component.values()) {
+            for (BloodType donor : BloodType.values()) {
+                for (BloodType recipient : BloodType.values()) {
+                    if (rule(component, donor, recipient)) {
+                        RECIPIENTS[component.ordinal()][donor.ordinal()] |= recipient.mask();
+                        DONORS[component.ordinal()][recipient.ordinal()] |= donor.mask();
+                    }
+                }
+            }
+        }
+    }
+
+    private BloodCompatibility() {
+    }
+
+    /**
+     * @return true if the component from the donor's blood type may be given to the recipient's
+     */
+    public static boolean canDonate(BloodType donor, BloodType recipient, Component component) {
+        return (RECIPIENTS[component.ordinal()][donor.ordinal()] & recipient.mask()) != 0;
+    }
+
+    /**
+     * Same as {@link #canDonate(BloodType, BloodType, Component)} for blood type names as stored in
+     * the database, e.g. "O-"
+     * @return false if either name is not a known blood type
+     */
+    public static boolean canDonate(String donor, String recipient, Component component) {
+        BloodType donorType = BloodType.fromDisplayName(donor);
+        BloodType recipientType = BloodType.fromDisplayName(recipient);
+        return donorType != null && recipientType != null && canDonate(donorType, recipientType, component);
+    }
+
+    /**
+     * @return Mask of every blood type that may receive the component from this donor
+     */
+    public static int recipientsOf(BloodType donor, Component component) {
+        return RECIPIENTS[component.ordinal()][donor.ordinal()];
+    }
+
+    /**
+     * @return Mask of every blood type that may give the component to this recipient
+     */
+    public static int donorsFor(BloodType recipient, Component component) {
+        return DONORS[component.ordinal()][recipient.ordinal()];
+    }
+
+    private static boolean rule(Component component, BloodType donor, BloodType recipient) {
+        switch (component) {
+            case WHOLE_BLOOD:
+            case RCC_PRBC:
+                return redCellsMatch(donor, recipient) && (donor.isRhNegative() || !recipient.isRhNegative());
+            case FFP:
+                return redCellsMatch(recipient, donor);
+            case SDP:
+                return redCellsMatch(recipient, donor) && (donor.isRhNegative() || !recipient.isRhNegative());
+            default:
+                return donor == recipient;
+        }
+    }
+
+    // Every ABO antigen on the cells given is also on the cells of the one receiving them
+    private static boolean redCellsMatch(BloodType cells, BloodType host) {
+        return (!cells.hasAntigenA() || host.hasAntigenA()) && (!cells.hasAntigenB() || host.hasAntigenB());
+    }
+}
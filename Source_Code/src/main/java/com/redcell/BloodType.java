@@ -0,0 +1,108 @@
+package com.redcell;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Enum representing the eight ABO/RhD blood types. A set of blood types is an int bitmask
+ * with bit {@code 1 << ordinal()} for each member, as used by BloodCompatibility.
+ */
+public enum BloodType {
+    O_NEGATIVE("O-"),
+    O_POSITIVE("O+"),
+    A_NEGATIVE("A-"),
+    A_POSITIVE("A+"),
+    B_NEGATIVE("B-"),
+    B_POSITIVE("B+"),
+    AB_NEGATIVE("AB-"),
+    AB_POSITIVE("AB+");
+
+    /**
+     * Mask holding every blood type
+     */
+    public static final int ALL = (1 << values().length) - 1;
+
+    private static final BloodType[] VALUES = values();
+
+    private final String displayName;
+
+    BloodType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    /**
+     * @return This blood type's bit in a blood type mask
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @return true for the RhD negative types
+     */
+    public boolean isRhNegative() {
+        return displayName.endsWith("-");
+    }
+
+    /**
+     * @return true if the red cells carry the A antigen (A and AB)
+     */
+    boolean hasAntigenA() {
+        return displayName.startsWith("A");
+    }
+
+    /**
+     * @return true if the red cells carry the B antigen (B and AB)
+     */
+    boolean hasAntigenB() {
+        return displayName.contains("B");
+    }
+
+    /**
+     * Looks up a blood type by the name stored in the database, e.g. "AB+"; case and
+     * surrounding spaces are ignored
+     * @return The blood type, or null if the name is unknown
+     */
+    public static BloodType fromDisplayName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String trimmed = name.trim();
+        for (BloodType type : VALUES) {
+            if (type.displayName.equalsIgnoreCase(trimmed)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the named blood type is in the mask; unknown names are in no mask
+     */
+    public static boolean inMask(String name, int mask) {
+        BloodType type = fromDisplayName(name);
+        return type != null && (mask & type.mask()) != 0;
+    }
+
+    /**
+     * @return The display names of the blood types in the mask, e.g. for a SQL IN list
+     */
+    public static List<String> namesOf(int mask) {
+        List<String> names = new ArrayList<>(Integer.bitCount(mask & ALL));
+        for (BloodType type : VALUES) {
+            if ((mask & type.mask()) != 0) {
+                names.add(type.displayName);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,234 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.sqlite.SQLiteCommitListener;
+import org.sqlite.SQLiteUpdateListener;
+
+/**
+ * Change-data capture on the writer connection.
+ *
+ * SQLite calls the update hook for every row a statement inserts, updates or deletes, and the
+ * commit hook when a transaction commits. ConnectionPool registers this class for both on its
+ * writer, so it sees every write made through DbHelper, the write queue and the migrator,
+ * whichever call site made it. Changes to the tracked tables are collected per transaction and
+ * sealed into one RowsChanged batch on commit; a rollback discards them, and the write queue
+ * discards those of an operation it rolls back to its savepoint.
+ *
+ * SQLite calls the commit hook just before the commit is written, so sealed batches are only
+ * handed to the sink when the writer connection goes back to the pool, after the commit has
+ * finished. Batches therefore arrive in commit order and readers already see their rows.
+ * A commit that fails after its hook ran (e.g. on a full disk) is still reported; subscribers
+ * then re-read rows that did not change, which costs a read but never leaves them stale.
+ *
+ * The hooks only see this process's writer. For other processes sharing the file, each committed
+ * transaction also bumps the table_versions row of every tracked table it changed, which
+ * DataVersionPoller compares to tell which tables another process changed.
+ */
+public class ChangeCapture implements SQLiteUpdateListener, SQLiteCommitListener {
+
+    /**
+     * The tables whose changes are captured by default: requests, donations, inventory and
+     * the users table with its donor and facility rows
+     */
+    public static final Set<String> DEFAULT_TABLES =
+            Set.of("requests", "donations", "inventory", "users", "donors", "facilities");
+
+    /**
+     * Rows kept per batch; a larger transaction (e.g. a migration) only reports its tables
+     */
+    public static final int DEFAULT_MAX_ROWS = 10_000;
+
+    static final String STAMP_VERSION_SQL =
+        "UPDATE table_versions SET version = version + 1 WHERE table_name = ?";
+
+    public enum Operation { INSERT, UPDATE, DELETE }
+
+    /**
+     * One row written by a committed transaction
+     */
+    public static final class RowChange {
+        private final String table;
+        private final Operation operation;
+        private final long rowId;
+
+        public RowChange(String table, Operation operation, long rowId) {
+            this.table = table;
+            this.operation = operation;
+            this.rowId = rowId;
+        }
+
+        public String getTable() { return table; }
+        public Operation getOperation() { return operation; }
+
+        /**
+         * @return The row's rowid, which is its id column in every tracked table
+         */
+        public long getRowId() { return rowId; }
+
+        @Override
+        public String toString() {
+            return operation + " " + table + "#" + rowId;
+        }
+    }
+
+    private final Set<String> tables;
+    private final int maxRows;
+    private final Consumer<? super DomainEvent.RowsChanged> sink;
+
+    // The open transaction's changes
+    private final List<RowChange> pending = new ArrayList<>();
+    private final Set<String> pendingTables = new LinkedHashSet<>();
+    private boolean pendingOverflowed = false;
+    // Batches whose commit hook has run, waiting for the connection to be released
+    private final List<DomainEvent.RowsChanged> sealed = new ArrayList<>();
+    private long commitSequence = 0;
+    // Off until the schema has table_versions
+    private volatile boolean stampingVersions = false;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder rowCount = new LongAdder();
+    private final LongAdder discardedRowCount = new LongAdder();
+    private final LongAdder overflowCount = new LongAdder();
+
+    /**
+     * @param tables Tables to capture; changes to any other table are ignored
+     * @param maxRows Rows kept per batch before it only reports its tables
+     * @param sink Receives each committed batch, e.g. EventBus::publish; called on the thread
+     *             that released the writer, so it must not wait on the write queue
+     */
+    public ChangeCapture(Collection<String> tables, int maxRows, Consumer<? super DomainEvent.RowsChanged> sink) {
+        this.tables = Set.copyOf(tables);
+        this.maxRows = Math.max(0, maxRows);
+        this.sink = sink;
+    }
+
+    @Override
+    public synchronized void onUpdate(Type type, String database, String table, long rowId) {
+        if (!"main".equals(database) || !tables.contains(table)) {
+            return;
+        }
+        pendingTables.add(table);
+        if (pending.size() < maxRows) {
+            pending.add(new RowChange(table, Operation.valueOf(type.name()), rowId));
+        } else {
+            pendingOverflowed = true;
+        }
+    }
+
+    @Override
+    public synchronized void onCommit() {
+        if (pendingTables.isEmpty()) {
+            return;
+        }
+        if (pendingOverflowed) {
+            overflowCount.increment();
+        }
+        sealed.add(new DomainEvent.RowsChanged(++commitSequence, new ArrayList<>(pending),
+                                                new LinkedHashSet<>(pendingTables), !pendingOverflowed));
+        batchCount.increment();
+        rowCount.add(pending.size());
+        resetPending();
+    }
+
+    @Override
+    public synchronized void onRollback() {
+        discardedRowCount.add(pending.size());
+        resetPending();
+    }
+
+    /**
+     * @return A position in the open transaction's changes, taken before a savepoint
+     */
+    public synchronized int mark() {
+        return pending.size();
+    }
+
+    /**
+     * Discards the changes made since mark(), after a rollback to the savepoint taken there.
+     * Tables the discarded rows touched stay reported, which only costs subscribers a re-read.
+     */
+    public synchronized void rollbackTo(int mark) {
+        if (mark < pending.size()) {
+            discardedRowCount.add(pending.size() - mark);
+            pending.subList(mark, pending.size()).clear();
+        }
+    }
+
+    /**
+     * Turns version stamps on once the schema has the table_versions table (migration 13)
+     */
+    public void setStampingVersions(boolean enabled) {
+        stampingVersions = enabled;
+    }
+
+    /**
+     * Bumps the version of every tracked table the open transaction changed, in that transaction.
+     * Called by ConnectionPool just before the writer commits; one UPDATE per table, not per row.
+     * Writes committed in autocommit mode are not stamped.
+     */
+    public void stampVersions(Connection conn) throws SQLException {
+        if (!stampingVersions) {
+            return;
+        }
+        List<String> changed;
+        synchronized (this) {
+            if (pendingTables.isEmpty()) {
+                return;
+            }
+            changed = new ArrayList<>(pendingTables);
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(STAMP_VERSION_SQL)) {
+            for (String table : changed) {
+                pstmt.setString(1, table);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Hands every sealed batch to the sink, oldest first. Called by ConnectionPool when the
+     * writer connection is released, i.e. after its transactions finished.
+     */
+    public void publishCommitted() {
+        List<DomainEvent.RowsChanged> batches;
+        synchronized (this) {
+            if (sealed.isEmpty()) {
+                return;
+            }
+            batches = new ArrayList<>(sealed);
+            sealed.clear();
+        }
+        for (DomainEvent.RowsChanged batch : batches) {
+            sink.accept(batch);
+        }
+    }
+
+    private void resetPending() {
+        pending.clear();
+        pendingTables.clear();
+        pendingOverflowed = false;
+    }
+
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(tables);
+    }
+
+    public long getBatchCount() { return batchCount.sum(); }
+    public long getRowCount() { return rowCount.sum(); }
+
+    public String describeStats() {
+        return String.format("batches=%d, rows=%d, discardedRows=%d, overflowedBatches=%d",
+                getBatchCount(), getRowCount(), discardedRowCount.sum(), overflowCount.sum());
+    }
+}
@@ -23,4 +23,17 @@ public enum Component {
     public String toString() {
         return displayName;
     }
+
+    /**
+     * Looks up a component by the display name stored in the database
+     * @return The component, or null if the name is unknown
+     */
+    public static Component fromDisplayName(String name) {
+        for (Component component : values()) {
+            if (component.displayName.equals(name)) {
+                return component;
+            }
+        }
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,389 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sqlite.SQLiteConnection;
+
+/**
+ * Small pool of long-lived SQLite connections used by DbHelper.
+ * A single writer connection serializes all writes, while several read-only
+ * connections serve queries so dashboard reads never wait behind an insert.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    public static final int DEFAULT_READER_COUNT = 4;
+    private static final long ACQUIRE_TIMEOUT_MS = 30_000;
+
+    // Applied once to every connection when it is opened
+    private static final String[] CONNECTION_PRAGMAS = {
+        "PRAGMA journal_mode = WAL;",
+        "PRAGMA synchronous = NORMAL;",
+        "PRAGMA cache_size = -8192;",       // 8 MB page cache per connection
+        "PRAGMA mmap_size = 67108864;",     // 64 MB of memory-mapped I/O
+        "PRAGMA temp_store = MEMORY;",
+        "PRAGMA busy_timeout = 5000;"
+    };
+
+    private final String url;
+    private final BlockingQueue<PooledConnection> writer = new ArrayBlockingQueue<>(1);
+    private final BlockingQueue<PooledConnection> readers;
+    private final int readerCount;
+    private final AtomicInteger openedReaders = new AtomicInteger();
+    private final List<PooledConnection> allConnections = new CopyOnWriteArrayList<>();
+    private final PooledConnection writerConnection;
+    private volatile ChangeCapture changeCapture;
+
+    // Pool statistics
+    private final LongAdder checkoutCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    private static final LatencyHistogram writerWaitTimer = Metrics.timer("pool.wait.writer");
+    private static final LatencyHistogram readerWaitTimer = Metrics.timer("pool.wait.reader");
+
+    // Bumped whenever the schema changes so every connection drops its cached statements
+    private final AtomicInteger schemaEpoch = new AtomicInteger();
+
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, int readerCount) throws SQLException {
+        this.url = url;
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        this.readerCount = readerCount;
+
+        // The writer is opened first so it is the connection that switches the file to WAL.
+        // Readers are opened on first demand so startup only pays for one connection.
+        writerConnection = new PooledConnection(open(false), true);
+        allConnections.add(writerConnection);
+        writer.add(writerConnection);
+        System.out.println("Connection pool opened with 1 writer and up to " + readerCount + " reader connections.");
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            for (String pragma : CONNECTION_PRAGMAS) {
+                stmt.execute(pragma);
+            }
+            if (readOnly) {
+                stmt.execute("PRAGMA query_only = ON;");
+            }
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Checks out the writer connection, waiting until the current holder returns it
+     * @return A connection handle that returns itself to the pool on close()
+     */
+    public Connection acquireWriter() throws SQLException {
+        return acquire(writer, "writer", writerWaitTimer);
+    }
+
+    /**
+     * Checks out the writer connection only if nobody holds it, e.g. for a periodic check
+     * that can as well run next time
+     * @return A connection handle, or null if the writer is in use
+     */
+    public Connection tryAcquireWriter() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        PooledConnection pooled = writer.poll();
+        if (pooled == null) {
+            return null;
+        }
+        checkoutCount.increment();
+        return checkout(pooled);
+    }
+
+    /**
+     * Checks out one of the read-only connections
+     * @return A connection handle that returns itself to the pool on close()
+     */
+    public Connection acquireReader() throws SQLException {
+        if (readers.isEmpty()) {
+            openReaderIfBelowLimit();
+        }
+        return acquire(readers, "reader", readerWaitTimer);
+    }
+
+    private void openReaderIfBelowLimit() throws SQLException {
+        int opened = openedReaders.get();
+        while (opened < readerCount) {
+            if (openedReaders.compareAndSet(opened, opened + 1)) {
+                PooledConnection reader;
+                try {
+                    reader = new PooledConnection(open(true), false);
+                } catch (SQLException e) {
+                    openedReaders.decrementAndGet();
+                    throw e;
+                }
+                allConnections.add(reader);
+                readers.offer(reader);
+                return;
+            }
+            opened = openedReaders.get();
+        }
+    }
+
+    private Connection acquire(BlockingQueue<PooledConnection> queue, String kind, LatencyHistogram waitTimer) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        PooledConnection pooled;
+        try {
+            pooled = queue.poll(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a " + kind + " connection");
+        }
+        long waited = System.nanoTime() - start;
+
+        checkoutCount.increment();
+        totalWaitNanos.add(waited);
+        waitTimer.record(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        if (pooled == null) {
+            throw new SQLException("Timed out waiting for a " + kind + " connection");
+        }
+        return checkout(pooled);
+    }
+
+    private Connection checkout(PooledConnection pooled) {
+        activeConnections.incrementAndGet();
+        if (pooled.seenSchemaEpoch != schemaEpoch.get()) {
+            pooled.seenSchemaEpoch = schemaEpoch.get();
+            pooled.statementCache.invalidate();
+        }
+        return pooled.checkout();
+    }
+
+    private void release(PooledConnection pooled) {
+        activeConnections.decrementAndGet();
+        try {
+            // Never hand out a connection with a half-finished transaction
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error resetting pooled connection: " + e.getMessage());
+        }
+
+        // Every transaction on the writer has finished, so the batches it sealed have committed
+        if (pooled.writer && changeCapture != null) {
+            changeCapture.publishCommitted();
+        }
+
+        if (closed) {
+            closeQuietly(pooled.connection);
+            return;
+        }
+        if (pooled.writer) {
+            writer.offer(pooled);
+        } else {
+            readers.offer(pooled);
+        }
+    }
+
+    /**
+     * Registers change capture on the writer connection, so it sees every row written through
+     * the pool. Call it before the writer is first checked out.
+     */
+    public void captureChanges(ChangeCapture capture) throws SQLException {
+        if (!(writerConnection.connection instanceof SQLiteConnection)) {
+            throw new SQLException("Change capture needs a SQLite connection");
+        }
+        SQLiteConnection sqlite = (SQLiteConnection) writerConnection.connection;
+        sqlite.addUpdateListener(capture);
+        sqlite.addCommitListener(capture);
+        changeCapture = capture;
+    }
+
+    /**
+     * @return The change capture on the writer, or null if none is registered
+     */
+    public ChangeCapture getChangeCapture() {
+        return changeCapture;
+    }
+
+    /**
+     * Marks every connection's statement cache as stale. Each connection clears its cache
+     * the next time it is checked out, so call this after any DDL has been run.
+     */
+    public void invalidateStatementCaches() {
+        schemaEpoch.incrementAndGet();
+    }
+
+    // ==================== STATISTICS ====================
+
+    public long getCheckoutCount() {
+        return checkoutCount.sum();
+    }
+
+    public double getTotalWaitMillis() {
+        return totalWaitNanos.sum() / 1_000_000.0;
+    }
+
+    public double getAverageWaitMillis() {
+        long count = checkoutCount.sum();
+        return count == 0 ? 0 : getTotalWaitMillis() / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public int getIdleReaders() {
+        return readers.size();
+    }
+
+    public long getStatementCacheHits() {
+        long total = 0;
+        for (PooledConnection pooled : allConnections) {
+            total += pooled.statementCache.getHitCount();
+        }
+        return total;
+    }
+
+    public long getStatementCacheMisses() {
+        long total = 0;
+        for (PooledConnection pooled : allConnections) {
+            total += pooled.statementCache.getMissCount();
+        }
+        return total;
+    }
+
+    public String describeStats() {
+        return String.format("checkouts=%d, active=%d, idleReaders=%d, avgWait=%.3f ms, maxWait=%.3f ms, "
+                + "statementCache hits=%d misses=%d",
+                getCheckoutCount(), getActiveConnections(), getIdleReaders(),
+                getAverageWaitMillis(), getMaxWaitMillis(),
+                getStatementCacheHits(), getStatementCacheMisses());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // Connections that are checked out are closed when they are released
+        for (PooledConnection pooled : allConnections) {
+            if (writer.remove(pooled) || readers.remove(pooled)) {
+                closeQuietly(pooled.connection);
+            }
+        }
+        System.out.println("Connection pool closed. " + describeStats());
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool. Each checkout hands out a fresh handle
+     * so a handle that was already closed cannot be used to reach the connection again.
+     */
+    private class PooledConnection {
+        private final Connection connection;
+        private final boolean writer;
+        private final StatementCache statementCache;
+        private int seenSchemaEpoch;
+
+        PooledConnection(Connection connection, boolean writer) {
+            this.connection = connection;
+            this.writer = writer;
+            this.statementCache = new StatementCache(connection, StatementCache.DEFAULT_CAPACITY);
+            this.seenSchemaEpoch = schemaEpoch.get();
+        }
+
+        Connection checkout() {
+            return new Handle(this);
+        }
+    }
+
+    /**
+     * What callers actually receive from acquireWriter()/acquireReader()
+     */
+    private class Handle extends DelegatingConnection {
+        private final PooledConnection pooled;
+        private boolean released = false;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        protected Connection delegate() throws SQLException {
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            return pooled.connection;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(pooled);
+            }
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            // Other processes' pollers read the stamps to tell which tables changed
+            if (pooled.writer && changeCapture != null) {
+                changeCapture.stampVersions(this);
+            }
+            delegate().commit();
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return released || pooled.connection.isClosed();
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            return prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            delegate();
+            PreparedStatement stmt = pooled.statementCache.prepare(sql, autoGeneratedKeys);
+            return SlowQueryLog.isEnabled() ? SlowQueryLog.profile(stmt, sql, pooled.connection) : stmt;
+        }
+
+        @Override
+        public String toString() {
+            return "Pooled" + (pooled.writer ? "Writer" : "Reader") + "[" + pooled.connection + "]";
+        }
+    }
+}
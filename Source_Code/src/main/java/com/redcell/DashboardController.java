@@ -67,12 +67,23 @@ public class DashboardController {
         updateNotificationCount();
 
         refreshNotifications();
+        
+        // New requests may have alerted the logged-in donor
+        if (requestAlerts != null) {
+            requestAlerts.cancel();
+        }
+        requestAlerts = AsyncDbHelper.onEvent(DomainEvent.RequestCreated.class, event -> {
+            if (isLoggedIn) {
+                refreshNotifications();
+            }
+        });
 
         // Update UI based on initial login state
         updateUIForLoggedInState(isLoggedIn);
     }
 
     private String loggedInUsername = "Guest"; // Default to Guest
+    private EventBus.Subscription requestAlerts;
 
     public void setLoggedIn(boolean loggedIn) {
         isLoggedIn = loggedIn;
@@ -292,7 +303,16 @@ public class DashboardController {
         contactDialog.showAndWait();
     }
 
+    @FXML
+    private void handleVersionClicked(javafx.scene.input.MouseEvent event) {
+        // Hidden entry point for the diagnostics view
+        if (event.getClickCount() == 2) {
+            loadView("diagnostics");
+        }
+    }
+
     public <T> T loadView(String viewName) {
+        long start = System.nanoTime();
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/" + viewName + ".fxml"));
             Parent view = loader.load();
@@ -313,6 +333,8 @@ public class DashboardController {
             e.printStackTrace();
             System.err.println("Error loading " + viewName + " view: " + e.getMessage());
             return null;
+        } finally {
+            Metrics.recordSince("view.load." + viewName, start);
         }
     }
 
@@ -354,9 +376,14 @@ public class DashboardController {
         if (!isLoggedIn) {
             addDefaultNotification();
         } else {
-            // Add some sample notifications
-            addNotification("Blood Request", "New A+ blood request from City Hospital");
-            addNotification("Donation Reminder", "Your next donation date is approaching");
+            // Requests this donor was alerted about as an eligible donor in the area
+            AsyncDbHelper.deliver(AsyncDbHelper.getDonorAlerts(loggedInUsername), alerts -> {
+                for (Request request : alerts) {
+                    addNotification("Blood Request", "New " + request.getBloodType() + " blood request from "
+                            + request.getHospital() + " (" + request.getUnits() + " units)");
+                }
+                updateNotificationCount();
+            }, error -> System.out.println("Error loading donor alerts: " + error.getMessage()));
         }
         updateNotificationCount();
     }
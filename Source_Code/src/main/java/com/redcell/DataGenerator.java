@@ -0,0 +1,477 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Fills a RedCell database with synthetic data for scale testing.
+ *
+ * Every table is populated with configurable volumes and realistic distributions: blood types
+ * follow population frequencies, areas are Zipf-skewed towards a few busy neighbourhoods,
+ * activity grows over the covered years, a minority of donors make most donations, and only
+ * recent requests are still pending. Rows are inserted with batched statements inside large
+ * transactions, and the same seed and end date always produce the same database.
+ *
+ * Usage (all arguments optional, key=value):
+ *   java -cp ... com.redcell.DataGenerator db=/tmp/redcell-large.db donors=100000 facilities=500
+ *        requests=1000000 donations=1000000 seed=42
+ * or: mvn -q compile exec:java -Dexec.mainClass=com.redcell.DataGenerator -Dexec.args="db=/tmp/large.db"
+ */
+public class DataGenerator {
+
+    public static final String PASSWORD = "password";
+
+    public static final String[] BLOOD_TYPES = {"O+", "B+", "A+", "AB+", "O-", "B-", "A-", "AB-"};
+    // Share of the population with each of BLOOD_TYPES, summing to 1
+    private static final double[] BLOOD_TYPE_FREQUENCIES = {0.31, 0.30, 0.24, 0.09, 0.02, 0.02, 0.015, 0.005};
+
+    // Ordered from busiest to quietest; picked with a Zipf distribution
+    public static final String[] AREAS = {
+        "Mirpur", "Dhanmondi", "Uttara", "Mohammadpur", "Gulshan", "Banani", "Motijheel",
+        "Old Dhaka", "Badda", "Tejgaon", "Khilgaon", "Bashundhara"
+    };
+
+    private static final String[] CONDITIONS = {
+        "Surgery", "Severe Anemia", "Trauma Injury", "Thalassemia", "Dengue", "Postpartum Hemorrhage",
+        "Cancer Treatment", "Kidney Dialysis", "Planned Transplant", "Accident"
+    };
+
+    private static final String[] FIRST_NAMES = {
+        "Rahim", "Karim", "Ayesha", "Fatema", "Nusrat", "Tanvir", "Sadia", "Imran", "Farhan", "Nadia",
+        "Arif", "Sumaiya", "Rashed", "Mitu", "Jamal", "Tania", "Sabbir", "Shirin", "Hasan", "Lamia"
+    };
+
+    private static final String[] LAST_NAMES = {
+        "Ahmed", "Hossain", "Islam", "Rahman", "Khan", "Chowdhury", "Akter", "Uddin", "Sarkar", "Begum"
+    };
+
+    private static final String[] FACILITY_KINDS = {"Hospital", "Medical College", "Clinic", "Blood Bank", "Diagnostic Center"};
+
+    // Requests newer than this are mostly still open
+    private static final int RECENT_DAYS = 30;
+    private static final double RECENT_PENDING_SHARE = 0.7;
+    private static final int BATCH_SIZE = 10_000;
+    private static final int ROWS_PER_TRANSACTION = 200_000;
+
+    private final long seed;
+    private int donors = 10_000;
+    private int facilities = 100;
+    private int requests = 50_000;
+    private int donations = 50_000;
+    private int inventoryPerFacility = 20;
+    private double linkedDonationShare = 0.3;
+    private int years = 5;
+    private LocalDate endDate = LocalDate.now();
+    private String usernamePrefix = "";
+
+    private SplittableRandom random;
+    private double[] areaWeights;
+    private int rowsInTransaction;
+
+    public DataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setDonors(int donors) { this.donors = donors; }
+    public void setFacilities(int facilities) { this.facilities = Math.max(1, facilities); }
+    public void setRequests(int requests) { this.requests = requests; }
+    public void setDonations(int donations) { this.donations = donations; }
+    public void setInventoryPerFacility(int inventoryPerFacility) { this.inventoryPerFacility = inventoryPerFacility; }
+    public void setLinkedDonationShare(double linkedDonationShare) { this.linkedDonationShare = linkedDonationShare; }
+    public void setYears(int years) { this.years = Math.max(1, years); }
+    public void setEndDate(LocalDate endDate) { this.endDate = endDate; }
+    public void setUsernamePrefix(String usernamePrefix) { this.usernamePrefix = usernamePrefix; }
+
+    /**
+     * Donors log in as {prefix}donor1 ... {prefix}donorN, all with PASSWORD
+     */
+    public static String donorUsername(String prefix, int index) {
+        return prefix + "donor" + index;
+    }
+
+    /**
+     * Facilities log in as {prefix}facility1 ... {prefix}facilityN, all with PASSWORD
+     */
+    public static String facilityUsername(String prefix, int index) {
+        return prefix + "facility" + index;
+    }
+
+    /**
+     * Brings the schema up to date and appends the generated rows. Existing rows are kept;
+     * new ids continue after the current maximum of each table.
+     * @throws SQLException if the database cannot be written, e.g. because the usernames already exist
+     */
+    public void generate(Connection conn) throws SQLException {
+        random = new SplittableRandom(seed);
+        areaWeights = zipfWeights(AREAS.length);
+        SchemaMigrator.migrate(conn);
+
+        try (Statement stmt = conn.createStatement()) {
+            // The generated data can always be generated again, so trade durability for speed
+            stmt.execute("PRAGMA synchronous = OFF;");
+            stmt.execute("PRAGMA cache_size = -262144;");
+            stmt.execute("PRAGMA temp_store = MEMORY;");
+        }
+        if (usernameTaken(conn, facilityUsername(usernamePrefix, 1)) || usernameTaken(conn, donorUsername(usernamePrefix, 1))) {
+            throw new SQLException("Generated usernames already exist; pass another prefix");
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            int userBase = maxId(conn, "users");
+            int facilityBase = maxId(conn, "facilities");
+            int donorBase = maxId(conn, "donors");
+            int requestBase = maxId(conn, "requests");
+            int donationBase = maxId(conn, "donations");
+            int inventoryBase = maxId(conn, "inventory");
+
+            long start = System.nanoTime();
+            insertFacilities(conn, userBase, facilityBase);
+            report("facilities", facilities, start);
+
+            start = System.nanoTime();
+            int[] donorBloodType = new int[donors];
+            int[] lastDonationDay = new int[donors];
+            insertDonors(conn, userBase + facilities, donorBase, donorBloodType);
+            report("donors", donors, start);
+
+            start = System.nanoTime();
+            insertRequests(conn, requestBase, facilityBase);
+            report("requests", requests, start);
+
+            start = System.nanoTime();
+            int linked = insertDonations(conn, donationBase, donorBase, requestBase, donorBloodType, lastDonationDay);
+            report("donations", donations, start);
+            System.out.println("Linked " + linked + " donations to requests");
+
+            start = System.nanoTime();
+            updateLastDonationDates(conn, donorBase, lastDonationDay);
+            report("donor last donation dates", donors, start);
+
+            start = System.nanoTime();
+            insertInventory(conn, facilityBase);
+            report("inventory rows", facilities * inventoryPerFacility, start);
+
+            // The lots become opening balances in the inventory ledger
+            start = System.nanoTime();
+            try (Statement stmt = conn.createStatement()) {
+                SchemaMigrator.recordInventoryOpeningBalances(stmt, inventoryBase);
+            }
+            report("inventory ledger entries", facilities * inventoryPerFacility, start);
+
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void insertFacilities(Connection conn, int userBase, int facilityBase) throws SQLException {
+        try (PreparedStatement users = conn.prepareStatement(
+                     "INSERT INTO users (id, username, password, role, name, area) VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement rows = conn.prepareStatement(
+                     "INSERT INTO facilities (id, user_id, name, location) VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= facilities; i++) {
+                int area = pick(areaWeights);
+                String name = AREAS[area] + " " + FACILITY_KINDS[random.nextInt(FACILITY_KINDS.length)] + " " + i;
+                addUser(users, userBase + i, facilityUsername(usernamePrefix, i), "FACILITY", name, AREAS[area]);
+                rows.setInt(1, facilityBase + i);
+                rows.setInt(2, userBase + i);
+                rows.setString(3, name);
+                rows.setString(4, AREAS[area] + ", Dhaka");
+                rows.addBatch();
+                if (i % BATCH_SIZE == 0) {
+                    flush(conn, 2 * BATCH_SIZE, users, rows);
+                }
+            }
+            flush(conn, 0, users, rows);
+        }
+    }
+
+    private void insertDonors(Connection conn, int userBase, int donorBase, int[] donorBloodType) throws SQLException {
+        try (PreparedStatement users = conn.prepareStatement(
+                     "INSERT INTO users (id, username, password, role, name, area) VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement rows = conn.prepareStatement(
+                     "INSERT INTO donors (id, user_id, blood_group, last_donation_date) VALUES (?, ?, ?, NULL)")) {
+            for (int i = 1; i <= donors; i++) {
+                int bloodType = pick(BLOOD_TYPE_FREQUENCIES);
+                donorBloodType[i - 1] = bloodType;
+                String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                        + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                addUser(users, userBase + i, donorUsername(usernamePrefix, i), "DONOR", name, AREAS[pick(areaWeights)]);
+                rows.setInt(1, donorBase + i);
+                rows.setInt(2, userBase + i);
+                rows.setString(3, BLOOD_TYPES[bloodType]);
+                rows.addBatch();
+                if (i % BATCH_SIZE == 0) {
+                    flush(conn, 2 * BATCH_SIZE, users, rows);
+                }
+            }
+            flush(conn, 0, users, rows);
+        }
+    }
+
+    private void insertRequests(Connection conn, int requestBase, int facilityBase) throws SQLException {
+        try (PreparedStatement rows = conn.prepareStatement(
+                "INSERT INTO requests (id, facility_id, blood_type, quantity, status, patient_condition, " +
+                "time, contact, created_by, date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= requests; i++) {
+                int facility = 1 + random.nextInt(facilities);
+                int daysAgo = daysAgo();
+                rows.setInt(1, requestBase + i);
+                rows.setInt(2, facilityBase + facility);
+                rows.setString(3, BLOOD_TYPES[pick(BLOOD_TYPE_FREQUENCIES)]);
+                rows.setInt(4, 1 + Math.min(5, (int) (-Math.log(1 - random.nextDouble()) * 1.2)));
+                rows.setString(5, requestStatus(daysAgo));
+                rows.setString(6, CONDITIONS[random.nextInt(CONDITIONS.length)]);
+                rows.setString(7, String.format("%02d:%02d", random.nextInt(24), random.nextInt(60)));
+                rows.setString(8, "01" + (3 + random.nextInt(7)) + String.format("%08d", random.nextInt(100_000_000)));
+                rows.setString(9, facilityUsername(usernamePrefix, facility));
+                rows.setString(10, endDate.minusDays(daysAgo).toString());
+                rows.addBatch();
+                if (i % BATCH_SIZE == 0) {
+                    flush(conn, BATCH_SIZE, rows);
+                }
+            }
+            flush(conn, 0, rows);
+        }
+    }
+
+    /**
+     * @return How many donations were linked to a request in donation_requests
+     */
+    private int insertDonations(Connection conn, int donationBase, int donorBase, int requestBase,
+                                int[] donorBloodType, int[] lastDonationDay) throws SQLException {
+        int linked = 0;
+        long endDay = endDate.toEpochDay();
+        try (PreparedStatement rows = conn.prepareStatement(
+                     "INSERT INTO donations (id, donor_id, date, blood_type, quantity, status) VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement links = conn.prepareStatement(
+                     "INSERT INTO donation_requests (donation_id, request_id, quantity, date) VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= donations; i++) {
+                // Squaring a uniform value makes low donor numbers far more frequent: regular donors
+                int donor = (int) (donors * Math.pow(random.nextDouble(), 2));
+                int day = (int) (endDay - daysAgo());
+                lastDonationDay[donor] = Math.max(lastDonationDay[donor], day);
+                String date = LocalDate.ofEpochDay(day).toString();
+
+                rows.setInt(1, donationBase + i);
+                rows.setInt(2, donorBase + donor + 1);
+                rows.setString(3, date);
+                rows.setString(4, BLOOD_TYPES[donorBloodType[donor]]);
+                rows.setInt(5, 1);
+                rows.setString(6, donationStatus(endDay - day));
+                rows.addBatch();
+
+                if (requests > 0 && random.nextDouble() < linkedDonationShare) {
+                    links.setInt(1, donationBase + i);
+                    links.setInt(2, requestBase + 1 + random.nextInt(requests));
+                    links.setInt(3, 1);
+                    links.setString(4, date);
+                    links.addBatch();
+                    linked++;
+                }
+                if (i % BATCH_SIZE == 0) {
+                    flush(conn, BATCH_SIZE, rows, links);
+                }
+            }
+            flush(conn, 0, rows, links);
+        }
+        return linked;
+    }
+
+    private void updateLastDonationDates(Connection conn, int donorBase, int[] lastDonationDay) throws SQLException {
+        try (PreparedStatement rows = conn.prepareStatement("UPDATE donors SET last_donation_date = ? WHERE id = ?")) {
+            int pending = 0;
+            for (int i = 0; i < donors; i++) {
+                if (lastDonationDay[i] == 0) {
+                    continue;
+                }
+                rows.setString(1, LocalDate.ofEpochDay(lastDonationDay[i]).toString());
+                rows.setInt(2, donorBase + i + 1);
+                rows.addBatch();
+                if (++pending % BATCH_SIZE == 0) {
+                    flush(conn, BATCH_SIZE, rows);
+                }
+            }
+            flush(conn, 0, rows);
+        }
+    }
+
+    private void insertInventory(Connection conn, int facilityBase) throws SQLException {
+        Component[] components = Component.values();
+        try (PreparedStatement rows = conn.prepareStatement(
+                "INSERT INTO inventory (facility_id, blood_type, component_type, quantity, expiry_date) VALUES (?, ?, ?, ?, ?)")) {
+            int count = 0;
+            for (int facility = 1; facility <= facilities; facility++) {
+                for (int lot = 0; lot < inventoryPerFacility; lot++) {
+                    Component component = components[random.nextInt(components.length)];
+                    rows.setInt(1, facilityBase + facility);
+                    rows.setString(2, BLOOD_TYPES[pick(BLOOD_TYPE_FREQUENCIES)]);
+                    rows.setString(3, component.toString());
+                    rows.setInt(4, 1 + random.nextInt(20));
+                    // A few lots are already past their expiry date
+                    rows.setString(5, endDate.plusDays(random.nextInt(shelfLifeDays(component) + 7) - 7).toString());
+                    rows.addBatch();
+                    if (++count % BATCH_SIZE == 0) {
+                        flush(conn, BATCH_SIZE, rows);
+                    }
+                }
+            }
+            flush(conn, 0, rows);
+        }
+    }
+
+    private static int shelfLifeDays(Component component) {
+        switch (component) {
+            case SDP: return 5;
+            case FFP: return 365;
+            default: return 35;
+        }
+    }
+
+    // Activity grows over the years: the density of dates rises linearly towards the end date
+    private int daysAgo() {
+        int span = years * 365;
+        return (int) (span * (1 - Math.sqrt(random.nextDouble())));
+    }
+
+    private String requestStatus(int daysAgo) {
+        if (daysAgo <= RECENT_DAYS && random.nextDouble() < RECENT_PENDING_SHARE) {
+            return random.nextInt(10) == 0 ? "Processing" : "Pending";
+        }
+        return random.nextDouble() < 0.85 ? "Completed" : "Cancelled";
+    }
+
+    private String donationStatus(long daysAgo) {
+        if (daysAgo <= 2) {
+            return DonationStatus.APPROVED.toString();
+        }
+        double roll = random.nextDouble();
+        return (roll < 0.9 ? DonationStatus.COMPLETED
+                : roll < 0.95 ? DonationStatus.NOT_COMPLETED
+                : DonationStatus.REJECTED).toString();
+    }
+
+    // Cumulative weights for a Zipf distribution with exponent 1 over n items
+    private static double[] zipfWeights(int n) {
+        double[] weights = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1.0 / (i + 1);
+        }
+        for (int i = 0; i < n; i++) {
+            weights[i] = (1.0 / (i + 1)) / total;
+        }
+        return weights;
+    }
+
+    // Index drawn according to the weights, which sum to 1
+    private int pick(double[] weights) {
+        double roll = random.nextDouble();
+        for (int i = 0; i < weights.length - 1; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private void addUser(PreparedStatement users, int id, String username, String role,
+                         String name, String area) throws SQLException {
+        users.setInt(1, id);
+        users.setString(2, username);
+        users.setString(3, PASSWORD);
+        users.setString(4, role);
+        users.setString(5, name);
+        users.setString(6, area);
+        users.addBatch();
+    }
+
+    /**
+     * Sends the pending batches and commits once the transaction has grown large enough
+     * @param rows Rows the batches hold, counted towards the transaction size
+     */
+    private void flush(Connection conn, int rows, PreparedStatement... statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            statement.executeBatch();
+        }
+        rowsInTransaction += rows;
+        if (rowsInTransaction >= ROWS_PER_TRANSACTION) {
+            conn.commit();
+            rowsInTransaction = 0;
+        }
+    }
+
+    private static int maxId(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static boolean usernameTaken(Connection conn, String username) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM users WHERE username = ?")) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void report(String what, long rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        System.out.printf("Generated %,d %s in %.1f s (%,.0f rows/s)%n", rows, what, seconds, rows / Math.max(seconds, 1e-9));
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split <= 0) {
+                System.out.println("Ignoring argument " + arg + " (expected key=value)");
+                continue;
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+
+        String db = options.getOrDefault("db", "redcell-generated.db");
+        DataGenerator generator = new DataGenerator(Long.parseLong(options.getOrDefault("seed", "42")));
+        try {
+            if (options.containsKey("donors")) generator.setDonors(Integer.parseInt(options.get("donors")));
+            if (options.containsKey("facilities")) generator.setFacilities(Integer.parseInt(options.get("facilities")));
+            if (options.containsKey("requests")) generator.setRequests(Integer.parseInt(options.get("requests")));
+            if (options.containsKey("donations")) generator.setDonations(Integer.parseInt(options.get("donations")));
+            if (options.containsKey("inventory")) generator.setInventoryPerFacility(Integer.parseInt(options.get("inventory")));
+            if (options.containsKey("linked")) generator.setLinkedDonationShare(Double.parseDouble(options.get("linked")));
+            if (options.containsKey("years")) generator.setYears(Integer.parseInt(options.get("years")));
+            if (options.containsKey("endDate")) generator.setEndDate(LocalDate.parse(options.get("endDate")));
+            if (options.containsKey("prefix")) generator.setUsernamePrefix(options.get("prefix"));
+        } catch (RuntimeException e) {
+            System.out.println("Invalid argument: " + e.getMessage());
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db)) {
+            generator.generate(conn);
+        } catch (SQLException e) {
+            System.out.println("Data generation failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("Database %s ready in %.1f s (seed %d, end date %s)%n", db,
+                (System.nanoTime() - start) / 1_000_000_000.0, generator.seed, generator.endDate);
+    }
+}
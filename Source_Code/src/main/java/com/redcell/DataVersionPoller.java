@@ -0,0 +1,189 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Notices writes made by other processes sharing the database file, e.g. another RedCell
+ * desktop in the same hospital, so caches and views can be refreshed without full reloads.
+ *
+ * PRAGMA data_version changes only when another connection commits. All writes of this process
+ * go through the pool's writer, so polled on the writer it moves exactly when someone else
+ * wrote. The pragma reads the WAL index in shared memory, so polling it every few hundred
+ * milliseconds costs next to nothing while nothing changes. The writer is only borrowed when
+ * it is idle; a busy writer skips one round.
+ *
+ * When it moves, the poller reads table_versions, which ChangeCapture stamps in each transaction,
+ * and reports the tables whose version moved. The versions and data_version are read in one
+ * read transaction, so they describe the same snapshot and no commit is missed or reported
+ * twice. Stamps from this process's own commits are taken into the baseline while no other
+ * connection wrote; tables this process changed in the same round are reported as well, which
+ * only costs a reload. A write that left no stamp (autocommit, or an older RedCell) reports
+ * every tracked table.
+ */
+public class DataVersionPoller {
+
+    public static final long DEFAULT_INTERVAL_MS = 250;
+
+    static final String DATA_VERSION_SQL = "PRAGMA data_version;";
+
+    static final String TABLE_VERSIONS_SQL = "SELECT table_name, version FROM table_versions";
+
+    private final ConnectionPool pool;
+    private final ChangeCapture capture;
+    private final long intervalMillis;
+    private final Consumer<Set<String>> onChange;
+    private Thread pollerThread;
+    private volatile boolean running = true;
+
+    // State of the last snapshot; only the poller thread touches it
+    private long lastDataVersion = -1;
+    private Map<String, Long> baseline = new HashMap<>();
+    private long seenLocalBatches;
+
+    private final LongAdder pollCount = new LongAdder();
+    private final LongAdder busyCount = new LongAdder();
+    private final LongAdder changeCount = new LongAdder();
+    private final LatencyHistogram pollTimer = Metrics.timer("dataVersionPoller.poll");
+
+    /**
+     * @param capture The writer's change capture, whose batch count tells this process's own commits apart
+     * @param onChange Called on the poller thread with the tables another connection changed
+     */
+    public DataVersionPoller(ConnectionPool pool, ChangeCapture capture, long intervalMillis, Consumer<Set<String>> onChange) {
+        this.pool = pool;
+        this.capture = capture;
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.onChange = onChange;
+    }
+
+    public synchronized void start() {
+        if (pollerThread != null) {
+            return;
+        }
+        pollerThread = new Thread(this::runPoller, "redcell-data-version");
+        pollerThread.setDaemon(true);
+        pollerThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread thread;
+        synchronized (this) {
+            thread = pollerThread;
+        }
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runPoller() {
+        while (running) {
+            try {
+                Set<String> changed = poll();
+                if (!changed.isEmpty()) {
+                    onChange.accept(changed);
+                }
+            } catch (SQLException e) {
+                System.out.println("Error checking for changes by other connections: " + e.getMessage());
+            } catch (RuntimeException e) {
+                System.out.println("Error applying changes by other connections: " + e.getMessage());
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks once whether another connection committed since the last check
+     * @return The tracked tables it changed; empty if nothing changed or the writer was busy
+     */
+    public Set<String> poll() throws SQLException {
+        long start = System.nanoTime();
+        pollCount.increment();
+        try (Connection conn = pool.tryAcquireWriter()) {
+            if (conn == null) {
+                busyCount.increment();
+                return Set.of();
+            }
+            // Nobody else can commit on the writer while this holds it
+            long localBatches = capture.getBatchCount();
+            if (lastDataVersion >= 0 && localBatches == seenLocalBatches && readDataVersion(conn) == lastDataVersion) {
+                return Set.of();
+            }
+
+            Map<String, Long> versions;
+            long dataVersion;
+            conn.setAutoCommit(false);
+            try {
+                versions = readTableVersions(conn);
+                dataVersion = readDataVersion(conn);
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+
+            Set<String> changed = new LinkedHashSet<>();
+            if (lastDataVersion >= 0 && dataVersion != lastDataVersion) {
+                for (Map.Entry<String, Long> version : versions.entrySet()) {
+                    if (!version.getValue().equals(baseline.get(version.getKey()))) {
+                        changed.add(version.getKey());
+                    }
+                }
+                if (changed.isEmpty()) {
+                    changed.addAll(capture.getTables());
+                }
+                changeCount.increment();
+            }
+            lastDataVersion = dataVersion;
+            baseline = versions;
+            seenLocalBatches = localBatches;
+            return changed;
+        } finally {
+            pollTimer.record(System.nanoTime() - start);
+        }
+    }
+
+    private static long readDataVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(DATA_VERSION_SQL)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static Map<String, Long> readTableVersions(Connection conn) throws SQLException {
+        Map<String, Long> versions = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(TABLE_VERSIONS_SQL)) {
+            while (rs.next()) {
+                versions.put(rs.getString("table_name"), rs.getLong("version"));
+            }
+        }
+        return versions;
+    }
+
+    public long getPollCount() { return pollCount.sum(); }
+    public long getChangeCount() { return changeCount.sum(); }
+
+    public String describeStats() {
+        return String.format("polls=%d, writerBusy=%d, changesDetected=%d",
+                getPollCount(), busyCount.sum(), getChangeCount());
+    }
+}
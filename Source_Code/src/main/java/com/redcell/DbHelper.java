@@ -1,282 +1,583 @@
 package com.redcell;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
 public class DbHelper {
 
-    private static final String DB_URL = "jdbc:sqlite:c:/Users/Jian/Documents/Blue Codium/RedCell/src/main/resources/redcell.db";
+    private static final String DEFAULT_DB_URL = "jdbc:sqlite:c:/Users/Jian/Documents/Blue Codium/RedCell/src/main/resources/redcell.db";
 
-    public static Connection connect() {
-        Connection conn = null;
-        try {
-            conn = DriverManager.getConnection(DB_URL);
-            System.out.println("Connection to SQLite has been established.");
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+    // Can be pointed at another database with -Dredcell.db.url=jdbc:sqlite:/path/to/redcell.db
+    private static final String DB_URL = System.getProperty("redcell.db.url", DEFAULT_DB_URL);
+
+    private static ConnectionPool pool;
+    private static WriteQueue writeQueue;
+    private static DataVersionPoller dataVersionPoller;
+    // Applies changes by other processes off the poller thread; set with dataVersionPoller
+    private static java.util.concurrent.ScheduledExecutorService externalChangeExecutor;
+    // Tables changed by other processes and not applied yet; guarded by itself
+    private static final java.util.Set<String> externalChanges = new java.util.LinkedHashSet<>();
+    private static final long EXTERNAL_CHANGE_SETTLE_MS = Long.getLong("redcell.poll.settleMs", 500);
+    private static final IdentityCache identityCache = new IdentityCache();
+    private static final PendingRequestIndex pendingRequestIndex = new PendingRequestIndex();
+    private static final InventoryAllocator inventoryAllocator = new InventoryAllocator();
+    private static final EligibleDonorIndex eligibleDonorIndex = new EligibleDonorIndex();
+    private static final DonorAlerts donorAlerts = new DonorAlerts();
+    private static final FacilityLocator facilityLocator = new FacilityLocator(Gazetteer.getDefault());
+    private static final EligibilityEngine eligibilityEngine = new EligibilityEngine(EligibilityRules.defaults().compile());
+    // Capacity and the longest a publisher waits when it is full (-Dredcell.events.capacity, -Dredcell.events.maxWaitMs)
+    private static final EventBus eventBus = new EventBus(Integer.getInteger("redcell.events.capacity", EventBus.DEFAULT_CAPACITY),
+                                                          Long.getLong("redcell.events.maxWaitMs", EventBus.DEFAULT_MAX_WAIT_MS));
+    // Row changes on the writer, published on the event bus in commit order (-Dredcell.cdc.maxRows per batch)
+    private static final ChangeCapture changeCapture = new ChangeCapture(ChangeCapture.DEFAULT_TABLES,
+            Integer.getInteger("redcell.cdc.maxRows", ChangeCapture.DEFAULT_MAX_ROWS), eventBus::publish);
+    // Registered once; the bus outlives a shutdown and reinitialization
+    private static final EventBus.Subscription identityInvalidation =
+            eventBus.subscribe(DomainEvent.RowsChanged.class, DbHelper::invalidateChangedIdentities);
+    private static final LongAdder pendingIndexHits = Metrics.counter("cache.pendingIndex.hits");
+    private static final LongAdder pendingIndexMisses = Metrics.counter("cache.pendingIndex.misses");
+
+    /**
+     * Returns the shared connection pool, opening it on first use
+     */
+    public static synchronized ConnectionPool getConnectionPool() throws SQLException {
+        if (pool == null) {
+            pool = new ConnectionPool(DB_URL, ConnectionPool.DEFAULT_READER_COUNT);
+            pool.captureChanges(changeCapture);
         }
-        return conn;
+        return pool;
     }
 
-    public static void createNewDatabase() {
-        try (Connection conn = connect()) {
-            if (conn != null) {
-                System.out.println("A new database has been created.");
-            } else {
-                System.out.println("Could not connect to the database.");
-            }
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+    /**
+     * Returns the shared connection pool without opening it, e.g. for diagnostics
+     * @return The pool, or null if it is not open
+     */
+    public static synchronized ConnectionPool peekConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Returns the shared write queue, starting its writer thread on first use.
+     * Batch size and linger time can be tuned with -Dredcell.write.maxBatch and -Dredcell.write.lingerMs.
+     */
+    public static synchronized WriteQueue getWriteQueue() throws SQLException {
+        if (writeQueue == null) {
+            writeQueue = new WriteQueue(getConnectionPool(),
+                    Integer.getInteger("redcell.write.maxBatch", WriteQueue.DEFAULT_MAX_BATCH_SIZE),
+                    Long.getLong("redcell.write.lingerMs", WriteQueue.DEFAULT_MAX_LINGER_MS));
         }
+        return writeQueue;
+    }
+
+    /**
+     * Returns the shared write queue without starting it, e.g. for diagnostics
+     * @return The write queue, or null if nothing has been written yet
+     */
+    public static synchronized WriteQueue peekWriteQueue() {
+        return writeQueue;
     }
 
-    public static void createTables() {
-        String sqlUsers = "CREATE TABLE IF NOT EXISTS users (\n" +
-                          "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-                          "    username TEXT NOT NULL UNIQUE,\n" +
-                          "    password TEXT NOT NULL,\n" +
-                          "    role TEXT NOT NULL\n" +
-                          ");";
+    /**
+     * Returns the cache of usernames resolved this session
+     */
+    public static IdentityCache getIdentityCache() {
+        return identityCache;
+    }
 
-        String sqlDonors = "CREATE TABLE IF NOT EXISTS donors (\n" +
-                           "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-                           "    user_id INTEGER NOT NULL,\n" +
-                           "    blood_group TEXT NOT NULL,\n" +
-                           "    last_donation_date TEXT,\n" +
-                           "    FOREIGN KEY (user_id) REFERENCES users(id)\n" +
-                           ");";
+    /**
+     * Returns the change capture that turns rows written through the pool into RowsChanged events
+     */
+    public static ChangeCapture getChangeCapture() {
+        return changeCapture;
+    }
 
-        String sqlFacilities = "CREATE TABLE IF NOT EXISTS facilities (\n" +
-                               "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-                               "    user_id INTEGER NOT NULL,\n" +
-                               "    name TEXT NOT NULL,\n" +
-                               "    location TEXT,\n" +
-                               "    FOREIGN KEY (user_id) REFERENCES users(id)\n" +
-                               ");";
+    /**
+     * Forgets every cached identity. Called on logout.
+     */
+    public static void clearIdentityCache() {
+        identityCache.clear();
+    }
 
-        String sqlDonations = "CREATE TABLE IF NOT EXISTS donations (\n" +
-                              "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-                              "    donor_id INTEGER NOT NULL,\n" +
-                              "    date TEXT NOT NULL,\n" +
-                              "    blood_type TEXT NOT NULL,\n" +
-                              "    quantity REAL NOT NULL,\n" +
-                              "    FOREIGN KEY (donor_id) REFERENCES donors(id)\n" +
-                              ");";
+    // Drops identities whose user, donor or facility row changed, e.g. a role changed by another call site.
+    // A new donor or facility row may belong to a cached user that had none, so those users are dropped too.
+    private static void invalidateChangedIdentities(DomainEvent.RowsChanged changes) {
+        if (!changes.touches("users") && !changes.touches("donors") && !changes.touches("facilities")) {
+            return;
+        }
+        if (!changes.isComplete()) {
+            identityCache.clear();
+            return;
+        }
+        java.util.Set<Long> users = new java.util.HashSet<>();
+        java.util.Set<Long> donors = new java.util.HashSet<>();
+        java.util.Set<Long> facilities = new java.util.HashSet<>();
+        boolean donorAdded = false;
+        boolean facilityAdded = false;
+        for (ChangeCapture.RowChange change : changes.getChanges()) {
+            boolean insert = change.getOperation() == ChangeCapture.Operation.INSERT;
+            if ("users".equals(change.getTable())) {
+                users.add(change.getRowId());
+            } else if ("donors".equals(change.getTable())) {
+                donors.add(change.getRowId());
+                donorAdded |= insert;
+            } else if ("facilities".equals(change.getTable())) {
+                facilities.add(change.getRowId());
+                facilityAdded |= insert;
+            }
+        }
+        boolean anyDonorAdded = donorAdded;
+        boolean anyFacilityAdded = facilityAdded;
+        identityCache.invalidateIf(identity -> users.contains((long) identity.getUserId())
+                || donors.contains((long) identity.getDonorId()) || facilities.contains((long) identity.getFacilityId())
+                || (anyDonorAdded && !identity.isDonor()) || (anyFacilityAdded && !identity.isFacility()));
+    }
 
-        String sqlRequests = "CREATE TABLE IF NOT EXISTS requests (\n" +
-                             "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-                             "    facility_id INTEGER NOT NULL,\n" +
-                             "    blood_type TEXT NOT NULL,\n" +
-                             "    quantity REAL NOT NULL,\n" +
-                             "    status TEXT NOT NULL,\n" +
-                             "    FOREIGN KEY (facility_id) REFERENCES facilities(id)\n" +
-                             ");";
+    /**
+     * Returns the in-memory index of pending requests; it answers queries once loaded
+     */
+    public static PendingRequestIndex getPendingRequestIndex() {
+        return pendingRequestIndex;
+    }
 
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(sqlUsers);
-            stmt.execute(sqlDonors);
-            stmt.execute(sqlFacilities);
-            stmt.execute(sqlDonations);
-            stmt.execute(sqlRequests);
-            System.out.println("Tables created successfully.");
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
+    /**
+     * Loads every pending request into the in-memory index. Run once at startup, off the FX thread.
+     * If the read fails the index stays unloaded and queries keep using SQL.
+     * @return The number of pending requests indexed, or -1 if the load failed
+     */
+    public static int loadPendingRequestIndex() {
+        long start = System.nanoTime();
+        try (Stream<Request> rows = streamPendingBloodRequests(0)) {
+            pendingRequestIndex.load(rows);
+            return pendingRequestIndex.size();
+        } catch (SQLException | ResultSetStream.StreamingException e) {
+            System.out.println("Error loading pending request index: " + e.getMessage());
+            return -1;
+        } finally {
+            Metrics.recordSince("db.loadPendingRequestIndex", start);
         }
     }
 
-    public static void main(String[] args) {
-        createNewDatabase();
-        createTables();
-        updateSchema();
+    /**
+     * Returns the in-memory index of eligible donors by blood type and area; it answers queries once loaded
+     */
+    public static EligibleDonorIndex getEligibleDonorIndex() {
+        return eligibleDonorIndex;
     }
     
     /**
-     * Updates the database schema according to the recommendations in dbplan.md
-     * This method adds new tables and alters existing ones to implement the required relationships
+     * Returns the event bus on which committed changes are published as DomainEvents
      */
-    public static void updateSchema() {
-        // Create new tables
-        createDonationRequestsTable();
-        createInventoryTable();
-        
-        // Alter existing tables
-        addColumnsToUsersTable();
-        addColumnsToDonationsTable();
-        addColumnsToRequestsTable();
-        
-        // Create indexes for performance
-        createIndexes();
+    public static EventBus getEventBus() {
+        return eventBus;
     }
     
     /**
-     * Creates the donation_requests junction table to handle the Many-to-Many relationship
-     * between donations and requests
+     * Loads every donor into the eligible donor index. Run once at startup, off the FX thread.
+     * Requests created before the load finishes alert nobody.
+     * @return The number of donors indexed
      */
-    public static void createDonationRequestsTable() {
-        String sql = "CREATE TABLE IF NOT EXISTS donation_requests (\n" +
-                     "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-                     "    donation_id INTEGER NOT NULL,\n" +
-                     "    request_id INTEGER NOT NULL,\n" +
-                     "    quantity REAL NOT NULL,\n" +
-                     "    date TEXT NOT NULL,\n" +
-                     "    FOREIGN KEY (donation_id) REFERENCES donations(id),\n" +
-                     "    FOREIGN KEY (request_id) REFERENCES requests(id)\n" +
-                     ");"; 
-        
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-            System.out.println("donation_requests table created successfully.");
+    public static int loadEligibleDonorIndex() {
+        long start = System.nanoTime();
+        try (Connection conn = connectForRead();
+             Stream<EligibleDonorIndex.Entry> rows = ResultSetStream.query(conn, DONOR_INDEX_SQL, 0, stmt -> { }, DbHelper::mapDonorEntry)) {
+            eligibleDonorIndex.load(rows);
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            System.out.println("Error loading eligible donor index: " + e.getMessage());
+        } finally {
+            Metrics.recordSince("db.loadEligibleDonorIndex", start);
         }
+        return eligibleDonorIndex.size();
     }
     
     /**
-     * Creates the inventory table to track blood components by type and facility
+     * Starts checking every -Dredcell.poll.intervalMs (default 250, 0 turns it off) whether another
+     * process sharing the database wrote, and refreshes what depends on the tables it changed.
+     * Changes are gathered for -Dredcell.poll.settleMs (default 500) and applied together on their
+     * own thread, so a burst of commits by another instance costs one refresh.
+     * Call it after initializeDatabase().
      */
-    public static void createInventoryTable() {
-        String sql = "CREATE TABLE IF NOT EXISTS inventory (\n" +
-                     "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
-                     "    facility_id INTEGER NOT NULL,\n" +
-                     "    blood_type TEXT NOT NULL,\n" +
-                     "    component_type TEXT NOT NULL,\n" +
-                     "    quantity REAL NOT NULL,\n" +
-                     "    expiry_date TEXT,\n" +
-                     "    FOREIGN KEY (facility_id) REFERENCES facilities(id)\n" +
-                     ");"; 
-        
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
-            System.out.println("inventory table created successfully.");
+    public static synchronized void startChangePolling() {
+        long interval = Long.getLong("redcell.poll.intervalMs", DataVersionPoller.DEFAULT_INTERVAL_MS);
+        if (dataVersionPoller != null || interval <= 0) {
+            return;
+        }
+        try {
+            java.util.concurrent.ScheduledExecutorService executor = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "redcell-external-changes");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dataVersionPoller = new DataVersionPoller(getConnectionPool(), changeCapture, interval,
+                    tables -> queueExternalChanges(executor, tables));
+            externalChangeExecutor = executor;
+            dataVersionPoller.start();
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            System.out.println("Could not start change polling: " + e.getMessage());
+        }
+    }
+    
+    // Runs on the poller thread; the first change of a burst schedules one apply for all of them
+    private static void queueExternalChanges(java.util.concurrent.ScheduledExecutorService executor, java.util.Set<String> tables) {
+        boolean schedule;
+        synchronized (externalChanges) {
+            schedule = externalChanges.isEmpty();
+            externalChanges.addAll(tables);
+        }
+        if (schedule) {
+            executor.schedule(() -> applyExternalChanges(executor), EXTERNAL_CHANGE_SETTLE_MS,
+                              java.util.concurrent.TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    // Runs on the external change thread. Lazily loaded caches are dropped, the pending index
+    // re-reads only the requests whose pending state changed, and views are told via the event bus.
+    private static void applyExternalChanges(java.util.concurrent.ScheduledExecutorService executor) {
+        java.util.Set<String> tables;
+        synchronized (externalChanges) {
+            tables = new java.util.LinkedHashSet<>(externalChanges);
+            externalChanges.clear();
+        }
+        boolean users = tables.contains("users");
+        if (users || tables.contains("donors") || tables.contains("facilities")) {
+            identityCache.clear();
+        }
+        if (users || tables.contains("facilities")) {
+            facilityLocator.clear();
+        }
+        if (tables.contains("inventory")) {
+            inventoryAllocator.clear();
+        }
+        if (tables.contains("requests")) {
+            if (pendingRequestIndex.isLoaded()) {
+                refreshPendingRequestIndex();
+            } else if (pendingRequestIndex.isTracking()) {
+                // The initial load may have read the rows before the change; look again once it is done
+                queueExternalChanges(executor, java.util.Set.of("requests"));
+            }
+        }
+        if (users || tables.contains("donors") || tables.contains("donations")) {
+            // Which donors changed is not known, and any of them may have moved in or out of eligibility
+            if (eligibleDonorIndex.isTracking()) {
+                eligibleDonorIndex.clear();
+                loadEligibleDonorIndex();
+            }
+            if (eligibilityEngine.isTracking()) {
+                reevaluateEligibility();
+            }
         }
+        eventBus.publish(new DomainEvent.ExternalChange(tables));
     }
     
     /**
-     * Adds name and area columns to the users table
+     * Brings the loaded pending request index in line with the database after another process
+     * changed requests. Only the ids of pending requests are scanned, from the status index;
+     * rows are read just for requests that became pending. Falls back to a full reload if the
+     * database cannot be read.
      */
-    public static void addColumnsToUsersTable() {
-        String[] sqls = {
-            "ALTER TABLE users ADD COLUMN name TEXT;",
-            "ALTER TABLE users ADD COLUMN area TEXT;"
-        };
-        
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            for (String sql : sqls) {
-                try {
-                    stmt.execute(sql);
-                    System.out.println("Column added to users table.");
-                } catch (SQLException e) {
-                    // Column might already exist
-                    if (!e.getMessage().contains("duplicate column name")) {
-                        System.out.println(e.getMessage());
+    private static void refreshPendingRequestIndex() {
+        long start = System.nanoTime();
+        java.util.Set<Integer> gone = pendingRequestIndex.beginRefresh();
+        java.util.List<Request> added = new java.util.ArrayList<>();
+        boolean failed = false;
+        try (Connection conn = connectForRead();
+             PreparedStatement idStmt = conn.prepareStatement(PENDING_IDS_SQL);
+             PreparedStatement rowStmt = conn.prepareStatement(READ_REQUEST_SQL)) {
+            java.util.List<Integer> newIds = new java.util.ArrayList<>();
+            try (ResultSet rs = idStmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    // What is left in gone afterwards is no longer pending
+                    if (!gone.remove(id)) {
+                        newIds.add(id);
+                    }
+                }
+            }
+            for (int id : newIds) {
+                rowStmt.setInt(1, id);
+                try (ResultSet rs = rowStmt.executeQuery()) {
+                    if (rs.next()) {
+                        added.add(mapPendingRequest(rs));
                     }
                 }
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            System.out.println("Error refreshing pending request index: " + e.getMessage());
+            failed = true;
+        } finally {
+            if (failed) {
+                pendingRequestIndex.finishRefresh(java.util.List.of(), java.util.List.of());
+            } else {
+                pendingRequestIndex.finishRefresh(gone, added);
+            }
+            Metrics.recordSince("db.refreshPendingRequestIndex", start);
+        }
+        if (failed) {
+            pendingRequestIndex.clear();
+            loadPendingRequestIndex();
         }
     }
     
     /**
-     * Adds status column to the donations table
+     * Commits any queued writes and closes all pooled connections. Called when the application exits.
      */
-    public static void addColumnsToDonationsTable() {
-        String sql = "ALTER TABLE donations ADD COLUMN status TEXT NOT NULL DEFAULT 'APPROVED';"; 
-        
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            try {
-                stmt.execute(sql);
-                System.out.println("Status column added to donations table.");
-            } catch (SQLException e) {
-                // Column might already exist
-                if (!e.getMessage().contains("duplicate column name")) {
-                    System.out.println(e.getMessage());
-                }
+    public static synchronized void shutdown() {
+        if (dataVersionPoller != null) {
+            dataVersionPoller.stop();
+            System.out.println("Change polling stopped. " + dataVersionPoller.describeStats());
+            dataVersionPoller = null;
+            externalChangeExecutor.shutdownNow();
+            externalChangeExecutor = null;
+            synchronized (externalChanges) {
+                externalChanges.clear();
             }
+        }
+        if (writeQueue != null) {
+            writeQueue.shutdown();
+            System.out.println("Write queue stopped. " + writeQueue.describeStats());
+            writeQueue = null;
+        }
+        // Subscribers stay registered; the bus outlives a shutdown and reinitialization
+        eventBus.awaitIdle(1000);
+        System.out.println("Event bus idle. " + eventBus.describeStats());
+        System.out.println("Change capture: " + changeCapture.describeStats());
+        pendingRequestIndex.clear();
+        inventoryAllocator.clear();
+        eligibleDonorIndex.clear();
+        donorAlerts.clear();
+        facilityLocator.clear();
+        eligibilityEngine.clear();
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    private static CompletableFuture<Boolean> submitWrite(String name, WriteQueue.WriteOperation operation) {
+        return submitWrite(name, operation, null);
+    }
+
+    // afterCommit runs in commit order, so in-memory state and events follow the database
+    private static CompletableFuture<Boolean> submitWrite(String name, WriteQueue.WriteOperation operation,
+                                                          WriteQueue.AfterCommit afterCommit) {
+        try {
+            return getWriteQueue().submit(name, operation, afterCommit);
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+            return CompletableFuture.completedFuture(false);
         }
     }
-    
+
+    // Dependent stages see a write's failure wrapped in a CompletionException
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static boolean awaitWrite(CompletableFuture<Boolean> write) {
+        try {
+            return write.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            System.out.println("Write failed: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
     /**
-     * Adds additional columns to the requests table
+     * Checks out the pooled writer connection. Closing it returns it to the pool.
+     * Use this for anything that modifies the database.
      */
-    public static void addColumnsToRequestsTable() {
-        String[] sqls = {
-            "ALTER TABLE requests ADD COLUMN patient_condition TEXT;",
-            "ALTER TABLE requests ADD COLUMN time TEXT;",
-            "ALTER TABLE requests ADD COLUMN contact TEXT;",
-            "ALTER TABLE requests ADD COLUMN created_by TEXT;",
-            "ALTER TABLE requests ADD COLUMN date TEXT;"
-        };
-        
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            for (String sql : sqls) {
-                try {
-                    stmt.execute(sql);
-                    System.out.println("Column added to requests table.");
-                } catch (SQLException e) {
-                    // Column might already exist
-                    if (!e.getMessage().contains("duplicate column name")) {
-                        System.out.println(e.getMessage());
-                    }
-                }
-            }
+    public static Connection connect() {
+        Connection conn = null;
+        try {
+            conn = getConnectionPool().acquireWriter();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        return conn;
+    }
+
+    /**
+     * Checks out one of the pooled read-only connections. Closing it returns it to the pool.
+     */
+    public static Connection connectForRead() {
+        Connection conn = null;
+        try {
+            conn = getConnectionPool().acquireReader();
         } catch (SQLException e) {
             System.out.println(e.getMessage());
         }
+        return conn;
+    }
+
+    /**
+     * Opens the database and brings its schema up to date.
+     * On a current database this is a single PRAGMA user_version read.
+     * @return true if the schema is ready, false otherwise
+     */
+    public static boolean initializeDatabase() {
+        long start = System.nanoTime();
+        try (Connection conn = connect()) {
+            if (conn == null) {
+                System.out.println("Could not connect to the database.");
+                return false;
+            }
+            int applied = SchemaMigrator.migrate(conn);
+            changeCapture.setStampingVersions(true);
+            if (applied > 0) {
+                // Cached statements were prepared against the old schema
+                getConnectionPool().invalidateStatementCaches();
+                SlowQueryLog.clearPlans();
+                System.out.println("Database schema upgraded to version " + SchemaMigrator.getLatestVersion()
+                        + " (" + applied + " migrations applied).");
+            }
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Schema migration failed: " + e.getMessage());
+            return false;
+        } finally {
+            Metrics.recordSince("db.initializeDatabase", start);
+        }
+    }
+
+    /**
+     * Every statement DbHelper runs, by name, for the startup query plan check
+     */
+    static java.util.Map<String, String> getQueryCatalog() {
+        java.util.Map<String, String> queries = new java.util.LinkedHashMap<>();
+        queries.put("registerUser.insertUser", INSERT_USER_SQL);
+        queries.put("registerUser.insertDonor", INSERT_DONOR_SQL);
+        queries.put("registerFacility.insertFacility", INSERT_FACILITY_SQL);
+        queries.put("authenticateUser", AUTHENTICATE_SQL);
+        queries.put("getUserRole", USER_ROLE_SQL);
+        queries.put("usernameExists", USERNAME_EXISTS_SQL);
+        queries.put("submitBloodRequest", INSERT_REQUEST_SQL);
+        queries.put("submitBloodRequest.byUsername", INSERT_REQUEST_BY_USERNAME_SQL);
+        queries.put("submitBloodRequestStatusUpdate", UPDATE_REQUEST_STATUS_SQL);
+        queries.put("readRequest", READ_REQUEST_SQL);
+        queries.put("getPendingBloodRequests", PENDING_REQUESTS_SQL);
+        queries.put("getPendingBloodRequestsPage.first", PENDING_PAGE_FIRST_SQL);
+        queries.put("getPendingBloodRequestsPage.after", PENDING_PAGE_AFTER_SQL);
+        queries.put("getPendingBloodRequestsPage.nullDate", PENDING_PAGE_NULL_DATE_SQL);
+        queries.put("getPendingBloodRequestsPage.firstByType", PENDING_PAGE_FIRST_BY_TYPE_SQL);
+        queries.put("getPendingBloodRequestsPage.afterByType", PENDING_PAGE_AFTER_BY_TYPE_SQL);
+        queries.put("getPendingBloodRequestsPage.nullDateByType", PENDING_PAGE_NULL_DATE_BY_TYPE_SQL);
+        queries.put("getCompatibleRequestMask", DONOR_BLOOD_GROUP_SQL);
+        queries.put("streamPendingBloodRequests", PENDING_STREAM_SQL);
+        queries.put("refreshPendingRequestIndex", PENDING_IDS_SQL);
+        queries.put("searchRequests", SEARCH_REQUESTS_SQL);
+        queries.put("getFacilityStats", FACILITY_STATS_SQL);
+        queries.put("getFacilityStats.byUsername", FACILITY_STATS_BY_USERNAME_SQL);
+        queries.put("resolveFacilityId", FACILITY_ID_SQL);
+        queries.put("inventoryLedger.insertMovement", InventoryLedger.INSERT_MOVEMENT_SQL);
+        queries.put("inventoryLedger.latestSnapshot", InventoryLedger.LATEST_SNAPSHOT_SQL);
+        queries.put("inventoryLedger.stock", InventoryLedger.STOCK_SQL);
+        queries.put("inventoryLedger.keyStock", InventoryLedger.KEY_STOCK_SQL);
+        queries.put("inventoryLedger.tailLength", InventoryLedger.TAIL_LENGTH_SQL);
+        queries.put("inventoryLedger.insertSnapshot", InventoryLedger.INSERT_SNAPSHOT_SQL);
+        queries.put("issueInventoryForRequest", REQUEST_TO_ISSUE_SQL);
+        queries.put("inventoryAllocator.lots", InventoryAllocator.LOTS_SQL);
+        queries.put("inventoryAllocator.insertLot", InventoryAllocator.INSERT_LOT_SQL);
+        queries.put("inventoryAllocator.issueFromLot", InventoryAllocator.ISSUE_FROM_LOT_SQL);
+        queries.put("inventoryAllocator.deleteLot", InventoryAllocator.DELETE_LOT_SQL);
+        queries.put("submitDonation", INSERT_DONATION_SQL);
+        queries.put("submitDonation.byUsername", INSERT_DONATION_BY_USERNAME_SQL);
+        queries.put("submitDonationStatusUpdate", UPDATE_DONATION_STATUS_SQL);
+        queries.put("getDonationHistory", DONATION_HISTORY_SQL);
+        queries.put("streamDonationHistory", DONATION_HISTORY_STREAM_SQL);
+        queries.put("streamAllDonations", ALL_DONATIONS_STREAM_SQL);
+        queries.put("loadEligibleDonorIndex", DONOR_INDEX_SQL);
+        queries.put("readDonorEntry", DONOR_ENTRY_SQL);
+        queries.put("refreshLastDonation", REFRESH_LAST_DONATION_SQL);
+        queries.put("donationDonor", DONATION_DONOR_SQL);
+        queries.put("requestArea", REQUEST_AREA_SQL);
+        queries.put("donorId", DONOR_ID_SQL);
+        queries.put("facilityLocations", FacilityLocator.FACILITIES_SQL);
+        queries.put("stockByFacility", STOCK_BY_FACILITY_SQL);
+        queries.put("eligibilitySlice", ELIGIBILITY_SLICE_SQL);
+        queries.put("donorEligibility", DONOR_ELIGIBILITY_SQL);
+        queries.put("maxDonorId", MAX_DONOR_ID_SQL);
+        queries.put("updateDonorStatus", UPDATE_DONOR_STATUS_SQL);
+        queries.put("changeCapture.stampVersion", ChangeCapture.STAMP_VERSION_SQL);
+        queries.put("dataVersionPoller.tableVersions", DataVersionPoller.TABLE_VERSIONS_SQL);
+        return queries;
     }
     
+    // Queries that read everything on purpose (exports), so a SCAN in their plan is expected
+    private static final java.util.Set<String> FULL_SCAN_EXPECTED = java.util.Set.of("streamAllDonations", "loadEligibleDonorIndex", "facilityLocations",
+                                                                                      "dataVersionPoller.tableVersions");
+    
     /**
-     * Creates indexes for improved query performance
+     * Runs EXPLAIN QUERY PLAN for every DbHelper statement and reports those that scan a whole
+     * table or index, which usually means a missing index. Warnings go to the console and to the
+     * slow query log. Run once at startup, off the FX thread. After ANALYZE, SQLite may rightly
+     * scan tables that hold only a handful of rows, so check a warning against the table size.
+     * @return Names of the statements whose plan contains an unexpected full SCAN
      */
-    public static void createIndexes() {
-        String[] sqls = {
-            // Indexes for foreign keys
-            "CREATE INDEX IF NOT EXISTS idx_donors_user_id ON donors(user_id);",
-            "CREATE INDEX IF NOT EXISTS idx_facilities_user_id ON facilities(user_id);",
-            "CREATE INDEX IF NOT EXISTS idx_donations_donor_id ON donations(donor_id);",
-            "CREATE INDEX IF NOT EXISTS idx_requests_facility_id ON requests(facility_id);",
-            "CREATE INDEX IF NOT EXISTS idx_donation_requests_donation_id ON donation_requests(donation_id);",
-            "CREATE INDEX IF NOT EXISTS idx_donation_requests_request_id ON donation_requests(request_id);",
-            "CREATE INDEX IF NOT EXISTS idx_inventory_facility_id ON inventory(facility_id);",
-            
-            // Indexes for common search fields
-            "CREATE INDEX IF NOT EXISTS idx_donations_blood_type ON donations(blood_type);",
-            "CREATE INDEX IF NOT EXISTS idx_requests_blood_type ON requests(blood_type);",
-            "CREATE INDEX IF NOT EXISTS idx_requests_status ON requests(status);",
-            "CREATE INDEX IF NOT EXISTS idx_inventory_blood_type ON inventory(blood_type);"
-        };
-        
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            for (String sql : sqls) {
+    public static java.util.List<String> checkQueryPlans() {
+        long start = System.nanoTime();
+        java.util.List<String> flagged = new java.util.ArrayList<>();
+        try (Connection conn = connectForRead()) {
+            if (conn == null) {
+                return flagged;
+            }
+            for (java.util.Map.Entry<String, String> query : getQueryCatalog().entrySet()) {
+                String name = query.getKey();
                 try {
-                    stmt.execute(sql);
-                    System.out.println("Index created successfully.");
+                    java.util.List<String> plan = SlowQueryLog.explain(conn, query.getValue());
+                    if (SlowQueryLog.hasFullScan(plan) && !FULL_SCAN_EXPECTED.contains(name)) {
+                        flagged.add(name);
+                        SlowQueryLog.logFullScan(name, query.getValue(), plan);
+                        System.out.println("Query plan check: " + name + " does a full table scan: "
+                                + String.join(" / ", plan).replaceAll("\\s+", " ").trim());
+                    }
                 } catch (SQLException e) {
-                    System.out.println(e.getMessage());
+                    System.out.println("Query plan check failed for " + name + ": " + e.getMessage());
                 }
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            System.out.println("Query plan check failed: " + e.getMessage());
+        } finally {
+            Metrics.recordSince("db.checkQueryPlans", start);
         }
+        return flagged;
+    }
+
+    public static void main(String[] args) {
+        initializeDatabase();
+        shutdown();
     }
     
     // ==================== USER REGISTRATION AND AUTHENTICATION ====================
     
+    private static final String INSERT_USER_SQL =
+        "INSERT INTO users (username, password, role, name, area) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_DONOR_SQL =
+        "INSERT INTO donors (user_id, blood_group, last_donation_date) VALUES (?, ?, ?)";
+    private static final String INSERT_FACILITY_SQL =
+        "INSERT INTO facilities (user_id, name, location) VALUES (?, ?, ?)";
+    
+    // The donor/facility ids come along so later inserts need no lookup
+    private static final String AUTHENTICATE_SQL =
+        "SELECT u.id, u.username, u.password, u.role, u.name, u.area, " +
+        "(SELECT d.id FROM donors d WHERE d.user_id = u.id LIMIT 1) as donor_id, " +
+        "(SELECT f.id FROM facilities f WHERE f.user_id = u.id LIMIT 1) as facility_id " +
+        "FROM users u WHERE u.username = ? AND u.password = ?";
+    
+    private static final String USER_ROLE_SQL = "SELECT role FROM users WHERE username = ?";
+    
+    private static final String USERNAME_EXISTS_SQL = "SELECT COUNT(*) FROM users WHERE username = ?";
+    
     /**
      * Registers a new user (donor) in the database
      * @param username The username for the account
@@ -293,14 +594,16 @@ public class DbHelper {
     public static boolean registerUser(String username, String password, String fullName, 
                                      String email, String phone, String address, 
                                      String bloodType, String dateOfBirth, String area) {
-        String insertUserSql = "INSERT INTO users (username, password, role, name, area) VALUES (?, ?, ?, ?, ?)";
-        String insertDonorSql = "INSERT INTO donors (user_id, blood_group, last_donation_date) VALUES (?, ?, ?)";
+        long start = System.nanoTime();
+        
+        // Whatever was cached for this username no longer describes the account
+        identityCache.invalidate(username);
         
         try (Connection conn = connect()) {
             conn.setAutoCommit(false); // Start transaction
             
             // Insert into users table
-            try (PreparedStatement userStmt = conn.prepareStatement(insertUserSql, Statement.RETURN_GENERATED_KEYS)) {
+            try (PreparedStatement userStmt = conn.prepareStatement(INSERT_USER_SQL, Statement.RETURN_GENERATED_KEYS)) {
                 userStmt.setString(1, username);
                 userStmt.setString(2, password); // In production, hash the password
                 userStmt.setString(3, "DONOR");
@@ -319,13 +622,22 @@ public class DbHelper {
                         int userId = generatedKeys.getInt(1);
                         
                         // Insert into donors table
-                        try (PreparedStatement donorStmt = conn.prepareStatement(insertDonorSql)) {
+                        try (PreparedStatement donorStmt = conn.prepareStatement(INSERT_DONOR_SQL, Statement.RETURN_GENERATED_KEYS)) {
                             donorStmt.setInt(1, userId);
                             donorStmt.setString(2, bloodType);
                             donorStmt.setString(3, null); // No previous donation
                             
                             donorStmt.executeUpdate();
+                            int donorId = 0;
+                            try (ResultSet donorKeys = donorStmt.getGeneratedKeys()) {
+                                if (donorKeys.next()) {
+                                    donorId = donorKeys.getInt(1);
+                                }
+                            }
                             conn.commit(); // Commit transaction
+                            identityCache.put(new IdentityCache.Identity(username, userId, "DONOR", donorId, 0));
+                            trackDonor(new EligibleDonorIndex.Entry(donorId, bloodType, area, null),
+                                       new EligibilityEngine.DonorRecord(donorId, null));
                             System.out.println("User registered successfully: " + username);
                             return true;
                         }
@@ -338,6 +650,8 @@ public class DbHelper {
         } catch (SQLException e) {
             System.out.println("Registration failed: " + e.getMessage());
             return false;
+        } finally {
+            Metrics.recordSince("db.registerUser", start);
         }
     }
     
@@ -352,14 +666,16 @@ public class DbHelper {
      */
     public static boolean registerFacility(String username, String password, String facilityName, 
                                          String location, String area) {
-        String insertUserSql = "INSERT INTO users (username, password, role, name, area) VALUES (?, ?, ?, ?, ?)";
-        String insertFacilitySql = "INSERT INTO facilities (user_id, name, location) VALUES (?, ?, ?)";
+        long start = System.nanoTime();
+        
+        // Whatever was cached for this username no longer describes the account
+        identityCache.invalidate(username);
         
         try (Connection conn = connect()) {
             conn.setAutoCommit(false); // Start transaction
             
             // Insert into users table
-            try (PreparedStatement userStmt = conn.prepareStatement(insertUserSql, Statement.RETURN_GENERATED_KEYS)) {
+            try (PreparedStatement userStmt = conn.prepareStatement(INSERT_USER_SQL, Statement.RETURN_GENERATED_KEYS)) {
                 userStmt.setString(1, username);
                 userStmt.setString(2, password); // In production, hash the password
                 userStmt.setString(3, "FACILITY");
@@ -378,13 +694,22 @@ public class DbHelper {
                         int userId = generatedKeys.getInt(1);
                         
                         // Insert into facilities table
-                        try (PreparedStatement facilityStmt = conn.prepareStatement(insertFacilitySql)) {
+                        try (PreparedStatement facilityStmt = conn.prepareStatement(INSERT_FACILITY_SQL, Statement.RETURN_GENERATED_KEYS)) {
                             facilityStmt.setInt(1, userId);
                             facilityStmt.setString(2, facilityName);
                             facilityStmt.setString(3, location);
                             
                             facilityStmt.executeUpdate();
+                            int facilityId = 0;
+                            try (ResultSet facilityKeys = facilityStmt.getGeneratedKeys()) {
+                                if (facilityKeys.next()) {
+                                    facilityId = facilityKeys.getInt(1);
+                                }
+                            }
                             conn.commit(); // Commit transaction
+                            identityCache.put(new IdentityCache.Identity(username, userId, "FACILITY", 0, facilityId));
+                            // Harmless before the locator is loaded; the load puts the same facility again
+                            facilityLocator.put(facilityId, username, facilityName, area, location);
                             System.out.println("Facility registered successfully: " + facilityName);
                             return true;
                         }
@@ -397,6 +722,8 @@ public class DbHelper {
         } catch (SQLException e) {
             System.out.println("Facility registration failed: " + e.getMessage());
             return false;
+        } finally {
+            Metrics.recordSince("db.registerFacility", start);
         }
     }
     
@@ -407,11 +734,10 @@ public class DbHelper {
      * @return ConcreteUser object if authentication successful, null otherwise
      */
     public static ConcreteUser authenticateUser(String username, String password) {
-        String sql = "SELECT u.id, u.username, u.password, u.role, u.name, u.area " +
-                     "FROM users u WHERE u.username = ? AND u.password = ?";
+        long start = System.nanoTime();
         
-        try (Connection conn = connect();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = connectForRead();
+             PreparedStatement stmt = conn.prepareStatement(AUTHENTICATE_SQL)) {
             
             stmt.setString(1, username);
             stmt.setString(2, password); // In production, compare hashed passwords
@@ -425,6 +751,13 @@ public class DbHelper {
                         rs.getString("area"),
                         rs.getString("role")
                     );
+                    identityCache.put(new IdentityCache.Identity(
+                        user.getUsername(),
+                        user.getId(),
+                        user.getRole(),
+                        rs.getInt("donor_id"),
+                        rs.getInt("facility_id")
+                    ));
                     
                     System.out.println("Authentication successful for user: " + username);
                     return user;
@@ -436,6 +769,8 @@ public class DbHelper {
         } catch (SQLException e) {
             System.out.println("Authentication error: " + e.getMessage());
             return null;
+        } finally {
+            Metrics.recordSince("db.authenticateUser", start);
         }
     }
     
@@ -445,10 +780,15 @@ public class DbHelper {
      * @return The user role (DONOR, FACILITY) or null if not found
      */
     public static String getUserRole(String username) {
-        String sql = "SELECT role FROM users WHERE username = ?";
+        long start = System.nanoTime();
+        IdentityCache.Identity identity = identityCache.get(username);
+        if (identity != null) {
+            Metrics.recordSince("db.getUserRole", start);
+            return identity.getRole();
+        }
         
-        try (Connection conn = connect();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = connectForRead();
+             PreparedStatement stmt = conn.prepareStatement(USER_ROLE_SQL)) {
             
             stmt.setString(1, username);
             
@@ -459,66 +799,213 @@ public class DbHelper {
             }
         } catch (SQLException e) {
             System.out.println("Error getting user role: " + e.getMessage());
+        } finally {
+            Metrics.recordSince("db.getUserRole", start);
         }
         return null;
     }
     
     // ==================== BLOOD REQUEST OPERATIONS ====================
     
+    private static final String INSERT_REQUEST_SQL =
+        "INSERT INTO requests (facility_id, blood_type, quantity, status, " +
+        "patient_condition, time, contact, created_by, date) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    // Resolves the facility id inside the insert when it is not cached
+    private static final String INSERT_REQUEST_BY_USERNAME_SQL =
+        "INSERT INTO requests (facility_id, blood_type, quantity, status, " +
+        "patient_condition, time, contact, created_by, date) " +
+        "SELECT f.id, ?, ?, ?, ?, ?, ?, ?, ? FROM facilities f " +
+        "JOIN users u ON f.user_id = u.id " +
+        "WHERE u.username = ? LIMIT 1";
+    
+    private static final String UPDATE_REQUEST_STATUS_SQL = "UPDATE requests SET status = ? WHERE id = ?";
+    
+    private static final String REQUEST_SELECT =
+        "SELECT r.*, f.name as facility_name, f.location " +
+        "FROM requests r " +
+        "JOIN facilities f ON r.facility_id = f.id ";
+    
+    private static final String READ_REQUEST_SQL = REQUEST_SELECT + "WHERE r.id = ?";
+    
+    private static final String PENDING_REQUESTS_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' ORDER BY r.date DESC";
+    
+    // Covered by idx_requests_status_date_id, so no request rows are read
+    private static final String PENDING_IDS_SQL = "SELECT id FROM requests WHERE status = 'Pending'";
+    
+    private static final String PENDING_STREAM_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' ORDER BY r.date DESC, r.id DESC";
+    
+    // Keyset pages of the pending feed. Rows without a date sort after every dated row in
+    // DESC order. They are read by a separate UNION ALL branch, because OR-ing "r.date IS NULL"
+    // into the keyset condition stops SQLite from seeking to the cursor and makes deep pages
+    // scan the whole index.
+    private static final String PENDING_PAGE_FIRST_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' ORDER BY r.date DESC, r.id DESC LIMIT ?";
+    private static final String PENDING_PAGE_AFTER_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' AND (r.date, r.id) < (?, ?) " +
+        "UNION ALL " +
+        REQUEST_SELECT + "WHERE r.status = 'Pending' AND r.date IS NULL " +
+        // A compound SELECT can only be ordered by its result columns
+        "ORDER BY date DESC, id DESC LIMIT ?";
+    private static final String PENDING_PAGE_NULL_DATE_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' AND r.date IS NULL AND r.id < ? " +
+        "ORDER BY r.date DESC, r.id DESC LIMIT ?";
+    
+    // The same pages for some blood types only. The IN list has one slot per BloodType;
+    // unused slots are bound to NULL, which matches nothing.
+    private static final String BLOOD_TYPE_FILTER = "AND r.blood_type IN (?, ?, ?, ?, ?, ?, ?, ?) ";
+    private static final String PENDING_PAGE_FIRST_BY_TYPE_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' " + BLOOD_TYPE_FILTER +
+        "ORDER BY r.date DESC, r.id DESC LIMIT ?";
+    private static final String PENDING_PAGE_AFTER_BY_TYPE_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' " + BLOOD_TYPE_FILTER + "AND (r.date, r.id) < (?, ?) " +
+        "UNION ALL " +
+        REQUEST_SELECT + "WHERE r.status = 'Pending' " + BLOOD_TYPE_FILTER + "AND r.date IS NULL " +
+        "ORDER BY date DESC, id DESC LIMIT ?";
+    private static final String PENDING_PAGE_NULL_DATE_BY_TYPE_SQL =
+        REQUEST_SELECT + "WHERE r.status = 'Pending' " + BLOOD_TYPE_FILTER + "AND r.date IS NULL AND r.id < ? " +
+        "ORDER BY r.date DESC, r.id DESC LIMIT ?";
+    
+    private static final String DONOR_BLOOD_GROUP_SQL =
+        "SELECT d.blood_group FROM donors d JOIN users u ON d.user_id = u.id WHERE u.username = ? LIMIT 1";
+    
     /**
-     * Creates a new blood request
+     * Creates a new blood request, waiting for the write queue to commit it
      * @param request The Request object containing request details
      * @param facilityUsername The username of the facility making the request
      * @return true if request created successfully, false otherwise
      */
     public static boolean createBloodRequest(Request request, String facilityUsername) {
-        // First get the facility ID from username
-        String getFacilityIdSql = "SELECT f.id FROM facilities f " +
-                                  "JOIN users u ON f.user_id = u.id " +
-                                  "WHERE u.username = ?";
+        return awaitWrite(submitBloodRequest(request, facilityUsername));
+    }
+    
+    /**
+     * Queues a new blood request on the write queue
+     * @param request The Request object containing request details
+     * @param facilityUsername The username of the facility making the request
+     * @return Future completed with true once the request has been committed
+     */
+    public static CompletableFuture<Boolean> submitBloodRequest(Request request, String facilityUsername) {
+        // With the facility id cached this is a plain INSERT; otherwise the id is resolved
+        // inside the same statement instead of a separate lookup query
+        IdentityCache.Identity identity = identityCache.get(facilityUsername);
+        boolean cached = identity != null && identity.isFacility();
         
-        String insertRequestSql = "INSERT INTO requests (facility_id, blood_type, quantity, status, " +
-                                 "patient_condition, time, contact, created_by, date) " +
-                                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String insertRequestSql = cached ? INSERT_REQUEST_SQL : INSERT_REQUEST_BY_USERNAME_SQL;
         
-        try (Connection conn = connect()) {
-            // Get facility ID
-            int facilityId = -1;
-            try (PreparedStatement getFacilityStmt = conn.prepareStatement(getFacilityIdSql)) {
-                getFacilityStmt.setString(1, facilityUsername);
-                try (ResultSet rs = getFacilityStmt.executeQuery()) {
-                    if (rs.next()) {
-                        facilityId = rs.getInt("id");
-                    } else {
-                        System.out.println("Facility not found for username: " + facilityUsername);
-                        return false;
-                    }
+        // The committed row, read back so the pending index can be updated after commit
+        Request[] inserted = new Request[1];
+        // The facility's area, for alerting eligible donors after commit
+        String[] area = new String[1];
+        
+        CompletableFuture<Boolean> write = submitWrite("createBloodRequest", conn -> {
+            try (PreparedStatement insertStmt = conn.prepareStatement(insertRequestSql, Statement.RETURN_GENERATED_KEYS)) {
+                int index = 1;
+                if (cached) {
+                    insertStmt.setInt(index++, identity.getFacilityId());
+                }
+                insertStmt.setString(index++, request.getBloodType());
+                insertStmt.setDouble(index++, request.getUnits());
+                insertStmt.setString(index++, request.getStatus());
+                insertStmt.setString(index++, request.getPatientCondition());
+                insertStmt.setString(index++, request.getTime());
+                insertStmt.setString(index++, request.getContact());
+                insertStmt.setString(index++, request.getCreatedBy());
+                insertStmt.setString(index++, request.getDate());
+                if (!cached) {
+                    insertStmt.setString(index, facilityUsername);
                 }
-            }
-            
-            // Insert the request
-            try (PreparedStatement insertStmt = conn.prepareStatement(insertRequestSql)) {
-                insertStmt.setInt(1, facilityId);
-                insertStmt.setString(2, request.getBloodType());
-                insertStmt.setDouble(3, request.getUnits());
-                insertStmt.setString(4, request.getStatus());
-                insertStmt.setString(5, request.getPatientCondition());
-                insertStmt.setString(6, request.getTime());
-                insertStmt.setString(7, request.getContact());
-                insertStmt.setString(8, request.getCreatedBy());
-                insertStmt.setString(9, request.getDate());
                 
                 int affectedRows = insertStmt.executeUpdate();
                 if (affectedRows > 0) {
+                    try (ResultSet keys = insertStmt.getGeneratedKeys()) {
+                        if (keys.next()) {
+                            inserted[0] = readRequest(conn, keys.getInt(1));
+                            if (canFindEligibleDonors()) {
+                                area[0] = readRequestArea(conn, keys.getInt(1));
+                            }
+                        }
+                    }
                     System.out.println("Blood request created successfully");
                     return true;
                 } else {
+                    System.out.println("Facility not found for username: " + facilityUsername);
                     return false;
                 }
             }
-        } catch (SQLException e) {
-            System.out.println("Error creating blood request: " + e.getMessage());
-            return false;
+        }, success -> {
+            if (success && inserted[0] != null && pendingRequestIndex.isTracking()) {
+                pendingRequestIndex.put(inserted[0]);
+            }
+            if (success && inserted[0] != null && canFindEligibleDonors()) {
+                alertEligibleDonors(inserted[0], area[0]);
+            }
+            if (success && inserted[0] != null) {
+                eventBus.publish(new DomainEvent.RequestCreated(inserted[0], facilityUsername));
+            }
+        });
+        return Metrics.timeFuture("db.createBloodRequest", write);
+    }
+    
+    /**
+     * Changes a blood request's status, waiting for the write queue to commit it
+     * @param requestId The request ID
+     * @param status The new status, e.g. "Pending" or "Completed"
+     * @return true if update successful, false otherwise
+     */
+    public static boolean updateBloodRequestStatus(int requestId, String status) {
+        return awaitWrite(submitBloodRequestStatusUpdate(requestId, status));
+    }
+    
+    /**
+     * Queues a blood request status change on the write queue
+     * @param requestId The request ID
+     * @param status The new status
+     * @return Future completed with true once the update has been committed
+     */
+    public static CompletableFuture<Boolean> submitBloodRequestStatusUpdate(int requestId, String status) {
+        // The updated row, read back so the pending index can be updated after commit
+        Request[] updated = new Request[1];
+        
+        CompletableFuture<Boolean> write = submitWrite("updateBloodRequestStatus", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_REQUEST_STATUS_SQL)) {
+                stmt.setString(1, status);
+                stmt.setInt(2, requestId);
+                
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows > 0) {
+                    updated[0] = readRequest(conn, requestId);
+                    return true;
+                }
+                return false;
+            }
+        }, success -> {
+            if (success && pendingRequestIndex.isTracking()) {
+                if (updated[0] != null) {
+                    pendingRequestIndex.put(updated[0]);
+                } else {
+                    pendingRequestIndex.remove(requestId);
+                }
+            }
+            if (success) {
+                eventBus.publish(new DomainEvent.RequestStatusChanged(requestId, status, updated[0]));
+            }
+        });
+        return Metrics.timeFuture("db.updateBloodRequestStatus", write);
+    }
+    
+    /**
+     * Reads one request with its facility, or null if it does not exist
+     */
+    private static Request readRequest(Connection conn, int requestId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(READ_REQUEST_SQL)) {
+            stmt.setInt(1, requestId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapPendingRequest(rs) : null;
+            }
         }
     }
     
@@ -527,119 +1014,1175 @@ public class DbHelper {
      * @return List of Request objects
      */
     public static java.util.List<Request> getPendingBloodRequests() {
+        long start = System.nanoTime();
+        if (pendingRequestIndex.isLoaded()) {
+            pendingIndexHits.increment();
+            java.util.List<Request> requests = pendingRequestIndex.getPending(BloodType.ALL);
+            Metrics.recordSince("db.getPendingBloodRequests", start);
+            return requests;
+        }
+        pendingIndexMisses.increment();
+        
         java.util.List<Request> requests = new java.util.ArrayList<>();
-        String sql = "SELECT r.*, f.name as facility_name, f.location " +
-                     "FROM requests r " +
-                     "JOIN facilities f ON r.facility_id = f.id " +
-                     "WHERE r.status = 'Pending' " +
-                     "ORDER BY r.date DESC";
         
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (Connection conn = connectForRead();
+             PreparedStatement stmt = conn.prepareStatement(PENDING_REQUESTS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
             
             while (rs.next()) {
-                Request request = new Request(
-                    String.valueOf(rs.getInt("id")),
-                    rs.getString("blood_type"),
-                    rs.getInt("quantity"),
-                    rs.getString("facility_name"),
-                    rs.getString("location"),
-                    rs.getString("status"),
-                    rs.getString("date"),
-                    rs.getString("patient_condition"),
-                    rs.getString("time"),
-                    rs.getString("contact"),
-                    rs.getString("created_by")
-                );
-                requests.add(request);
+                requests.add(mapPendingRequest(rs));
             }
         } catch (SQLException e) {
             System.out.println("Error getting pending blood requests: " + e.getMessage());
+        } finally {
+            Metrics.recordSince("db.getPendingBloodRequests", start);
         }
         return requests;
     }
     
-    // ==================== DONATION OPERATIONS ====================
+    /**
+     * Gets one page of pending blood requests, newest first, using keyset pagination on (date, id).
+     * Pass the last date and id of the previous page to continue after it; unlike OFFSET this
+     * costs the same for every page because SQLite seeks straight to the cursor in the
+     * idx_requests_status_date_id index.
+     * @param afterDate Date of the last row already shown (may be null); ignored when afterId is 0
+     * @param afterId Id of the last row already shown, or 0 for the first page
+     * @param pageSize Maximum number of requests to return
+     * @return The page, or null if the query failed, so callers can retry from the same cursor
+     */
+    public static RequestPage getPendingBloodRequestsPage(String afterDate, int afterId, int pageSize) {
+        return getPendingBloodRequestsPage(BloodType.ALL, afterDate, afterId, pageSize);
+    }
     
     /**
-     * Creates a new donation record
-     * @param donation The Donation object
-     * @param donorUsername The username of the donor
-     * @return true if donation created successfully, false otherwise
+     * Gets one page of the pending blood requests for some blood types, e.g. those a donor can give to
+     * @param bloodTypeMask Mask of the blood types to include; BloodType.ALL for every request
+     * @param afterDate Date of the last row already shown (may be null); ignored when afterId is 0
+     * @param afterId Id of the last row already shown, or 0 for the first page
+     * @param pageSize Maximum number of requests to return
+     * @return The page, or null if the query failed, so callers can retry from the same cursor
      */
-    public static boolean createDonation(Donation donation, String donorUsername) {
-        // First get the donor ID from username
-        String getDonorIdSql = "SELECT d.id FROM donors d " +
-                               "JOIN users u ON d.user_id = u.id " +
-                               "WHERE u.username = ?";
+    public static RequestPage getPendingBloodRequestsPage(int bloodTypeMask, String afterDate, int afterId, int pageSize) {
+        long start = System.nanoTime();
+        if (pendingRequestIndex.isLoaded()) {
+            pendingIndexHits.increment();
+            RequestPage page = pendingRequestIndex.page(bloodTypeMask, afterDate, afterId, pageSize);
+            Metrics.recordSince("db.getPendingBloodRequestsPage", start);
+            return page;
+        }
+        pendingIndexMisses.increment();
         
-        String insertDonationSql = "INSERT INTO donations (donor_id, date, blood_type, quantity, status) " +
-                                  "VALUES (?, ?, ?, ?, ?)";
+        boolean filtered = (bloodTypeMask & BloodType.ALL) != BloodType.ALL;
+        String sql;
+        if (afterId <= 0) {
+            sql = filtered ? PENDING_PAGE_FIRST_BY_TYPE_SQL : PENDING_PAGE_FIRST_SQL;
+        } else if (afterDate != null) {
+            sql = filtered ? PENDING_PAGE_AFTER_BY_TYPE_SQL : PENDING_PAGE_AFTER_SQL;
+        } else {
+            sql = filtered ? PENDING_PAGE_NULL_DATE_BY_TYPE_SQL : PENDING_PAGE_NULL_DATE_SQL;
+        }
+        java.util.List<String> bloodTypes = BloodType.namesOf(bloodTypeMask);
         
-        try (Connection conn = connect()) {
-            // Get donor ID
-            int donorId = -1;
-            try (PreparedStatement getDonorStmt = conn.prepareStatement(getDonorIdSql)) {
-                getDonorStmt.setString(1, donorUsername);
-                try (ResultSet rs = getDonorStmt.executeQuery()) {
-                    if (rs.next()) {
-                        donorId = rs.getInt("id");
-                    } else {
-                        System.out.println("Donor not found for username: " + donorUsername);
-                        return false;
+        try (Connection conn = connectForRead();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (filtered) {
+                index = bindBloodTypes(pstmt, index, bloodTypes);
+            }
+            if (afterId > 0) {
+                if (afterDate != null) {
+                    pstmt.setString(index++, afterDate);
+                    pstmt.setInt(index++, afterId);
+                    // The undated branch of the UNION filters by blood type as well
+                    if (filtered) {
+                        index = bindBloodTypes(pstmt, index, bloodTypes);
                     }
+                } else {
+                    pstmt.setInt(index++, afterId);
                 }
             }
+            // Fetch one extra row to learn whether another page exists
+            pstmt.setInt(index, pageSize + 1);
             
-            // Insert the donation
-            try (PreparedStatement insertStmt = conn.prepareStatement(insertDonationSql)) {
-                insertStmt.setInt(1, donorId);
-                insertStmt.setString(2, donation.getDate().toString());
-                insertStmt.setString(3, donation.getBloodType());
-                insertStmt.setDouble(4, donation.getUnits());
-                insertStmt.setString(5, donation.getStatus().toString());
-                
-                int affectedRows = insertStmt.executeUpdate();
-                if (affectedRows > 0) {
-                    System.out.println("Donation created successfully");
-                    return true;
-                } else {
-                    return false;
+            java.util.List<Request> requests = new java.util.ArrayList<>(pageSize);
+            String lastDate = null;
+            int lastId = 0;
+            boolean hasMore = false;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (requests.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    requests.add(mapPendingRequest(rs));
+                    lastDate = rs.getString("date");
+                    lastId = rs.getInt("id");
                 }
             }
+            return new RequestPage(requests, lastDate, lastId, hasMore);
         } catch (SQLException e) {
-            System.out.println("Error creating donation: " + e.getMessage());
-            return false;
+            System.out.println("Error getting pending blood requests page: " + e.getMessage());
+            return null;
+        } finally {
+            Metrics.recordSince("db.getPendingBloodRequestsPage", start);
         }
     }
     
+    // Fills the IN list of BLOOD_TYPE_FILTER, padding with NULLs
+    private static int bindBloodTypes(PreparedStatement pstmt, int index, java.util.List<String> bloodTypes) throws SQLException {
+        for (int slot = 0; slot < BloodType.values().length; slot++) {
+            if (slot < bloodTypes.size()) {
+                pstmt.setString(index++, bloodTypes.get(slot));
+            } else {
+                pstmt.setNull(index++, java.sql.Types.VARCHAR);
+            }
+        }
+        return index;
+    }
+    
     /**
-     * Updates donation status
-     * @param donationId The donation ID
-     * @param status The new status
-     * @return true if update successful, false otherwise
+     * Gets the blood types a donor can give whole blood to, for filtering the pending feed
+     * @param donorUsername The username of the donor
+     * @return Mask of recipient blood types; BloodType.ALL if the user is not a donor or the
+     *         blood group is unknown, so nobody is shown an empty feed by mistake
      */
-    public static boolean updateDonationStatus(int donationId, String status) {
-        String sql = "UPDATE donations SET status = ? WHERE id = ?";
+    public static int getCompatibleRequestMask(String donorUsername) {
+        long start = System.nanoTime();
+        try (Connection conn = connectForRead();
+             PreparedStatement pstmt = conn.prepareStatement(DONOR_BLOOD_GROUP_SQL)) {
+            pstmt.setString(1, donorUsername);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                BloodType donorType = rs.next() ? BloodType.fromDisplayName(rs.getString(1)) : null;
+                return donorType == null ? BloodType.ALL : BloodCompatibility.recipientsOf(donorType, Component.WHOLE_BLOOD);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting donor blood group: " + e.getMessage());
+            return BloodType.ALL;
+        } finally {
+            Metrics.recordSince("db.getCompatibleRequestMask", start);
+        }
+    }
+    
+    /**
+     * Streams all pending blood requests, newest first, without loading them into memory.
+     * The stream holds a reader connection until it is closed, so use try-with-resources.
+     * @param fetchSize Rows fetched per round trip (0 or less for the default)
+     * @return Stream of Request objects; reading it throws ResultSetStream.StreamingException if a row fails
+     * @throws SQLException if the query could not be started. Unlike the other stream helpers this
+     *         does not fall back to an empty stream, which the index would take for "no pending requests".
+     */
+    public static Stream<Request> streamPendingBloodRequests(int fetchSize) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return ResultSetStream.query(connectForRead(), PENDING_STREAM_SQL, fetchSize, stmt -> { }, DbHelper::mapPendingRequest);
+        } finally {
+            Metrics.recordSince("db.streamPendingBloodRequests", start);
+        }
+    }
+    
+    private static Request mapPendingRequest(ResultSet rs) throws SQLException {
+        return new Request(
+            String.valueOf(rs.getInt("id")),
+            rs.getString("blood_type"),
+            rs.getInt("quantity"),
+            rs.getString("facility_name"),
+            rs.getString("location"),
+            rs.getString("status"),
+            rs.getString("date"),
+            rs.getString("patient_condition"),
+            rs.getString("time"),
+            rs.getString("contact"),
+            rs.getString("created_by")
+        );
+    }
+    
+    // ==================== FACILITY STATS ====================
+    
+    // One range of the facility_daily_stats primary key; "today" is the requests dated today by SQLite's clock
+    private static final String FACILITY_STATS_COLUMNS =
+        "SELECT COALESCE(SUM(s.requests), 0) AS total_requests, " +
+        "COALESCE(SUM(CASE WHEN s.day = date('now', 'localtime') THEN s.requests END), 0) AS todays_requests, " +
+        "COALESCE(SUM(s.completions), 0) AS total_completions, " +
+        "COALESCE(SUM(CASE WHEN s.day = date('now', 'localtime') THEN s.completions END), 0) AS todays_completions " +
+        "FROM facility_daily_stats s ";
+    
+    private static final String FACILITY_STATS_SQL = FACILITY_STATS_COLUMNS + "WHERE s.facility_id = ?";
+    
+    private static final String FACILITY_STATS_BY_USERNAME_SQL = FACILITY_STATS_COLUMNS +
+        "WHERE s.facility_id = (SELECT f.id FROM facilities f JOIN users u ON f.user_id = u.id " +
+        "WHERE u.username = ? LIMIT 1)";
+    
+    /**
+     * Gets a facility's request totals and the counts of its requests dated today from the
+     * trigger-maintained facility_daily_stats table, without counting the requests table
+     * @param facilityUsername The username of the facility
+     * @return The counters, all zero if the facility has no requests or the read failed
+     */
+    public static FacilityStats getFacilityStats(String facilityUsername) {
+        long start = System.nanoTime();
+        IdentityCache.Identity identity = identityCache.get(facilityUsername);
+        boolean cached = identity != null && identity.isFacility();
         
-        try (Connection conn = connect();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, status);
-            stmt.setInt(2, donationId);
-            
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows > 0) {
-                System.out.println("Donation status updated successfully");
-                return true;
+        try (Connection conn = connectForRead();
+             PreparedStatement pstmt = conn.prepareStatement(cached ? FACILITY_STATS_SQL : FACILITY_STATS_BY_USERNAME_SQL)) {
+            if (cached) {
+                pstmt.setInt(1, identity.getFacilityId());
             } else {
+                pstmt.setString(1, facilityUsername);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return FacilityStats.empty();
+                }
+                return new FacilityStats(
+                    rs.getInt("total_requests"),
+                    rs.getInt("todays_requests"),
+                    rs.getInt("total_completions"),
+                    rs.getInt("todays_completions"));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting facility stats: " + e.getMessage());
+            return FacilityStats.empty();
+        } finally {
+            Metrics.recordSince("db.getFacilityStats", start);
+        }
+    }
+    
+    // ==================== INVENTORY LEDGER ====================
+    
+    private static final String FACILITY_ID_SQL =
+        "SELECT f.id FROM facilities f JOIN users u ON f.user_id = u.id WHERE u.username = ? LIMIT 1";
+    
+    /**
+     * @return The facility's id, from the identity cache when possible, or 0 if there is no such facility
+     */
+    private static int resolveFacilityId(Connection conn, String facilityUsername) throws SQLException {
+        IdentityCache.Identity identity = identityCache.get(facilityUsername);
+        if (identity != null && identity.isFacility()) {
+            return identity.getFacilityId();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(FACILITY_ID_SQL)) {
+            pstmt.setString(1, facilityUsername);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+    
+    /**
+     * Appends a movement to a facility's inventory ledger, waiting for the write queue to commit it
+     * @param facilityUsername The username of the facility
+     * @param type What happened, e.g. RECEIVED for a processed donation
+     * @param units Number of units, positive; the movement type decides whether stock goes up or down
+     * @param reference What caused the movement, e.g. a donation or request id (may be null)
+     * @return true if recorded, false if the facility is unknown or the stock would go below zero
+     */
+    public static boolean recordInventoryMovement(String facilityUsername, String bloodType, Component component,
+                                                  InventoryMovementType type, int units, String reference) {
+        return awaitWrite(submitInventoryMovement(facilityUsername, bloodType, component, type, units, reference));
+    }
+    
+    /**
+     * Queues a movement for a facility's inventory ledger on the write queue
+     * @return Future completed with true once the movement has been committed
+     */
+    public static CompletableFuture<Boolean> submitInventoryMovement(String facilityUsername, String bloodType, Component component,
+                                                                     InventoryMovementType type, int units, String reference) {
+        int[] facilityId = {0};
+        CompletableFuture<Boolean> write = submitWrite("recordInventoryMovement", conn -> {
+            facilityId[0] = resolveFacilityId(conn, facilityUsername);
+            if (facilityId[0] == 0) {
+                System.out.println("Facility not found for username: " + facilityUsername);
+                return false;
+            }
+            if (InventoryLedger.append(conn, facilityId[0], bloodType, component, type, units, reference) == 0) {
+                System.out.println("Not enough " + bloodType + " " + component + " in stock at " + facilityUsername);
                 return false;
             }
+            return true;
+        }, success -> {
+            if (success) {
+                eventBus.publish(new DomainEvent.InventoryChanged(facilityId[0], bloodType, component, type, units));
+            }
+        });
+        return Metrics.timeFuture("db.recordInventoryMovement", write);
+    }
+    
+    /**
+     * Moves units from one facility to another as a TRANSFER_OUT and a TRANSFER_IN entry
+     * committed together
+     * @return true if both entries were recorded, false if a facility is unknown or the sender lacks stock
+     */
+    public static boolean transferInventory(String fromFacilityUsername, String toFacilityUsername,
+                                            String bloodType, Component component, int units) {
+        return awaitWrite(submitInventoryTransfer(fromFacilityUsername, toFacilityUsername, bloodType, component, units));
+    }
+    
+    /**
+     * Queues a transfer between two facilities' inventories on the write queue
+     * @return Future completed with true once both entries have been committed
+     */
+    public static CompletableFuture<Boolean> submitInventoryTransfer(String fromFacilityUsername, String toFacilityUsername,
+                                                                     String bloodType, Component component, int units) {
+        int[] facilityIds = {0, 0};
+        CompletableFuture<Boolean> write = submitWrite("transferInventory", conn -> {
+            int fromId = resolveFacilityId(conn, fromFacilityUsername);
+            int toId = resolveFacilityId(conn, toFacilityUsername);
+            facilityIds[0] = fromId;
+            facilityIds[1] = toId;
+            if (fromId == 0 || toId == 0) {
+                System.out.println("Facility not found for transfer: " + fromFacilityUsername + " -> " + toFacilityUsername);
+                return false;
+            }
+            if (InventoryLedger.append(conn, fromId, bloodType, component, InventoryMovementType.TRANSFER_OUT,
+                                       units, "to " + toFacilityUsername) == 0) {
+                System.out.println("Not enough " + bloodType + " " + component + " in stock at " + fromFacilityUsername);
+                return false;
+            }
+            InventoryLedger.append(conn, toId, bloodType, component, InventoryMovementType.TRANSFER_IN,
+                                   units, "from " + fromFacilityUsername);
+            return true;
+        }, transferred -> {
+            if (transferred) {
+                eventBus.publish(new DomainEvent.InventoryChanged(facilityIds[0], bloodType, component, InventoryMovementType.TRANSFER_OUT, units));
+                eventBus.publish(new DomainEvent.InventoryChanged(facilityIds[1], bloodType, component, InventoryMovementType.TRANSFER_IN, units));
+            }
+        });
+        return Metrics.timeFuture("db.transferInventory", write);
+    }
+    
+    /**
+     * Looks up a facility's id, e.g. to match InventoryChanged events to a dashboard
+     * @return The id, or 0 if the facility is unknown or the read failed
+     */
+    public static int getFacilityId(String facilityUsername) {
+        try (Connection conn = connectForRead()) {
+            return resolveFacilityId(conn, facilityUsername);
+        } catch (SQLException e) {
+            System.out.println("Error looking up facility: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    /**
+     * Gets a facility's current stock from its latest inventory snapshot plus the ledger entries after it
+     * @param facilityUsername The username of the facility
+     * @return The stock, empty if the facility is unknown or the read failed
+     */
+    public static InventoryStock getInventoryStock(String facilityUsername) {
+        long start = System.nanoTime();
+        try (Connection conn = connectForRead()) {
+            int facilityId = resolveFacilityId(conn, facilityUsername);
+            return facilityId == 0 ? InventoryStock.empty() : InventoryLedger.currentStock(conn, facilityId);
         } catch (SQLException e) {
-            System.out.println("Error updating donation status: " + e.getMessage());
+            System.out.println("Error getting inventory stock: " + e.getMessage());
+            return InventoryStock.empty();
+        } finally {
+            Metrics.recordSince("db.getInventoryStock", start);
+        }
+    }
+    
+    // ==================== INVENTORY ALLOCATION ====================
+    
+    private static final String REQUEST_TO_ISSUE_SQL =
+        "SELECT facility_id, blood_type, CAST(quantity AS INTEGER) AS units FROM requests WHERE id = ?";
+    
+    /**
+     * Issues the units a blood request asks for from its facility's inventory, first expiry first out.
+     * The lots, the inventory ledger and the in-memory queues change together in one transaction;
+     * the request's status is left to the caller.
+     * @param requestId The id of the request
+     * @param component The component to issue in the request's blood type
+     * @return The allocation; unfilled if the request is unknown or there are not enough units in date
+     */
+    public static InventoryAllocation issueInventoryForRequest(int requestId, Component component) {
+        return awaitAllocation(submitInventoryIssue(requestId, component));
+    }
+    
+    /**
+     * Queues issuing a blood request's units on the write queue
+     * @return Future completed with the allocation once it has been committed; unfilled if it failed
+     */
+    public static CompletableFuture<InventoryAllocation> submitInventoryIssue(int requestId, Component component) {
+        int[] facilityId = {0};
+        InventoryAllocation[] allocation = {null};
+        CompletableFuture<Boolean> write = submitWrite("issueInventoryForRequest", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(REQUEST_TO_ISSUE_SQL)) {
+                pstmt.setInt(1, requestId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        System.out.println("Request not found: " + requestId);
+                        return false;
+                    }
+                    facilityId[0] = rs.getInt("facility_id");
+                    allocation[0] = inventoryAllocator.allocate(conn, facilityId[0], rs.getString("blood_type"), component,
+                                                                rs.getInt("units"), LocalDate.now(), "request " + requestId);
+                }
+            }
+            return true;
+        }, success -> finishAllocation(success, facilityId, allocation));
+        return allocationOf(Metrics.timeFuture("db.issueInventoryForRequest", write), allocation);
+    }
+    
+    /**
+     * Issues units of one blood type and component from a facility's inventory, first expiry first out
+     * @param facilityUsername The username of the facility
+     * @param reference What the units are issued for, recorded in the inventory ledger (may be null)
+     * @return The allocation; unfilled if the facility is unknown or there are not enough units in date
+     */
+    public static InventoryAllocation allocateInventory(String facilityUsername, String bloodType, Component component,
+                                                        int units, String reference) {
+        return awaitAllocation(submitInventoryAllocation(facilityUsername, bloodType, component, units, reference));
+    }
+    
+    /**
+     * Queues issuing units from a facility's inventory on the write queue
+     * @return Future completed with the allocation once it has been committed; unfilled if it failed
+     */
+    public static CompletableFuture<InventoryAllocation> submitInventoryAllocation(String facilityUsername, String bloodType,
+                                                                                   Component component, int units, String reference) {
+        int[] facilityId = {0};
+        InventoryAllocation[] allocation = {null};
+        CompletableFuture<Boolean> write = submitWrite("allocateInventory", conn -> {
+            facilityId[0] = resolveFacilityId(conn, facilityUsername);
+            if (facilityId[0] == 0) {
+                System.out.println("Facility not found for username: " + facilityUsername);
+                return false;
+            }
+            allocation[0] = inventoryAllocator.allocate(conn, facilityId[0], bloodType, component,
+                                                        units, LocalDate.now(), reference);
+            return true;
+        }, success -> finishAllocation(success, facilityId, allocation));
+        return allocationOf(Metrics.timeFuture("db.allocateInventory", write), allocation);
+    }
+    
+    /**
+     * Adds a lot of units to a facility's inventory and records them as RECEIVED in the ledger
+     * @param facilityUsername The username of the facility
+     * @param expiryDate When the units expire, or null if they do not
+     * @return true if the lot was added
+     */
+    public static boolean receiveInventoryLot(String facilityUsername, String bloodType, Component component,
+                                              int units, LocalDate expiryDate) {
+        return awaitWrite(submitInventoryLot(facilityUsername, bloodType, component, units, expiryDate));
+    }
+    
+    /**
+     * Queues adding a lot to a facility's inventory on the write queue
+     * @return Future completed with true once the lot has been committed
+     */
+    public static CompletableFuture<Boolean> submitInventoryLot(String facilityUsername, String bloodType, Component component,
+                                                                int units, LocalDate expiryDate) {
+        int[] facilityId = {0};
+        CompletableFuture<Boolean> write = submitWrite("receiveInventoryLot", conn -> {
+            facilityId[0] = resolveFacilityId(conn, facilityUsername);
+            if (facilityId[0] == 0) {
+                System.out.println("Facility not found for username: " + facilityUsername);
+                return false;
+            }
+            inventoryAllocator.receive(conn, facilityId[0], bloodType, component, units, expiryDate);
+            return true;
+        }, received -> {
+            if (!received && facilityId[0] != 0) {
+                inventoryAllocator.invalidate(facilityId[0]);
+            }
+            if (received) {
+                eventBus.publish(new DomainEvent.InventoryChanged(facilityId[0], bloodType, component, InventoryMovementType.RECEIVED, units));
+            }
+        });
+        return Metrics.timeFuture("db.receiveInventoryLot", write);
+    }
+    
+    // All lots of one allocation share its blood type and component
+    private static void publishAllocation(int facilityId, InventoryAllocation allocation) {
+        int expired = 0;
+        for (InventoryLot lot : allocation.getWrittenOff()) {
+            expired += lot.getUnits();
+        }
+        if (expired > 0) {
+            InventoryLot lot = allocation.getWrittenOff().get(0);
+            eventBus.publish(new DomainEvent.InventoryChanged(facilityId, lot.getBloodType(), lot.getComponent(),
+                                                              InventoryMovementType.EXPIRED, expired));
+        }
+        if (allocation.getIssuedUnits() > 0) {
+            InventoryLot lot = allocation.getIssued().get(0);
+            eventBus.publish(new DomainEvent.InventoryChanged(facilityId, lot.getBloodType(), lot.getComponent(),
+                                                              InventoryMovementType.ISSUED, allocation.getIssuedUnits()));
+        }
+    }
+    
+    // A write that did not commit may have left the facility's queues ahead of the table
+    private static void finishAllocation(boolean success, int[] facilityId, InventoryAllocation[] allocation) {
+        if (!success || allocation[0] == null) {
+            if (facilityId[0] != 0) {
+                inventoryAllocator.invalidate(facilityId[0]);
+            }
+            allocation[0] = null;
+            return;
+        }
+        if (!allocation[0].isFilled()) {
+            System.out.println("Not enough units in date to fill allocation of " + allocation[0].getRequestedUnits());
+        }
+        publishAllocation(facilityId[0], allocation[0]);
+    }
+    
+    private static CompletableFuture<InventoryAllocation> allocationOf(CompletableFuture<Boolean> write,
+                                                                       InventoryAllocation[] allocation) {
+        return write.handle((success, error) -> {
+            if (error != null) {
+                System.out.println("Write failed: " + unwrap(error).getMessage());
+            }
+            return error == null && allocation[0] != null ? allocation[0] : InventoryAllocation.empty(0);
+        });
+    }
+    
+    private static InventoryAllocation awaitAllocation(CompletableFuture<InventoryAllocation> allocation) {
+        try {
+            return allocation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return InventoryAllocation.empty(0);
+        } catch (ExecutionException e) {
+            System.out.println("Write failed: " + e.getCause().getMessage());
+            return InventoryAllocation.empty(0);
+        }
+    }
+    
+    // ==================== ELIGIBLE DONORS ====================
+    
+    private static final String DONOR_INDEX_SQL =
+        "SELECT d.id, d.blood_group, u.area, d.last_donation_date FROM donors d JOIN users u ON d.user_id = u.id";
+    
+    private static final String DONOR_ENTRY_SQL =
+        "SELECT d.id, d.blood_group, u.area, d.last_donation_date FROM donors d JOIN users u ON d.user_id = u.id " +
+        "WHERE d.id = ?";
+    
+    // Rejected and not completed donations do not start a new donation interval
+    private static final String REFRESH_LAST_DONATION_SQL =
+        "UPDATE donors SET last_donation_date = (SELECT MAX(date) FROM donations " +
+        "WHERE donor_id = ?1 AND status NOT IN ('Rejected', 'Not Completed')) WHERE id = ?1";
+    
+    // With id 0, the donation just inserted on this connection
+    private static final String DONATION_DONOR_SQL =
+        "SELECT donor_id FROM donations WHERE id = CASE WHEN ?1 = 0 THEN last_insert_rowid() ELSE ?1 END";
+    
+    private static final String REQUEST_AREA_SQL =
+        "SELECT u.area FROM requests r JOIN facilities f ON r.facility_id = f.id " +
+        "JOIN users u ON f.user_id = u.id WHERE r.id = ?";
+    
+    private static final String DONOR_ID_SQL =
+        "SELECT d.id FROM donors d JOIN users u ON d.user_id = u.id WHERE u.username = ? LIMIT 1";
+    
+    /**
+     * Finds the donors to alert for a request from the eligible donor index: eligible today,
+     * registered in the area, and able to give whole blood to the blood type
+     * @param bloodType The requested blood type, e.g. "A+"
+     * @param area The area of the requesting facility
+     * @return Donor ids, empty if the blood type is unknown or the donors are not loaded yet
+     */
+    public static int[] findEligibleDonors(String bloodType, String area) {
+        long start = System.nanoTime();
+        BloodType recipient = BloodType.fromDisplayName(bloodType);
+        int[] donors = recipient == null || !canFindEligibleDonors()
+                ? new int[0]
+                : withoutDeferred(eligibleDonorIndex.candidates(recipient, Component.WHOLE_BLOOD, area));
+        Metrics.recordSince("db.findEligibleDonors", start);
+        return donors;
+    }
+    
+    /**
+     * Gets the requests a donor was alerted about this session
+     * @param donorUsername The username of the donor
+     * @return Requests, newest first; empty if the user is not a donor
+     */
+    public static java.util.List<Request> getDonorAlerts(String donorUsername) {
+        long start = System.nanoTime();
+        IdentityCache.Identity identity = identityCache.get(donorUsername);
+        if (identity != null && identity.isDonor()) {
+            java.util.List<Request> alerts = donorAlerts.forDonor(identity.getDonorId());
+            Metrics.recordSince("db.getDonorAlerts", start);
+            return alerts;
+        }
+        try (Connection conn = connectForRead();
+             PreparedStatement pstmt = conn.prepareStatement(DONOR_ID_SQL)) {
+            pstmt.setString(1, donorUsername);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? donorAlerts.forDonor(rs.getInt(1)) : java.util.Collections.emptyList();
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting donor alerts: " + e.getMessage());
+            return java.util.Collections.emptyList();
+        } finally {
+            Metrics.recordSince("db.getDonorAlerts", start);
+        }
+    }
+    
+    /**
+     * Finds the donors to alert for a request in every area within radiusKm of the given one,
+     * using the gazetteer to place the areas
+     * @param area The area of the requesting facility; if the gazetteer does not know it,
+     *             only donors registered in exactly this area are found
+     * @return Donor ids, empty if the blood type is unknown or the donors are not loaded yet
+     */
+    public static int[] findEligibleDonorsNear(String bloodType, String area, double radiusKm) {
+        long start = System.nanoTime();
+        BloodType recipient = BloodType.fromDisplayName(bloodType);
+        int[] donors = new int[0];
+        if (recipient != null && canFindEligibleDonors()) {
+            java.util.List<String> areas = new java.util.ArrayList<>();
+            areas.add(area == null ? "" : area);
+            Gazetteer gazetteer = Gazetteer.getDefault();
+            GeoPoint point = gazetteer.locate(area);
+            if (point != null) {
+                areas.addAll(gazetteer.placesWithin(point, radiusKm));
+            }
+            donors = withoutDeferred(eligibleDonorIndex.candidates(BloodCompatibility.donorsFor(recipient, Component.WHOLE_BLOOD), areas));
+        }
+        Metrics.recordSince("db.findEligibleDonorsNear", start);
+        return donors;
+    }
+    
+    // The index only knows the whole blood interval, so no donor is found until the engine,
+    // which also applies status blocks and the other components, has evaluated every donor
+    private static boolean canFindEligibleDonors() {
+        return eligibleDonorIndex.isLoaded() && eligibilityEngine.isLoaded();
+    }
+    
+    private static int[] withoutDeferred(int[] donors) {
+        return eligibilityEngine.retainEligible(donors, LocalDate.now());
+    }
+    
+    // Applies a committed donor change to whichever in-memory structures are tracking
+    private static void trackDonor(EligibleDonorIndex.Entry entry, EligibilityEngine.DonorRecord record) {
+        if (entry != null && eligibleDonorIndex.isTracking()) {
+            eligibleDonorIndex.put(entry);
+        }
+        if (record != null && eligibilityEngine.isTracking()) {
+            eligibilityEngine.put(record);
+        }
+    }
+    
+    private static void alertEligibleDonors(Request request, String area) {
+        int[] donors = findEligibleDonorsNear(request.getBloodType(), area, DonorAlerts.RADIUS_KM);
+        donorAlerts.post(request, donors);
+        System.out.println("Alerted " + donors.length + " eligible donors near " + area + " about request " + request.getRequestId());
+    }
+    
+    private static String readRequestArea(Connection conn, int requestId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(REQUEST_AREA_SQL)) {
+            stmt.setInt(1, requestId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+    
+    /**
+     * @param donationId The donation, or 0 for the one just inserted on this connection
+     * @return The donation's donor id, or 0 if there is no such donation
+     */
+    private static int donationDonor(Connection conn, int donationId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(DONATION_DONOR_SQL)) {
+            stmt.setInt(1, donationId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+    
+    /**
+     * Sets the donor's last donation date from their donations and reads the donor back
+     * @return The donor for the eligible donor index, or null if there is no such donor
+     */
+    private static EligibleDonorIndex.Entry refreshLastDonation(Connection conn, int donorId) throws SQLException {
+        try (PreparedStatement update = conn.prepareStatement(REFRESH_LAST_DONATION_SQL)) {
+            update.setInt(1, donorId);
+            update.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(DONOR_ENTRY_SQL)) {
+            stmt.setInt(1, donorId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapDonorEntry(rs) : null;
+            }
+        }
+    }
+    
+    private static EligibleDonorIndex.Entry mapDonorEntry(ResultSet rs) throws SQLException {
+        String lastDonation = rs.getString("last_donation_date");
+        LocalDate lastDonationDate = null;
+        if (lastDonation != null) {
+            try {
+                lastDonationDate = LocalDate.parse(lastDonation);
+            } catch (java.time.format.DateTimeParseException e) {
+                // Unreadable dates count as no donation
+            }
+        }
+        return new EligibleDonorIndex.Entry(rs.getInt("id"), rs.getString("blood_group"), rs.getString("area"), lastDonationDate);
+    }
+    
+    // ==================== DONOR ELIGIBILITY ====================
+    
+    // Latest counted donation per component, from idx_donations_donor_component_date alone;
+    // a donor without donations gives one row with NULLs
+    private static final String ELIGIBILITY_SELECT =
+        "SELECT d.id, d.status, dn.component_type, MAX(dn.date) AS last_date FROM donors d " +
+        "LEFT JOIN donations dn ON dn.donor_id = d.id AND dn.status NOT IN ('Rejected', 'Not Completed') ";
+    
+    // Donors are scanned in id order, so each donor's rows arrive together without an ORDER BY
+    private static final String ELIGIBILITY_SLICE_SQL =
+        ELIGIBILITY_SELECT + "WHERE d.id BETWEEN ? AND ? GROUP BY d.id, dn.component_type";
+    
+    private static final String DONOR_ELIGIBILITY_SQL =
+        ELIGIBILITY_SELECT + "WHERE d.id = ? GROUP BY d.id, dn.component_type";
+    
+    private static final String MAX_DONOR_ID_SQL = "SELECT MAX(id) FROM donors";
+    
+    private static final String UPDATE_DONOR_STATUS_SQL =
+        "UPDATE donors SET status = ? WHERE user_id = (SELECT id FROM users WHERE username = ?)";
+    
+    /**
+     * Returns the eligibility engine, which knows for every donor when they may donate again
+     */
+    public static EligibilityEngine getEligibilityEngine() {
+        return eligibilityEngine;
+    }
+    
+    /**
+     * Evaluates every donor against the eligibility rules, reading slices of the donor table
+     * in parallel on the pool's reader connections, one per processor. Run at startup, off the FX thread.
+     * @return The number of donors evaluated, or -1 on error
+     */
+    public static int reevaluateEligibility() {
+        long start = System.nanoTime();
+        try {
+            int maxDonorId;
+            try (Connection conn = connectForRead();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(MAX_DONOR_ID_SQL)) {
+                maxDonorId = rs.next() ? rs.getInt(1) : 0;
+            }
+            int slices = Math.min(ConnectionPool.DEFAULT_READER_COUNT, Runtime.getRuntime().availableProcessors());
+            return eligibilityEngine.reevaluate(maxDonorId, slices, (fromId, toId, sink) -> {
+                try (Connection conn = connectForRead();
+                     PreparedStatement pstmt = conn.prepareStatement(ELIGIBILITY_SLICE_SQL)) {
+                    pstmt.setInt(1, fromId);
+                    pstmt.setInt(2, toId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        readEligibilityRows(rs, sink);
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            System.out.println("Error evaluating donor eligibility: " + e.getMessage());
+            return -1;
+        } finally {
+            Metrics.recordSince("db.reevaluateEligibility", start);
+        }
+    }
+    
+    /**
+     * Checks whether a donor may donate today under the eligibility rules
+     * @param donorUsername The username of the donor
+     * @return true if eligible; false if deferred, blocked, not a donor, or the engine is not loaded yet
+     */
+    public static boolean isDonorEligible(String donorUsername) {
+        long start = System.nanoTime();
+        try {
+            IdentityCache.Identity identity = identityCache.get(donorUsername);
+            if (identity != null && identity.isDonor()) {
+                return eligibilityEngine.isEligible(identity.getDonorId(), LocalDate.now());
+            }
+            try (Connection conn = connectForRead();
+                 PreparedStatement pstmt = conn.prepareStatement(DONOR_ID_SQL)) {
+                pstmt.setString(1, donorUsername);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() && eligibilityEngine.isEligible(rs.getInt(1), LocalDate.now());
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Error checking donor eligibility: " + e.getMessage());
             return false;
+        } finally {
+            Metrics.recordSince("db.isDonorEligible", start);
+        }
+    }
+    
+    /**
+     * @return Ids of the donors whose deferral ended today, e.g. to remind them they can donate again
+     */
+    public static int[] getDonorsEligibleFromToday() {
+        return eligibilityEngine.becameEligibleOn(LocalDate.now());
+    }
+    
+    /**
+     * Sets a donor's status, waiting for the write queue to commit it. BLOCKED and UNAVAILABLE
+     * donors are not eligible until their status changes.
+     * @return true if the donor exists and the status was saved
+     */
+    public static boolean updateDonorStatus(String donorUsername, DonorStatus status) {
+        return awaitWrite(submitDonorStatusUpdate(donorUsername, status));
+    }
+    
+    /**
+     * Queues a donor status change on the write queue
+     * @return Future completed with true once the change has been committed
+     */
+    public static CompletableFuture<Boolean> submitDonorStatusUpdate(String donorUsername, DonorStatus status) {
+        EligibilityEngine.DonorRecord[] eligibility = new EligibilityEngine.DonorRecord[1];
+        
+        CompletableFuture<Boolean> write = submitWrite("updateDonorStatus", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_DONOR_STATUS_SQL)) {
+                stmt.setString(1, status == null ? null : status.name());
+                stmt.setString(2, donorUsername);
+                if (stmt.executeUpdate() == 0) {
+                    System.out.println("Donor not found for username: " + donorUsername);
+                    return false;
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(DONOR_ID_SQL)) {
+                stmt.setString(1, donorUsername);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        eligibility[0] = readDonorEligibility(conn, rs.getInt(1));
+                    }
+                }
+            }
+            return true;
+        }, success -> {
+            if (success) {
+                trackDonor(null, eligibility[0]);
+            }
+        });
+        return Metrics.timeFuture("db.updateDonorStatus", write);
+    }
+    
+    private static EligibilityEngine.DonorRecord readDonorEligibility(Connection conn, int donorId) throws SQLException {
+        EligibilityEngine.DonorRecord[] record = new EligibilityEngine.DonorRecord[1];
+        try (PreparedStatement stmt = conn.prepareStatement(DONOR_ELIGIBILITY_SQL)) {
+            stmt.setInt(1, donorId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                readEligibilityRows(rs, donor -> record[0] = donor);
+            }
+        }
+        return record[0];
+    }
+    
+    // Folds the rows of each donor, which arrive together, into one record per donor
+    private static void readEligibilityRows(ResultSet rs, java.util.function.Consumer<EligibilityEngine.DonorRecord> sink) throws SQLException {
+        EligibilityEngine.DonorRecord current = null;
+        while (rs.next()) {
+            int donorId = rs.getInt("id");
+            if (current == null || current.getDonorId() != donorId) {
+                if (current != null) {
+                    sink.accept(current);
+                }
+                current = new EligibilityEngine.DonorRecord(donorId, parseDonorStatus(rs.getString("status")));
+            }
+            String lastDate = rs.getString("last_date");
+            if (lastDate != null) {
+                Component component = Component.fromDisplayName(rs.getString("component_type"));
+                try {
+                    current.addDonation(component != null ? component : Component.WHOLE_BLOOD, LocalDate.parse(lastDate));
+                } catch (java.time.format.DateTimeParseException e) {
+                    // Unreadable dates count as no donation
+                }
+            }
+        }
+        if (current != null) {
+            sink.accept(current);
+        }
+    }
+    
+    private static DonorStatus parseDonorStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        try {
+            return DonorStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    // ==================== NEARBY FACILITIES ====================
+    
+    // Lots in date only; the inventory table holds the lots the allocator issues from
+    private static final String STOCK_BY_FACILITY_SQL =
+        "SELECT facility_id, CAST(SUM(quantity) AS INTEGER) FROM inventory " +
+        "WHERE blood_type = ? AND component_type = ? AND (expiry_date IS NULL OR expiry_date >= ?) " +
+        "GROUP BY facility_id HAVING SUM(quantity) >= ?";
+    
+    /**
+     * Finds the facilities nearest to an area that hold enough units of a blood type and component
+     * @param area Where to search from, e.g. the user's area; must be in the gazetteer
+     * @param units Fewest units a facility must hold to be listed
+     * @param limit Most facilities to return
+     * @return Facilities nearest first; empty if the area cannot be placed or on error
+     */
+    public static java.util.List<NearbyFacility> findNearestFacilitiesWithStock(String area, String bloodType, Component component,
+                                                                                int units, int limit) {
+        long start = System.nanoTime();
+        GeoPoint point = Gazetteer.getDefault().locate(area);
+        if (point == null) {
+            System.out.println("Area not in gazetteer: " + area);
+            return java.util.Collections.emptyList();
+        }
+        try (Connection conn = connectForRead()) {
+            facilityLocator.ensureLoaded(conn);
+            java.util.Map<Integer, Integer> stock = new java.util.HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(STOCK_BY_FACILITY_SQL)) {
+                pstmt.setString(1, bloodType);
+                pstmt.setString(2, component.getDisplayName());
+                pstmt.setString(3, LocalDate.now().toString());
+                pstmt.setInt(4, Math.max(units, 1));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        stock.put(rs.getInt(1), rs.getInt(2));
+                    }
+                }
+            }
+            return facilityLocator.nearest(point, stock, limit);
+        } catch (SQLException e) {
+            System.out.println("Error finding nearby facilities: " + e.getMessage());
+            return java.util.Collections.emptyList();
+        } finally {
+            Metrics.recordSince("db.findNearestFacilitiesWithStock", start);
+        }
+    }
+    
+    // ==================== REQUEST SEARCH ====================
+    
+    // bm25 ranking must visit every match, which is slow for words found in a large share of all
+    // requests. Only the newest SEARCH_WINDOW matches are ranked: FTS5 walks its rowids (request
+    // ids, which grow over time) in order and stops early. Only the page is joined back to requests.
+    // The window scan reads one match more than it ranks; if it is there, the results are truncated.
+    private static final int SEARCH_WINDOW = 500;
+    private static final String SEARCH_REQUESTS_SQL =
+        "SELECT r.*, f.name as facility_name, f.location, m.truncated " +
+        "FROM (SELECT rowid, rank, truncated FROM " +
+        "(SELECT rowid, rank, ROW_NUMBER() OVER (ORDER BY rowid DESC) AS n, " +
+        "COUNT(*) OVER () > " + SEARCH_WINDOW + " AS truncated FROM " +
+        "(SELECT rowid, rank FROM requests_fts WHERE requests_fts MATCH ? ORDER BY rowid DESC LIMIT " + (SEARCH_WINDOW + 1) + ")) " +
+        "WHERE n <= " + SEARCH_WINDOW + " ORDER BY rank LIMIT ? OFFSET ?) m " +
+        "JOIN requests r ON r.id = m.rowid " +
+        "JOIN facilities f ON r.facility_id = f.id " +
+        "ORDER BY m.rank";
+    
+    /**
+     * Full-text search over the patient condition, facility name, location and contact of every
+     * request, best match first. Each word of the query must appear in the request; the last one
+     * may be incomplete, so results follow the user's typing ("mirpur hosp" finds "Mirpur Hospital").
+     * Punctuation is ignored. Ranking covers the newest 500 matches, so very common words
+     * return the best of the recent requests rather than of the whole history; the page is
+     * then marked truncated so the UI can say so.
+     * @param text Free text as typed by the user
+     * @param offset Number of results to skip (the previous page's next offset), or 0
+     * @param pageSize Maximum number of requests to return
+     * @return The page, or an empty last page if the query is blank or the search failed
+     */
+    public static RequestSearchPage searchRequests(String text, int offset, int pageSize) {
+        String match = toMatchQuery(text);
+        if (match.isEmpty()) {
+            return RequestSearchPage.empty();
+        }
+        long start = System.nanoTime();
+        try (Connection conn = connectForRead();
+             PreparedStatement pstmt = conn.prepareStatement(SEARCH_REQUESTS_SQL)) {
+            pstmt.setString(1, match);
+            // Fetch one extra row to learn whether another page exists
+            pstmt.setInt(2, pageSize + 1);
+            pstmt.setInt(3, Math.max(0, offset));
+            
+            java.util.List<Request> requests = new java.util.ArrayList<>(pageSize);
+            boolean hasMore = false;
+            boolean truncated = false;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (requests.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    requests.add(mapPendingRequest(rs));
+                    truncated = rs.getBoolean("truncated");
+                }
+            }
+            return new RequestSearchPage(requests, Math.max(0, offset), hasMore, truncated);
+        } catch (SQLException e) {
+            System.out.println("Error searching blood requests: " + e.getMessage());
+            return RequestSearchPage.empty();
+        } finally {
+            Metrics.recordSince("db.searchRequests", start);
+        }
+    }
+    
+    /**
+     * Turns free text into an FTS5 query of quoted words, so user input can never be parsed as FTS5
+     * syntax (AND, NEAR, column filters, unbalanced quotes). Only the last word is a prefix term:
+     * prefix terms merge every matching token's list, which costs far more than an exact word.
+     */
+    static String toMatchQuery(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append('"').append(word).append('"');
+            }
         }
+        if (match.length() > 0) {
+            match.append('*');
+        }
+        return match.toString();
+    }
+    
+    // ==================== DONATION OPERATIONS ====================
+    
+    private static final String INSERT_DONATION_SQL =
+        "INSERT INTO donations (donor_id, date, blood_type, quantity, status) " +
+        "VALUES (?, ?, ?, ?, ?)";
+    
+    // Resolves the donor id inside the insert when it is not cached
+    private static final String INSERT_DONATION_BY_USERNAME_SQL =
+        "INSERT INTO donations (donor_id, date, blood_type, quantity, status) " +
+        "SELECT d.id, ?, ?, ?, ? FROM donors d " +
+        "JOIN users u ON d.user_id = u.id " +
+        "WHERE u.username = ? LIMIT 1";
+    
+    private static final String UPDATE_DONATION_STATUS_SQL = "UPDATE donations SET status = ? WHERE id = ?";
+    
+    private static final String DONATION_HISTORY_SQL =
+        "SELECT don.* FROM donations don " +
+        "JOIN donors d ON don.donor_id = d.id " +
+        "JOIN users u ON d.user_id = u.id " +
+        "WHERE u.username = ? " +
+        "ORDER BY don.date DESC";
+    
+    // The linked request (if any) is looked up per row so a donation is never streamed twice
+    private static final String DONATION_STREAM_SELECT =
+        "SELECT don.*, u.username, " +
+        "(SELECT dr.request_id FROM donation_requests dr WHERE dr.donation_id = don.id LIMIT 1) as request_id " +
+        "FROM donations don " +
+        "JOIN donors d ON don.donor_id = d.id " +
+        "JOIN users u ON d.user_id = u.id ";
+    
+    private static final String DONATION_HISTORY_STREAM_SQL =
+        DONATION_STREAM_SELECT + "WHERE u.username = ? ORDER BY don.date DESC, don.id DESC";
+    
+    private static final String ALL_DONATIONS_STREAM_SQL = DONATION_STREAM_SELECT + "ORDER BY don.id";
+    
+    /**
+     * Creates a new donation record, waiting for the write queue to commit it
+     * @param donation The Donation object
+     * @param donorUsername The username of the donor
+     * @return true if donation created successfully, false otherwise
+     */
+    public static boolean createDonation(Donation donation, String donorUsername) {
+        return awaitWrite(submitDonation(donation, donorUsername));
+    }
+    
+    /**
+     * Queues a new donation record on the write queue
+     * @param donation The Donation object
+     * @param donorUsername The username of the donor
+     * @return Future completed with true once the donation has been committed
+     */
+    public static CompletableFuture<Boolean> submitDonation(Donation donation, String donorUsername) {
+        // With the donor id cached this is a plain INSERT; otherwise the id is resolved
+        // inside the same statement instead of a separate lookup query
+        IdentityCache.Identity identity = identityCache.get(donorUsername);
+        boolean cached = identity != null && identity.isDonor();
+        
+        String insertDonationSql = cached ? INSERT_DONATION_SQL : INSERT_DONATION_BY_USERNAME_SQL;
+        
+        // The donor as committed, so the eligible donor index and eligibility engine can be updated after commit
+        EligibleDonorIndex.Entry[] donor = new EligibleDonorIndex.Entry[1];
+        EligibilityEngine.DonorRecord[] eligibility = new EligibilityEngine.DonorRecord[1];
+        
+        CompletableFuture<Boolean> write = submitWrite("createDonation", conn -> {
+            try (PreparedStatement insertStmt = conn.prepareStatement(insertDonationSql)) {
+                int index = 1;
+                if (cached) {
+                    insertStmt.setInt(index++, identity.getDonorId());
+                }
+                insertStmt.setString(index++, donation.getDate().toString());
+                insertStmt.setString(index++, donation.getBloodType());
+                insertStmt.setDouble(index++, donation.getUnits());
+                insertStmt.setString(index++, donation.getStatus().toString());
+                if (!cached) {
+                    insertStmt.setString(index, donorUsername);
+                }
+                
+                int affectedRows = insertStmt.executeUpdate();
+                if (affectedRows > 0) {
+                    int donorId = cached ? identity.getDonorId() : donationDonor(conn, 0);
+                    donor[0] = refreshLastDonation(conn, donorId);
+                    eligibility[0] = readDonorEligibility(conn, donorId);
+                    System.out.println("Donation created successfully");
+                    return true;
+                } else {
+                    System.out.println("Donor not found for username: " + donorUsername);
+                    return false;
+                }
+            }
+        }, success -> {
+            if (success) {
+                trackDonor(donor[0], eligibility[0]);
+                eventBus.publish(new DomainEvent.DonationSubmitted(donation, donorUsername));
+            }
+        });
+        return Metrics.timeFuture("db.createDonation", write);
+    }
+    
+    /**
+     * Updates donation status, waiting for the write queue to commit it
+     * @param donationId The donation ID
+     * @param status The new status
+     * @return true if update successful, false otherwise
+     */
+    public static boolean updateDonationStatus(int donationId, String status) {
+        return awaitWrite(submitDonationStatusUpdate(donationId, status));
+    }
+    
+    /**
+     * Queues a donation status update on the write queue
+     * @param donationId The donation ID
+     * @param status The new status
+     * @return Future completed with true once the update has been committed
+     */
+    public static CompletableFuture<Boolean> submitDonationStatusUpdate(int donationId, String status) {
+        // The donor as committed, so the eligible donor index and eligibility engine can be updated after commit
+        EligibleDonorIndex.Entry[] donor = new EligibleDonorIndex.Entry[1];
+        EligibilityEngine.DonorRecord[] eligibility = new EligibilityEngine.DonorRecord[1];
+        
+        int[] donorId = {0};
+        
+        CompletableFuture<Boolean> write = submitWrite("updateDonationStatus", conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_DONATION_STATUS_SQL)) {
+                stmt.setString(1, status);
+                stmt.setInt(2, donationId);
+                
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows > 0) {
+                    donorId[0] = donationDonor(conn, donationId);
+                    donor[0] = refreshLastDonation(conn, donorId[0]);
+                    eligibility[0] = readDonorEligibility(conn, donorId[0]);
+                    System.out.println("Donation status updated successfully");
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        }, success -> {
+            if (success) {
+                trackDonor(donor[0], eligibility[0]);
+                eventBus.publish(new DomainEvent.DonationStatusChanged(donationId, donorId[0], status));
+            }
+        });
+        return Metrics.timeFuture("db.updateDonationStatus", write);
     }
     
     /**
@@ -648,15 +2191,11 @@ public class DbHelper {
      * @return List of Donation objects
      */
     public static java.util.List<Donation> getDonationHistory(String donorUsername) {
+        long start = System.nanoTime();
         java.util.List<Donation> donations = new java.util.ArrayList<>();
-        String sql = "SELECT don.* FROM donations don " +
-                     "JOIN donors d ON don.donor_id = d.id " +
-                     "JOIN users u ON d.user_id = u.id " +
-                     "WHERE u.username = ? " +
-                     "ORDER BY don.date DESC";
         
-        try (Connection conn = connect();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = connectForRead();
+             PreparedStatement stmt = conn.prepareStatement(DONATION_HISTORY_SQL)) {
             
             stmt.setString(1, donorUsername);
             
@@ -670,20 +2209,74 @@ public class DbHelper {
             }
         } catch (SQLException e) {
             System.out.println("Error getting donation history: " + e.getMessage());
+        } finally {
+            Metrics.recordSince("db.getDonationHistory", start);
         }
         return donations;
     }
     
+    /**
+     * Streams a donor's donations, newest first, without loading them into memory.
+     * The stream holds a reader connection until it is closed, so use try-with-resources.
+     * @param donorUsername The username of the donor
+     * @param fetchSize Rows fetched per round trip (0 or less for the default)
+     * @return Stream of Donation objects, empty if the query could not be started
+     */
+    public static Stream<Donation> streamDonationHistory(String donorUsername, int fetchSize) {
+        long start = System.nanoTime();
+        try {
+            return ResultSetStream.query(connectForRead(), DONATION_HISTORY_STREAM_SQL, fetchSize,
+                stmt -> stmt.setString(1, donorUsername), DbHelper::mapDonation);
+        } catch (SQLException e) {
+            System.out.println("Error streaming donation history: " + e.getMessage());
+            return Stream.empty();
+        } finally {
+            Metrics.recordSince("db.streamDonationHistory", start);
+        }
+    }
+    
+    /**
+     * Streams every donation in the database in id order, e.g. for exports and reports.
+     * The stream holds a reader connection until it is closed, so use try-with-resources.
+     * @param fetchSize Rows fetched per round trip (0 or less for the default)
+     * @return Stream of Donation objects, empty if the query could not be started
+     */
+    public static Stream<Donation> streamAllDonations(int fetchSize) {
+        long start = System.nanoTime();
+        try {
+            return ResultSetStream.query(connectForRead(), ALL_DONATIONS_STREAM_SQL, fetchSize, stmt -> { }, DbHelper::mapDonation);
+        } catch (SQLException e) {
+            System.out.println("Error streaming donations: " + e.getMessage());
+            return Stream.empty();
+        } finally {
+            Metrics.recordSince("db.streamAllDonations", start);
+        }
+    }
+    
+    private static Donation mapDonation(ResultSet rs) throws SQLException {
+        String date = rs.getString("date");
+        int requestId = rs.getInt("request_id");
+        return new Donation(
+            rs.wasNull() ? null : String.valueOf(requestId),
+            rs.getString("blood_type"),
+            rs.getInt("quantity"),
+            null, // location is not stored with the donation
+            date != null ? java.time.LocalDate.parse(date) : null,
+            rs.getString("status"),
+            rs.getString("username")
+        );
+    }
+    
     /**
      * Checks if username already exists
      * @param username The username to check
      * @return true if username exists, false otherwise
      */
     public static boolean usernameExists(String username) {
-        String sql = "SELECT COUNT(*) FROM users WHERE username = ?";
+        long start = System.nanoTime();
         
-        try (Connection conn = connect();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = connectForRead();
+             PreparedStatement stmt = conn.prepareStatement(USERNAME_EXISTS_SQL)) {
             
             stmt.setString(1, username);
             
@@ -694,6 +2287,8 @@ public class DbHelper {
             }
         } catch (SQLException e) {
             System.out.println("Error checking username: " + e.getMessage());
+        } finally {
+            Metrics.recordSince("db.usernameExists", start);
         }
         return false;
     }
@@ -0,0 +1,172 @@
+package com.redcell;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.text.Text;
+import javafx.util.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Hidden diagnostics view (double-click the version label in the sidebar).
+ * Shows latency percentiles per operation, cache hit ratios and pool/queue state,
+ * refreshed once a second while the view is on screen.
+ */
+public class DiagnosticsController {
+
+    @FXML
+    private TableView<TimerRow> timersTable;
+
+    @FXML
+    private TableView<CacheRow> cachesTable;
+
+    @FXML
+    private Text uptimeText;
+
+    @FXML
+    private Text poolText;
+
+    @FXML
+    private Text writeQueueText;
+
+    @FXML
+    private Text pendingIndexText;
+
+    private final ObservableList<TimerRow> timerRows = FXCollections.observableArrayList();
+    private final ObservableList<CacheRow> cacheRows = FXCollections.observableArrayList();
+
+    // Counts from the previous refresh, used to show throughput over the last interval
+    private final Map<String, Long> previousCounts = new HashMap<>();
+    private long previousRefreshNanos = System.nanoTime();
+
+    private Timeline refreshTimeline;
+
+    @FXML
+    public void initialize() {
+        timersTable.getColumns().add(column("Operation", row -> row.name));
+        timersTable.getColumns().add(column("Count", row -> String.valueOf(row.count)));
+        timersTable.getColumns().add(column("Ops/s", row -> String.format("%.1f", row.ratePerSecond)));
+        timersTable.getColumns().add(column("Mean (ms)", row -> String.format("%.3f", row.meanMillis)));
+        timersTable.getColumns().add(column("p50 (ms)", row -> String.format("%.3f", row.p50Millis)));
+        timersTable.getColumns().add(column("p99 (ms)", row -> String.format("%.3f", row.p99Millis)));
+        timersTable.getColumns().add(column("Max (ms)", row -> String.format("%.3f", row.maxMillis)));
+        timersTable.setItems(timerRows);
+        timersTable.setPlaceholder(new javafx.scene.control.Label("Nothing recorded yet"));
+
+        cachesTable.getColumns().add(column("Cache", row -> row.name));
+        cachesTable.getColumns().add(column("Hits", row -> String.valueOf(row.hits)));
+        cachesTable.getColumns().add(column("Misses", row -> String.valueOf(row.misses)));
+        cachesTable.getColumns().add(column("Hit ratio", row -> row.hits + row.misses == 0
+                ? "-" : String.format("%.1f%%", 100.0 * row.hits / (row.hits + row.misses))));
+        cachesTable.setItems(cacheRows);
+
+        refresh();
+
+        refreshTimeline = new Timeline(new KeyFrame(Duration.seconds(1), event -> refresh()));
+        refreshTimeline.setCycleCount(Timeline.INDEFINITE);
+        refreshTimeline.play();
+
+        // Stop refreshing once the view is replaced
+        timersTable.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (newScene == null) {
+                refreshTimeline.stop();
+            }
+        });
+    }
+
+    @FXML
+    private void handleReset() {
+        Metrics.reset();
+        previousCounts.clear();
+        refresh();
+    }
+
+    private void refresh() {
+        long now = System.nanoTime();
+        double elapsedSeconds = Math.max(0.001, (now - previousRefreshNanos) / 1_000_000_000.0);
+        previousRefreshNanos = now;
+
+        timerRows.clear();
+        for (Map.Entry<String, LatencyHistogram> entry : Metrics.getTimers().entrySet()) {
+            LatencyHistogram timer = entry.getValue();
+            long count = timer.getCount();
+            if (count == 0) {
+                continue;
+            }
+            Long previous = previousCounts.put(entry.getKey(), count);
+            double rate = previous == null ? 0 : Math.max(0, count - previous) / elapsedSeconds;
+            timerRows.add(new TimerRow(entry.getKey(), count, rate, timer.getMeanMillis(),
+                    timer.getPercentileMillis(50), timer.getPercentileMillis(99), timer.getMaxMillis()));
+        }
+
+        // Counters named cache.<name>.hits / cache.<name>.misses form one row per cache
+        Map<String, Long> counters = Metrics.getCounters();
+        cacheRows.clear();
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith("cache.") && name.endsWith(".hits")) {
+                String cache = name.substring("cache.".length(), name.length() - ".hits".length());
+                long misses = counters.getOrDefault("cache." + cache + ".misses", 0L);
+                cacheRows.add(new CacheRow(cache, entry.getValue(), misses));
+            }
+        }
+
+        uptimeText.setText(String.format("Uptime %.0f s", Metrics.getUptimeSeconds()));
+        // Only reads what is open; opening the pool from here could outlive a shutdown
+        ConnectionPool pool = DbHelper.peekConnectionPool();
+        poolText.setText("Connection pool: " + (pool != null ? pool.describeStats() : "not open"));
+        WriteQueue writeQueue = DbHelper.peekWriteQueue();
+        writeQueueText.setText("Write queue: " + (writeQueue != null ? writeQueue.describeStats() : "not started"));
+        PendingRequestIndex index = DbHelper.getPendingRequestIndex();
+        pendingIndexText.setText("Pending request index: " + (index.isLoaded()
+                ? index.size() + " requests in memory" : "not loaded"));
+    }
+
+    // Column widths come from the tables' CONSTRAINED_RESIZE_POLICY
+    private <S> TableColumn<S, String> column(String title, Function<S, String> value) {
+        TableColumn<S, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(cellData -> new SimpleStringProperty(value.apply(cellData.getValue())));
+        return column;
+    }
+
+    // Rows are rebuilt on every refresh, so they are plain immutable holders
+    public static class TimerRow {
+        private final String name;
+        private final long count;
+        private final double ratePerSecond;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        public TimerRow(String name, long count, double ratePerSecond, double meanMillis,
+                        double p50Millis, double p99Millis, double maxMillis) {
+            this.name = name;
+            this.count = count;
+            this.ratePerSecond = ratePerSecond;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+    }
+
+    public static class CacheRow {
+        private final String name;
+        private final long hits;
+        private final long misses;
+
+        public CacheRow(String name, long hits, long misses) {
+            this.name = name;
+            this.hits = hits;
+            this.misses = misses;
+        }
+    }
+}
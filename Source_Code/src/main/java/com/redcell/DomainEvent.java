@@ -0,0 +1,204 @@
+package com.redcell;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Something that changed in RedCell's data, published on the EventBus by DbHelper once the
+ * change has been committed. Subscribers pick the event types they care about.
+ */
+public abstract class DomainEvent {
+
+    private final long timestamp = System.currentTimeMillis();
+
+    /**
+     * @return When the event was published, in epoch milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * A facility created a blood request
+     */
+    public static final class RequestCreated extends DomainEvent {
+        private final Request request;
+        private final String facilityUsername;
+
+        public RequestCreated(Request request, String facilityUsername) {
+            this.request = request;
+            this.facilityUsername = facilityUsername;
+        }
+
+        public Request getRequest() { return request; }
+        public String getFacilityUsername() { return facilityUsername; }
+    }
+
+    /**
+     * A blood request's status changed, e.g. from Pending to Completed
+     */
+    public static final class RequestStatusChanged extends DomainEvent {
+        private final int requestId;
+        private final String status;
+        private final Request request;
+
+        /**
+         * @param request The request as committed, or null if it could not be read back
+         */
+        public RequestStatusChanged(int requestId, String status, Request request) {
+            this.requestId = requestId;
+            this.status = status;
+            this.request = request;
+        }
+
+        public int getRequestId() { return requestId; }
+        public String getStatus() { return status; }
+        public Request getRequest() { return request; }
+    }
+
+    /**
+     * A donor booked a donation
+     */
+    public static final class DonationSubmitted extends DomainEvent {
+        private final Donation donation;
+        private final String donorUsername;
+
+        public DonationSubmitted(Donation donation, String donorUsername) {
+            this.donation = donation;
+            this.donorUsername = donorUsername;
+        }
+
+        public Donation getDonation() { return donation; }
+        public String getDonorUsername() { return donorUsername; }
+    }
+
+    /**
+     * A donation was approved, rejected, completed or not completed
+     */
+    public static final class DonationStatusChanged extends DomainEvent {
+        private final int donationId;
+        private final int donorId;
+        private final String status;
+
+        public DonationStatusChanged(int donationId, int donorId, String status) {
+            this.donationId = donationId;
+            this.donorId = donorId;
+            this.status = status;
+        }
+
+        public int getDonationId() { return donationId; }
+        public int getDonorId() { return donorId; }
+        public String getStatus() { return status; }
+
+        /**
+         * @return true if the facility approved the donation
+         */
+        public boolean isApproved() {
+            return "Approved".equalsIgnoreCase(status);
+        }
+    }
+
+    /**
+     * Units entered or left a facility's inventory
+     */
+    public static final class InventoryChanged extends DomainEvent {
+        private final int facilityId;
+        private final String bloodType;
+        private final Component component;
+        private final InventoryMovementType kind;
+        private final int units;
+
+        public InventoryChanged(int facilityId, String bloodType, Component component, InventoryMovementType kind, int units) {
+            this.facilityId = facilityId;
+            this.bloodType = bloodType;
+            this.component = component;
+            this.kind = kind;
+            this.units = units;
+        }
+
+        public int getFacilityId() { return facilityId; }
+        public String getBloodType() { return bloodType; }
+        public Component getComponent() { return component; }
+        public InventoryMovementType getKind() { return kind; }
+        public int getUnits() { return units; }
+    }
+
+    /**
+     * Another connection, e.g. another RedCell instance sharing the database file, committed
+     * changes to these tracked tables. Which rows changed is not known; views reload what shows them.
+     */
+    public static final class ExternalChange extends DomainEvent {
+        private final Set<String> tables;
+
+        public ExternalChange(Set<String> tables) {
+            this.tables = Collections.unmodifiableSet(tables);
+        }
+
+        public Set<String> getTables() { return tables; }
+
+        public boolean touches(String table) {
+            return tables.contains(table);
+        }
+    }
+
+    /**
+     * The rows one transaction changed in the tables ChangeCapture tracks, whichever call
+     * site wrote them. Batches are published in commit order.
+     */
+    public static final class RowsChanged extends DomainEvent {
+        private final long commitSequence;
+        private final List<ChangeCapture.RowChange> changes;
+        private final Set<String> tables;
+        private final boolean complete;
+
+        /**
+         * @param complete false if the transaction changed more rows than were kept
+         */
+        public RowsChanged(long commitSequence, List<ChangeCapture.RowChange> changes, Set<String> tables, boolean complete) {
+            this.commitSequence = commitSequence;
+            this.changes = Collections.unmodifiableList(changes);
+            this.tables = Collections.unmodifiableSet(tables);
+            this.complete = complete;
+        }
+
+        /**
+         * @return Position of the transaction among those captured since the pool opened, from 1
+         */
+        public long getCommitSequence() { return commitSequence; }
+
+        /**
+         * @return The changed rows in the order they were written
+         */
+        public List<ChangeCapture.RowChange> getChanges() { return changes; }
+
+        public Set<String> getTables() { return tables; }
+
+        /**
+         * @return false if getChanges() is missing rows; reload the touched tables instead
+         */
+        public boolean isComplete() { return complete; }
+
+        public boolean touches(String table) {
+            return tables.contains(table);
+        }
+
+        /**
+         * @return Distinct ids of the table's rows changed by one of the operations, in first-change order
+         */
+        public long[] getRowIds(String table, ChangeCapture.Operation... operations) {
+            Set<ChangeCapture.Operation> wanted = operations.length == 0
+                    ? EnumSet.allOf(ChangeCapture.Operation.class) : EnumSet.copyOf(Arrays.asList(operations));
+            Set<Long> ids = new LinkedHashSet<>();
+            for (ChangeCapture.RowChange change : changes) {
+                if (change.getTable().equals(table) && wanted.contains(change.getOperation())) {
+                    ids.add(change.getRowId());
+                }
+            }
+            return ids.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+}
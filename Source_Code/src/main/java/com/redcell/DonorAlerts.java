@@ -0,0 +1,67 @@
+package com.redcell;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The most recent blood requests and the donors each one was sent to. A request is fanned out
+ * once, when it is created, by storing its sorted candidate donor ids; a donor's alerts are found
+ * with one binary search per stored request. Only the newest MAX_ALERTS requests are kept, and
+ * nothing is persisted, so alerts cover requests made while the application is running.
+ */
+public class DonorAlerts {
+
+    // Requests kept for alerting (-Dredcell.alerts.max)
+    static final int MAX_ALERTS = Math.max(1, Integer.getInteger("redcell.alerts.max", 200));
+
+    // Donors registered within this many km of the requesting facility's area are alerted (-Dredcell.alerts.radiusKm)
+    static final double RADIUS_KM = Double.parseDouble(System.getProperty("redcell.alerts.radiusKm", "5"));
+
+    private static final class Alert {
+        private final Request request;
+        private final int[] donorIds;
+
+        Alert(Request request, int[] donorIds) {
+            this.request = request;
+            this.donorIds = donorIds;
+        }
+    }
+
+    private final Deque<Alert> alerts = new ArrayDeque<>();
+
+    /**
+     * Records a new request for its candidate donors
+     * @param donorIds Ids of the donors to alert; the array is sorted in place and kept
+     */
+    public synchronized void post(Request request, int[] donorIds) {
+        Arrays.sort(donorIds);
+        alerts.addFirst(new Alert(request, donorIds));
+        if (alerts.size() > MAX_ALERTS) {
+            alerts.removeLast();
+        }
+    }
+
+    /**
+     * @return Requests the donor was alerted about, newest first
+     */
+    public synchronized List<Request> forDonor(int donorId) {
+        List<Request> requests = new ArrayList<>();
+        for (Alert alert : alerts) {
+            if (Arrays.binarySearch(alert.donorIds, donorId) >= 0) {
+                requests.add(alert.request);
+            }
+        }
+        return requests;
+    }
+
+    public synchronized void clear() {
+        alerts.clear();
+    }
+
+    public synchronized int size() {
+        return alerts.size();
+    }
+}
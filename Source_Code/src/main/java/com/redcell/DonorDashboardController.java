@@ -66,6 +66,9 @@ public class DonorDashboardController {
     @FXML
     private VBox adSlideshow;
     
+    @FXML
+    private javafx.scene.control.ScrollPane dashboardScrollPane;
+    
     private List<String> adImages = Arrays.asList(
         "/img/ad_01_emergency.png",
         "/img/ad_02_dangue.png",
@@ -79,6 +82,17 @@ public class DonorDashboardController {
     
     private int currentAdIndex = 0;
     private Timeline slideShowTimeline;
+    
+    // Backing list for bookDonationTable, filled a page at a time as the user scrolls
+    private final ObservableList<Request> pendingRequests = FXCollections.observableArrayList();
+    // Replaced when another instance changed requests, so the table is paged again from the top
+    private PendingRequestFeed pendingRequestFeed = PendingRequestFeed.forDonor(loggedInUsername);
+    private boolean loadingRequestPage = false;
+    // Until the feed's first page is shown, new requests arrive with that page instead
+    private boolean requestPageLoaded = false;
+    
+    // Start loading the next page when this many rows are left below the visible area
+    private static final int PAGE_PREFETCH_ROWS = 10;
 
     public static void setLoggedInState(boolean state) {
         isLoggedIn = state;
@@ -88,6 +102,9 @@ public class DonorDashboardController {
         loggedInUsername = username;
     }
 
+    // Event subscriptions of the dashboard currently shown; replaced when it is loaded again
+    private static final java.util.List<EventBus.Subscription> subscriptions = new java.util.ArrayList<>();
+
     @FXML
     public void initialize() {
         // Initialize user information
@@ -107,6 +124,40 @@ public class DonorDashboardController {
         
         // Initialize ad slideshow
         initializeAdSlideshow();
+        
+        // Keep the request table current without reloading it
+        subscribeToRequestChanges();
+    }
+    
+    private void subscribeToRequestChanges() {
+        subscriptions.forEach(EventBus.Subscription::cancel);
+        subscriptions.clear();
+        subscriptions.add(AsyncDbHelper.onEvent(DomainEvent.RequestCreated.class, event -> {
+            Request request = event.getRequest();
+            if (requestPageLoaded && PendingRequestIndex.PENDING.equals(request.getStatus())
+                    && pendingRequestFeed.accepts(request) && !isShown(request.getRequestId())) {
+                // Newest first, like the feed
+                pendingRequests.add(0, request);
+            }
+        }));
+        subscriptions.add(AsyncDbHelper.onEvent(DomainEvent.RequestStatusChanged.class, event -> {
+            String requestId = String.valueOf(event.getRequestId());
+            pendingRequests.removeIf(request -> requestId.equals(request.getRequestId()));
+            if (event.getRequest() != null && PendingRequestIndex.PENDING.equals(event.getStatus())
+                    && pendingRequestFeed.accepts(event.getRequest())) {
+                pendingRequests.add(0, event.getRequest());
+            }
+        }));
+        // Another instance's changes carry no rows, so page the table again
+        subscriptions.add(AsyncDbHelper.onEvent(DomainEvent.ExternalChange.class, event -> {
+            if (event.touches("requests")) {
+                pendingRequestFeed = PendingRequestFeed.forDonor(loggedInUsername);
+                loadingRequestPage = false;
+                requestPageLoaded = false;
+                pendingRequests.clear();
+                loadNextRequestPage();
+            }
+        }));
     }
     
     private void initializeUserInfo() {
@@ -189,23 +240,16 @@ public class DonorDashboardController {
         bookDonationTable.getColumns().clear();
         bookDonationTable.getColumns().addAll(bloodTypeCol, unitsCol, locationCol, dateCol, statusCol, selectCol);
 
-        // Load blood requests from database
-        try {
-            List<Request> allRequests = DbHelper.getPendingBloodRequests();
-            ObservableList<Request> observableRequests = FXCollections.observableArrayList(allRequests);
-            
-            // Filter out requests with "Completed" status
-            ObservableList<Request> filteredRequests = observableRequests.filtered(request -> 
-                !request.getStatus().equalsIgnoreCase("Completed"));
-            
-            bookDonationTable.setItems(filteredRequests);
-        } catch (Exception e) {
-            System.err.println("Error loading blood requests: " + e.getMessage());
-            e.printStackTrace();
-            
-            // Fallback to empty list if database fails
-            bookDonationTable.setItems(FXCollections.observableArrayList());
-        }
+        // The feed only returns pending requests, so no client-side status filter is needed
+        bookDonationTable.setItems(pendingRequests);
+        
+        // Load the first page of blood requests without blocking the FX thread
+        bookDonationTable.setPlaceholder(new javafx.scene.control.Label("Loading blood requests..."));
+        loadNextRequestPage();
+        
+        // The table grows with its rows, so the dashboard scroll pane decides when more are needed
+        dashboardScrollPane.vvalueProperty().addListener((obs, oldValue, newValue) -> loadMoreRequestsIfNeeded());
+        dashboardScrollPane.viewportBoundsProperty().addListener((obs, oldValue, newValue) -> loadMoreRequestsIfNeeded());
         
         // Configure table properties to prevent scrolling and show only needed rows
         bookDonationTable.setFixedCellSize(45);
@@ -222,6 +266,73 @@ public class DonorDashboardController {
         selectCol.prefWidthProperty().bind(bookDonationTable.widthProperty().multiply(0.2));
     }
     
+    private void loadNextRequestPage() {
+        if (loadingRequestPage || pendingRequestFeed.isExhausted()) {
+            return;
+        }
+        loadingRequestPage = true;
+        PendingRequestFeed feed = pendingRequestFeed;
+        AsyncDbHelper.deliver(feed.nextPage(),
+            page -> {
+                if (feed != pendingRequestFeed) {
+                    return;
+                }
+                loadingRequestPage = false;
+                requestPageLoaded = true;
+                bookDonationTable.setPlaceholder(new javafx.scene.control.Label("No pending blood requests"));
+                // A request added by an event may also come with a later page
+                java.util.Set<String> shown = new java.util.HashSet<>();
+                for (Request request : pendingRequests) {
+                    shown.add(request.getRequestId());
+                }
+                for (Request request : page.getRequests()) {
+                    if (!shown.contains(request.getRequestId())) {
+                        pendingRequests.add(request);
+                    }
+                }
+                
+                // A short first page may not fill the viewport, so check again once it is laid out
+                javafx.application.Platform.runLater(this::loadMoreRequestsIfNeeded);
+            },
+            error -> {
+                if (feed != pendingRequestFeed) {
+                    return;
+                }
+                loadingRequestPage = false;
+                System.err.println("Error loading blood requests: " + error.getMessage());
+                error.printStackTrace();
+                
+                if (pendingRequests.isEmpty()) {
+                    bookDonationTable.setPlaceholder(new javafx.scene.control.Label("Could not load blood requests"));
+                }
+            });
+    }
+    
+    private boolean isShown(String requestId) {
+        for (Request request : pendingRequests) {
+            if (request.getRequestId().equals(requestId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void loadMoreRequestsIfNeeded() {
+        if (loadingRequestPage || pendingRequestFeed.isExhausted() || dashboardScrollPane.getContent() == null) {
+            return;
+        }
+        // Compare the bottom of the table with the bottom of the visible area, both in scene coordinates
+        javafx.geometry.Bounds tableBounds = bookDonationTable.localToScene(bookDonationTable.getLayoutBounds());
+        javafx.geometry.Bounds viewportBounds = dashboardScrollPane.localToScene(dashboardScrollPane.getLayoutBounds());
+        if (tableBounds == null || viewportBounds == null) {
+            return;
+        }
+        double rowsBelowViewport = (tableBounds.getMaxY() - viewportBounds.getMaxY()) / bookDonationTable.getFixedCellSize();
+        if (rowsBelowViewport < PAGE_PREFETCH_ROWS) {
+            loadNextRequestPage();
+        }
+    }
+    
     private void initializeAvailableBloodTable() {
         // Initialize table columns
         TableColumn<BloodAvailability, String> hospitalCol = new TableColumn<>("Hospital/Facility");
@@ -441,39 +552,42 @@ public class DonorDashboardController {
             
             alert.showAndWait().ifPresent(buttonType -> {
                 if (buttonType == confirmButton) {
-                    try {
-                        // Create a new donation in the database
-                        String donationId = "DON-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-                        String donorId = loggedInUsername; // Use actual logged-in user
-                        
-                        Donation newDonation = new Donation(
-                            request.getRequestId(),
-                            request.getBloodType(),
-                            request.getUnits(),
-                            request.getHospital(),
-                            LocalDate.now(),
-                            "PENDING", // Initial status
-                            donorId
-                        );
-                        boolean donationCreated = DbHelper.createDonation(newDonation, loggedInUsername);
-                        
-                        if (donationCreated) {
-                            // Update the request status to Processing
-                            request.setStatus("Processing");
-                            
-                            // Refresh the table to show the updated status
+                    // Create a new donation in the database
+                    String donationId = "DON-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+                    String donorId = loggedInUsername; // Use actual logged-in user
+                    
+                    Donation newDonation = new Donation(
+                        request.getRequestId(),
+                        request.getBloodType(),
+                        request.getUnits(),
+                        request.getHospital(),
+                        LocalDate.now(),
+                        "PENDING", // Initial status
+                        donorId
+                    );
+                    
+                    // Show the pending state while the write queue commits the donation
+                    String previousStatus = request.getStatus();
+                    request.setStatus("Processing");
+                    bookDonationTable.refresh();
+                    
+                    AsyncDbHelper.deliver(AsyncDbHelper.createDonation(newDonation, loggedInUsername),
+                        donationCreated -> {
+                            if (donationCreated) {
+                                // Show confirmation message
+                                showAlert("Donation Confirmed", "Your donation has been confirmed and saved to the database. Donation ID: " + donationId + ". You will be notified when the facility approves your donation.");
+                            } else {
+                                request.setStatus(previousStatus);
+                                bookDonationTable.refresh();
+                                showAlert("Error", "Failed to create donation record. Please try again.");
+                            }
+                        },
+                        error -> {
+                            request.setStatus(previousStatus);
                             bookDonationTable.refresh();
-                            
-                            // Show confirmation message
-                            showAlert("Donation Confirmed", "Your donation has been confirmed and saved to the database. Donation ID: " + donationId + ". You will be notified when the facility approves your donation.");
-                        } else {
-                            showAlert("Error", "Failed to create donation record. Please try again.");
-                        }
-                        
-                    } catch (Exception e) {
-                        showAlert("Error", "Error creating donation: " + e.getMessage());
-                        e.printStackTrace();
-                    }
+                            showAlert("Error", "Error creating donation: " + error.getMessage());
+                            error.printStackTrace();
+                        });
                 }
             });
         } else {
@@ -493,11 +607,9 @@ public class DonorDashboardController {
         }
     }
     
-    // Method to check blood group compatibility
+    // Method to check blood group compatibility; donors give whole blood, so the red cell rules apply
     private boolean isBloodGroupCompatible(String donorBloodGroup, String recipientBloodGroup) {
-        // For simplicity, we'll just check if blood groups match exactly
-        // In a real application, you would implement proper blood type compatibility rules
-        return donorBloodGroup.equalsIgnoreCase(recipientBloodGroup);
+        return BloodCompatibility.canDonate(donorBloodGroup, recipientBloodGroup, Component.WHOLE_BLOOD);
     }
     
     // Helper method to show alerts
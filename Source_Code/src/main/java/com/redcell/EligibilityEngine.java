@@ -0,0 +1,337 @@
+package com.redcell;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Knows for every donor the day they may donate again, under compiled EligibilityRules.
+ *
+ * The day is kept in an array indexed by donor id (ids are dense), so "is donor X eligible"
+ * is one array read, and donors are bucketed by that day, so "who became eligible today" is
+ * one map lookup. The whole donor table is evaluated by reevaluate(), which splits the id
+ * range into slices read and evaluated in parallel; after that DbHelper updates single
+ * donors as their donations, status or registration commit.
+ */
+public class EligibilityEngine {
+
+    // Slot of an id that is not a donor
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * The inputs of the rules for one donor
+     */
+    public static final class DonorRecord {
+        /**
+         * Last donation day of a component never donated
+         */
+        public static final int NONE = Integer.MIN_VALUE;
+
+        private final int donorId;
+        private final DonorStatus status;
+        private final int[] lastDonationDays = new int[Component.values().length];
+
+        /**
+         * @param status The stored status; null means no block
+         */
+        public DonorRecord(int donorId, DonorStatus status) {
+            this.donorId = donorId;
+            this.status = status == null ? DonorStatus.ELIGIBLE : status;
+            Arrays.fill(lastDonationDays, NONE);
+        }
+
+        /**
+         * Records a donation; only the latest per component counts
+         */
+        public void addDonation(Component component, LocalDate date) {
+            int day = (int) date.toEpochDay();
+            lastDonationDays[component.ordinal()] = Math.max(lastDonationDays[component.ordinal()], day);
+        }
+
+        public int getDonorId() { return donorId; }
+        public DonorStatus getStatus() { return status; }
+
+        /**
+         * @return Epoch day of the last donation of the component, or NONE
+         */
+        int getLastDonationDay(int componentOrdinal) {
+            return lastDonationDays[componentOrdinal];
+        }
+    }
+
+    /**
+     * Reads the donors with ids in a range, e.g. with one SQL query on its own connection.
+     * Slices are read concurrently, so each call must use its own resources.
+     */
+    @FunctionalInterface
+    public interface SliceReader {
+        void read(int fromId, int toId, Consumer<DonorRecord> sink) throws SQLException;
+    }
+
+    private final EligibilityRules.Compiled rules;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Epoch day each donor becomes eligible, by donor id
+    private int[] eligibleFrom = new int[0];
+    // Donor ids by the epoch day they become eligible; donors who may always or never donate are in no bucket
+    private Map<Integer, Set<Integer>> byDay = new HashMap<>();
+    private int size;
+
+    // Donors changed while a reevaluation was running; they win over what it read
+    private final Map<Integer, Integer> changedDuringLoad = new HashMap<>();
+    private volatile boolean loading = false;
+    private volatile boolean loaded = false;
+
+    public EligibilityEngine(EligibilityRules.Compiled rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Evaluates every donor again, e.g. at startup or after the rules changed.
+     * Slices of the id range are read and evaluated on parallel virtual threads.
+     * @param maxDonorId Highest donor id in the table
+     * @param slices Number of parallel slices; no more than the readers the reader can open at once
+     * @return The number of donors evaluated
+     * @throws SQLException if a slice could not be read; the previous state is kept
+     */
+    public int reevaluate(int maxDonorId, int slices, SliceReader reader) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            loading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        int[] days = new int[maxDonorId + 1];
+        Arrays.fill(days, UNKNOWN);
+        int sliceCount = Math.max(1, Math.min(slices, maxDonorId));
+        int sliceSize = (maxDonorId + sliceCount - 1) / Math.max(sliceCount, 1);
+        List<Future<Integer>> results = new ArrayList<>();
+        int evaluated = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int from = 1; from <= maxDonorId; from += sliceSize) {
+                int fromId = from;
+                int toId = Math.min(maxDonorId, from + sliceSize - 1);
+                results.add(executor.submit(() -> {
+                    int[] count = new int[1];
+                    // Slices own disjoint id ranges, so they write disjoint slots
+                    reader.read(fromId, toId, donor -> {
+                        if (donor.donorId >= fromId && donor.donorId <= toId) {
+                            days[donor.donorId] = rules.eligibleFrom(donor);
+                            count[0]++;
+                        }
+                    });
+                    return count[0];
+                }));
+            }
+            for (Future<Integer> result : results) {
+                evaluated += result.get();
+            }
+        } catch (ExecutionException e) {
+            finishLoading();
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException("Eligibility reevaluation failed", e.getCause());
+        } catch (InterruptedException e) {
+            finishLoading();
+            Thread.currentThread().interrupt();
+            throw new SQLException("Eligibility reevaluation interrupted", e);
+        }
+
+        Map<Integer, Set<Integer>> buckets = new HashMap<>();
+        int count = 0;
+        for (int id = 1; id < days.length; id++) {
+            if (days[id] != UNKNOWN) {
+                count++;
+                if (days[id] != EligibilityRules.ALWAYS && days[id] != EligibilityRules.NEVER) {
+                    buckets.computeIfAbsent(days[id], k -> new HashSet<>()).add(id);
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            eligibleFrom = days;
+            byDay = buckets;
+            size = count;
+            for (Map.Entry<Integer, Integer> change : changedDuringLoad.entrySet()) {
+                set(change.getKey(), change.getValue());
+            }
+            changedDuringLoad.clear();
+            loading = false;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return evaluated;
+    }
+
+    private void finishLoading() {
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad.clear();
+            loading = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once a reevaluation has finished and the engine can answer queries
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return true while loading or loaded, i.e. when committed changes must be applied
+     */
+    public boolean isTracking() {
+        return loading || loaded;
+    }
+
+    /**
+     * Evaluates one donor after their donations, status or registration committed
+     */
+    public void put(DonorRecord donor) {
+        int day = rules.eligibleFrom(donor);
+        lock.writeLock().lock();
+        try {
+            set(donor.donorId, day);
+            if (loading) {
+                changedDuringLoad.put(donor.donorId, day);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the donor may donate on the day; false for unknown donors
+     */
+    public boolean isEligible(int donorId, LocalDate day) {
+        lock.readLock().lock();
+        try {
+            return donorId > 0 && donorId < eligibleFrom.length && eligibleFrom[donorId] != UNKNOWN
+                    && eligibleFrom[donorId] <= day.toEpochDay();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The first day the donor may donate, LocalDate.MIN if they always may,
+     *         LocalDate.MAX if they are blocked, or null for unknown donors
+     */
+    public LocalDate getEligibleFrom(int donorId) {
+        lock.readLock().lock();
+        try {
+            int day = donorId > 0 && donorId < eligibleFrom.length ? eligibleFrom[donorId] : UNKNOWN;
+            if (day == UNKNOWN) {
+                return null;
+            }
+            return day == EligibilityRules.ALWAYS ? LocalDate.MIN
+                    : day == EligibilityRules.NEVER ? LocalDate.MAX : LocalDate.ofEpochDay(day);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Ids of the donors whose deferral ends on the day, in no particular order
+     */
+    public int[] becameEligibleOn(LocalDate day) {
+        lock.readLock().lock();
+        try {
+            Set<Integer> donors = byDay.get((int) day.toEpochDay());
+            return donors == null ? new int[0] : donors.stream().mapToInt(Integer::intValue).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The ids that are eligible on the day, in their original order
+     */
+    public int[] retainEligible(int[] donorIds, LocalDate day) {
+        long epochDay = day.toEpochDay();
+        lock.readLock().lock();
+        try {
+            int[] kept = new int[donorIds.length];
+            int count = 0;
+            for (int id : donorIds) {
+                if (id > 0 && id < eligibleFrom.length && eligibleFrom[id] != UNKNOWN && eligibleFrom[id] <= epochDay) {
+                    kept[count++] = id;
+                }
+            }
+            return count == kept.length ? kept : Arrays.copyOf(kept, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops everything and marks the engine as not loaded
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            eligibleFrom = new int[0];
+            byDay = new HashMap<>();
+            size = 0;
+            changedDuringLoad.clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Callers hold the write lock
+    private void set(int donorId, int day) {
+        if (donorId <= 0) {
+            return;
+        }
+        if (donorId >= eligibleFrom.length) {
+            int oldLength = eligibleFrom.length;
+            eligibleFrom = Arrays.copyOf(eligibleFrom, Math.max(donorId + 1, oldLength + oldLength / 2));
+            Arrays.fill(eligibleFrom, oldLength, eligibleFrom.length, UNKNOWN);
+        }
+        int old = eligibleFrom[donorId];
+        if (old == UNKNOWN) {
+            size++;
+        } else {
+            Set<Integer> bucket = byDay.get(old);
+            if (bucket != null) {
+                bucket.remove(donorId);
+                if (bucket.isEmpty()) {
+                    byDay.remove(old);
+                }
+            }
+        }
+        eligibleFrom[donorId] = day;
+        if (day != EligibilityRules.ALWAYS && day != EligibilityRules.NEVER) {
+            byDay.computeIfAbsent(day, k -> new HashSet<>()).add(donorId);
+        }
+    }
+}
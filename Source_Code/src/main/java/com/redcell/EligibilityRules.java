@@ -0,0 +1,128 @@
+package com.redcell;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Deferral rules for blood donors: the minimum number of days after a donation of each
+ * component before the donor may donate again, and the donor statuses that block donating
+ * altogether. compile() turns them into one function from a donor to the epoch day they
+ * become eligible, which EligibilityEngine evaluates for every donor.
+ *
+ * The interval follows the component last donated and applies to the next donation of any
+ * component, e.g. a whole blood donor waits 90 days before giving platelets as well.
+ */
+public class EligibilityRules {
+
+    /**
+     * Epoch day of a donor who may always donate, e.g. one who never donated
+     */
+    public static final int ALWAYS = Integer.MIN_VALUE + 1;
+
+    /**
+     * Epoch day of a donor who may never donate, i.e. one with a blocking status
+     */
+    public static final int NEVER = Integer.MAX_VALUE;
+
+    /**
+     * A compiled rule set
+     */
+    @FunctionalInterface
+    public interface Compiled {
+        /**
+         * @return Epoch day from which the donor may donate, ALWAYS or NEVER
+         */
+        int eligibleFrom(EligibilityEngine.DonorRecord donor);
+
+        /**
+         * @return A predicate that is true for the donors eligible on the day
+         */
+        default Predicate<EligibilityEngine.DonorRecord> eligibleOn(LocalDate day) {
+            long epochDay = day.toEpochDay();
+            return donor -> eligibleFrom(donor) <= epochDay;
+        }
+    }
+
+    private final Map<Component, Integer> intervalDays = new EnumMap<>(Component.class);
+    private final Set<DonorStatus> blockingStatuses = EnumSet.noneOf(DonorStatus.class);
+
+    /**
+     * @param intervalDays Days to wait after donating each component; components not listed do not defer
+     * @param blockingStatuses Statuses that keep a donor from donating until they change
+     */
+    public EligibilityRules(Map<Component, Integer> intervalDays, Set<DonorStatus> blockingStatuses) {
+        for (Map.Entry<Component, Integer> interval : intervalDays.entrySet()) {
+            if (interval.getValue() < 0) {
+                throw new IllegalArgumentException("Negative interval for " + interval.getKey());
+            }
+            this.intervalDays.put(interval.getKey(), interval.getValue());
+        }
+        this.blockingStatuses.addAll(blockingStatuses);
+    }
+
+    /**
+     * The standard rules: 90 days after whole blood (EligibleDonorIndex.DONATION_INTERVAL_DAYS),
+     * 112 after double red cells, 7 after platelets and 28 after plasma, and donors who are
+     * BLOCKED or UNAVAILABLE may not donate. Each interval can be changed with
+     * -Dredcell.eligibility.days.&lt;COMPONENT&gt;, e.g. -Dredcell.eligibility.days.SDP=14
+     */
+    public static EligibilityRules defaults() {
+        Map<Component, Integer> days = new EnumMap<>(Component.class);
+        days.put(Component.WHOLE_BLOOD, EligibleDonorIndex.DONATION_INTERVAL_DAYS);
+        days.put(Component.RCC_PRBC, 112);
+        days.put(Component.SDP, 7);
+        days.put(Component.FFP, 28);
+        for (Component component : Component.values()) {
+            days.put(component, Integer.getInteger("redcell.eligibility.days." + component.name(), days.get(component)));
+        }
+        return new EligibilityRules(days, EnumSet.of(DonorStatus.BLOCKED, DonorStatus.UNAVAILABLE));
+    }
+
+    public int getIntervalDays(Component component) {
+        return intervalDays.getOrDefault(component, 0);
+    }
+
+    public boolean isBlocking(DonorStatus status) {
+        return blockingStatuses.contains(status);
+    }
+
+    /**
+     * Compiles the rules into one function: a block check on the status ordinal, then the
+     * latest of "last donation of the component + its interval" over the deferring components
+     */
+    public Compiled compile() {
+        boolean[] blocked = new boolean[DonorStatus.values().length];
+        for (DonorStatus status : blockingStatuses) {
+            blocked[status.ordinal()] = true;
+        }
+        List<ToIntFunction<EligibilityEngine.DonorRecord>> deferrals = new ArrayList<>();
+        for (Map.Entry<Component, Integer> interval : intervalDays.entrySet()) {
+            int component = interval.getKey().ordinal();
+            int days = interval.getValue();
+            if (days > 0) {
+                deferrals.add(donor -> {
+                    int last = donor.getLastDonationDay(component);
+                    return last == EligibilityEngine.DonorRecord.NONE ? ALWAYS : last + days;
+                });
+            }
+        }
+        List<ToIntFunction<EligibilityEngine.DonorRecord>> rules = List.copyOf(deferrals);
+        return donor -> {
+            if (blocked[donor.getStatus().ordinal()]) {
+                return NEVER;
+            }
+            int from = ALWAYS;
+            for (ToIntFunction<EligibilityEngine.DonorRecord> rule : rules) {
+                from = Math.max(from, rule.applyAsInt(donor));
+            }
+            return from;
+        };
+    }
+}
@@ -0,0 +1,317 @@
+package com.redcell;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory reverse index from blood type and area to the donors who may be asked to donate.
+ * A donor is a candidate once DONATION_INTERVAL_DAYS have passed since their last donation.
+ * The index does not know donor status blocks or the other components' intervals; DbHelper
+ * passes its candidates through EligibilityEngine, which does, and finds no donors until both
+ * are loaded. Donor status changes therefore only need to reach the engine.
+ * It is loaded once from the database and then kept current by DbHelper as registrations,
+ * donations and donation status changes commit, so a new request finds its candidate donors
+ * without scanning the donors table.
+ *
+ * Donors still inside the interval wait in a map ordered by the day they become eligible;
+ * lookups move the ones whose day has come into the eligible sets first, so the index never
+ * needs a periodic rescan.
+ */
+public class EligibleDonorIndex {
+
+    // Days between donations (-Dredcell.donor.intervalDays)
+    public static final int DONATION_INTERVAL_DAYS = Integer.getInteger("redcell.donor.intervalDays", 90);
+
+    /**
+     * What the index needs to know about one donor
+     */
+    public static final class Entry {
+        private final int donorId;
+        private final BloodType bloodType;
+        private final String area;
+        // Area as matched by lookups (see Gazetteer.matchKey)
+        private final String areaKey;
+        private final LocalDate lastDonationDate;
+
+        /**
+         * @param bloodType Blood type as stored in the database; donors with an unknown type are not indexed
+         * @param lastDonationDate Date of the last donation, or null if the donor never donated
+         */
+        public Entry(int donorId, String bloodType, String area, LocalDate lastDonationDate) {
+            this.donorId = donorId;
+            this.bloodType = BloodType.fromDisplayName(bloodType);
+            this.area = area == null ? "" : area;
+            this.areaKey = Gazetteer.getDefault().matchKey(area);
+            this.lastDonationDate = lastDonationDate;
+        }
+
+        public int getDonorId() { return donorId; }
+        public BloodType getBloodType() { return bloodType; }
+        public String getArea() { return area; }
+        public LocalDate getLastDonationDate() { return lastDonationDate; }
+
+        /**
+         * @return The first day the donor may donate again
+         */
+        public LocalDate getEligibleFrom() {
+            return lastDonationDate == null ? LocalDate.MIN : lastDonationDate.plusDays(DONATION_INTERVAL_DAYS);
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> byId = new HashMap<>();
+    // Eligible donor ids by blood type ordinal, then area key
+    private final List<Map<String, Set<Integer>>> eligible = new ArrayList<>(BloodType.values().length);
+    // Donors inside the donation interval, by the day they become eligible
+    private final TreeMap<LocalDate, Set<Integer>> waiting = new TreeMap<>();
+    private int eligibleCount;
+
+    // Ids changed while the initial load was running; the load must not overwrite them
+    private final Set<Integer> changedDuringLoad = new HashSet<>();
+    private volatile boolean loading = false;
+    private volatile boolean loaded = false;
+
+    public EligibleDonorIndex() {
+        for (int i = 0; i < BloodType.values().length; i++) {
+            eligible.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Fills the index from a stream of donors. Changes applied while loading win over the
+     * loaded rows, so registrations and donations that commit during the load are not lost.
+     * @param rows Every donor in any order; the stream is consumed but not closed
+     */
+    public void load(Stream<Entry> rows) {
+        lock.writeLock().lock();
+        try {
+            loading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        rows.forEach(entry -> {
+            lock.writeLock().lock();
+            try {
+                if (!changedDuringLoad.contains(entry.donorId)) {
+                    insert(entry);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+
+        lock.writeLock().lock();
+        try {
+            changedDuringLoad.clear();
+            loading = false;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once the initial load has finished and the index can answer queries
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return true while loading or loaded, i.e. when committed changes must be applied
+     */
+    public boolean isTracking() {
+        return loading || loaded;
+    }
+
+    /**
+     * Adds or replaces a donor after their registration, donation or donation status change committed
+     */
+    public void put(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            delete(entry.donorId);
+            insert(entry);
+            if (loading) {
+                changedDuringLoad.add(entry.donorId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops everything and marks the index as not loaded
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            byId.clear();
+            for (Map<String, Set<Integer>> areas : eligible) {
+                areas.clear();
+            }
+            waiting.clear();
+            eligibleCount = 0;
+            changedDuringLoad.clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of donors who may donate today
+     */
+    public int getEligibleCount() {
+        promoteDue(LocalDate.now());
+        lock.readLock().lock();
+        try {
+            return eligibleCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the donors to alert for a request: eligible today, in the area, and with a blood type
+     * that may give the component to the recipient
+     * @return Donor ids in no particular order
+     */
+    public int[] candidates(BloodType recipient, Component component, String area) {
+        return candidates(BloodCompatibility.donorsFor(recipient, component), area);
+    }
+
+    /**
+     * @param bloodTypes Mask of the donor blood types wanted (see BloodType)
+     * @param area Area name; case and extra spaces are ignored, and names of the same gazetteer
+     *             place match, e.g. "Mirpur" finds donors registered in "Mirpur, Dhaka"
+     * @return Ids of the donors eligible today in the area, in no particular order
+     */
+    public int[] candidates(int bloodTypes, String area) {
+        return candidates(bloodTypes, List.of(area == null ? "" : area));
+    }
+
+    /**
+     * @param bloodTypes Mask of the donor blood types wanted (see BloodType)
+     * @param areas Area names, e.g. every area near a facility; duplicates are ignored
+     * @return Ids of the donors eligible today in any of the areas, in no particular order
+     */
+    public int[] candidates(int bloodTypes, Collection<String> areas) {
+        promoteDue(LocalDate.now());
+        Gazetteer gazetteer = Gazetteer.getDefault();
+        Set<String> keys = new HashSet<>();
+        for (String area : areas) {
+            keys.add(gazetteer.matchKey(area));
+        }
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (BloodType type : BloodType.values()) {
+                if ((bloodTypes & type.mask()) != 0) {
+                    for (String key : keys) {
+                        Set<Integer> donors = eligible.get(type.ordinal()).get(key);
+                        count += donors == null ? 0 : donors.size();
+                    }
+                }
+            }
+            int[] ids = new int[count];
+            int next = 0;
+            for (BloodType type : BloodType.values()) {
+                if ((bloodTypes & type.mask()) != 0) {
+                    for (String key : keys) {
+                        Set<Integer> donors = eligible.get(type.ordinal()).get(key);
+                        if (donors != null) {
+                            for (int id : donors) {
+                                ids[next++] = id;
+                            }
+                        }
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Moves donors whose interval has ended into the eligible sets
+    private void promoteDue(LocalDate today) {
+        lock.readLock().lock();
+        try {
+            if (waiting.isEmpty() || waiting.firstKey().isAfter(today)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            while (!waiting.isEmpty() && !waiting.firstKey().isAfter(today)) {
+                for (int id : waiting.pollFirstEntry().getValue()) {
+                    Entry entry = byId.get(id);
+                    eligible.get(entry.bloodType.ordinal()).computeIfAbsent(entry.areaKey, k -> new HashSet<>()).add(id);
+                    eligibleCount++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Callers hold the write lock
+    private void insert(Entry entry) {
+        if (entry.bloodType == null) {
+            return;
+        }
+        byId.put(entry.donorId, entry);
+        LocalDate eligibleFrom = entry.getEligibleFrom();
+        if (eligibleFrom.isAfter(LocalDate.now())) {
+            waiting.computeIfAbsent(eligibleFrom, k -> new HashSet<>()).add(entry.donorId);
+        } else {
+            eligible.get(entry.bloodType.ordinal()).computeIfAbsent(entry.areaKey, k -> new HashSet<>()).add(entry.donorId);
+            eligibleCount++;
+        }
+    }
+
+    // Callers hold the write lock
+    private void delete(int donorId) {
+        Entry existing = byId.remove(donorId);
+        if (existing == null) {
+            return;
+        }
+        Set<Integer> areaDonors = eligible.get(existing.bloodType.ordinal()).get(existing.areaKey);
+        if (areaDonors != null && areaDonors.remove(donorId)) {
+            eligibleCount--;
+            if (areaDonors.isEmpty()) {
+                eligible.get(existing.bloodType.ordinal()).remove(existing.areaKey);
+            }
+            return;
+        }
+        Set<Integer> sameDay = waiting.get(existing.getEligibleFrom());
+        if (sameDay != null) {
+            sameDay.remove(donorId);
+            if (sameDay.isEmpty()) {
+                waiting.remove(existing.getEligibleFrom());
+            }
+        }
+    }
+}
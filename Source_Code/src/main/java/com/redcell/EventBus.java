@@ -0,0 +1,229 @@
+package com.redcell;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * In-process publish/subscribe for DomainEvents.
+ *
+ * Publishers claim a slot in a bounded ring buffer with one compare-and-set on the claim
+ * sequence, write the event and mark the slot with its sequence number; no locks are taken.
+ * A single dispatcher thread, started by the first publish, reads the slots in sequence order
+ * and hands each event to the subscribers of its type, so every subscriber sees events in publish order.
+ *
+ * When the buffer is full, publishers wait for the dispatcher to free a slot (back-pressure).
+ * Row changes are published from the writer thread, so a publisher never waits longer than
+ * maxWaitMillis; after that the event is dropped and counted instead of stalling every write.
+ * For the same reason handlers must not wait on the write queue; they run on the dispatcher
+ * thread and should hand slow work elsewhere (AsyncDbHelper.onEvent moves them to the FX thread).
+ */
+public class EventBus {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final long DEFAULT_MAX_WAIT_MS = 1000;
+
+    /**
+     * A registered handler; cancel() stops further deliveries
+     */
+    public static final class Subscription {
+        private final Class<? extends DomainEvent> type;
+        private final Consumer<DomainEvent> handler;
+        private final EventBus bus;
+
+        private Subscription(Class<? extends DomainEvent> type, Consumer<DomainEvent> handler, EventBus bus) {
+            this.type = type;
+            this.handler = handler;
+            this.bus = bus;
+        }
+
+        public void cancel() {
+            bus.subscriptions.remove(this);
+        }
+    }
+
+    // Marks a slot that has not been published since the buffer was created
+    private static final long EMPTY = -1;
+
+    private final int mask;
+    private final long maxWaitNanos;
+    private final AtomicReferenceArray<DomainEvent> events;
+    // Sequence number of the event in each slot, set last so the dispatcher sees a complete event
+    private final AtomicLongArray published;
+    // Next sequence number to claim
+    private final AtomicLong claimed = new AtomicLong();
+    // Next sequence number to dispatch; only the dispatcher writes it
+    private volatile long dispatched = 0;
+    private volatile boolean dispatcherParked = false;
+    // Started by the first publish
+    private volatile Thread dispatcher;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder handlerErrorCount = new LongAdder();
+    private final AtomicLong maxBacklog = new AtomicLong();
+
+    /**
+     * @param capacity Slots in the ring buffer, rounded up to a power of two
+     * @param maxWaitMillis Longest a publisher waits for a free slot before dropping its event
+     */
+    public EventBus(int capacity, long maxWaitMillis) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.events = new AtomicReferenceArray<>(size);
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Registers a handler for one event type and its subtypes
+     * @param handler Called on the dispatcher thread, in publish order
+     */
+    public <E extends DomainEvent> Subscription subscribe(Class<E> type, Consumer<? super E> handler) {
+        Subscription subscription = new Subscription(type, event -> handler.accept(type.cast(event)), this);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Queues an event for the subscribers, waiting while the buffer is full
+     * @return true if queued, false if it was dropped because the buffer stayed full
+     */
+    public boolean publish(DomainEvent event) {
+        long deadline = 0;
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            long backlog = sequence - dispatched;
+            if (backlog >= events.length()) {
+                // Full: back off until the dispatcher frees a slot
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + maxWaitNanos;
+                } else if (now - deadline > 0) {
+                    droppedCount.increment();
+                    return false;
+                }
+                wakeDispatcher();
+                LockSupport.parkNanos(50_000);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                maxBacklog.accumulateAndGet(backlog + 1, Math::max);
+                break;
+            }
+        }
+        int slot = (int) sequence & mask;
+        events.set(slot, event);
+        published.set(slot, sequence);
+        publishedCount.increment();
+        wakeDispatcher();
+        return true;
+    }
+
+    /**
+     * Waits until every event published so far has been delivered
+     * @return true if the dispatcher caught up within the timeout
+     */
+    public boolean awaitIdle(long timeoutMillis) {
+        long target = claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (dispatched < target) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            wakeDispatcher();
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    /**
+     * @return Events published but not yet delivered
+     */
+    public long getBacklog() {
+        return claimed.get() - dispatched;
+    }
+
+    public long getPublishedCount() { return publishedCount.sum(); }
+    public long getDeliveredCount() { return deliveredCount.sum(); }
+    public long getDroppedCount() { return droppedCount.sum(); }
+
+    public String describeStats() {
+        return String.format("published=%d, delivered=%d, dropped=%d, handlerErrors=%d, maxBacklog=%d/%d, subscribers=%d",
+                getPublishedCount(), getDeliveredCount(), getDroppedCount(), handlerErrorCount.sum(),
+                maxBacklog.get(), events.length(), subscriptions.size());
+    }
+
+    private void wakeDispatcher() {
+        Thread thread = dispatcher;
+        if (thread == null) {
+            startDispatcher();
+        } else if (dispatcherParked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private synchronized void startDispatcher() {
+        if (dispatcher == null) {
+            Thread thread = new Thread(this::runDispatcher, "redcell-events");
+            thread.setDaemon(true);
+            thread.start();
+            dispatcher = thread;
+        }
+    }
+
+    private void runDispatcher() {
+        int idleSpins = 0;
+        while (true) {
+            long sequence = dispatched;
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence) {
+                if (++idleSpins < 100) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                // Publishers check the flag after marking their slot, and the slot is checked
+                // again after setting it, so a wake-up cannot be missed; the timeout is a safety net
+                dispatcherParked = true;
+                if (published.get(slot) != sequence) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                }
+                dispatcherParked = false;
+                continue;
+            }
+            idleSpins = 0;
+            DomainEvent event = events.get(slot);
+            events.set(slot, null);
+            deliver(event);
+            // Frees the slot only after delivery, so awaitIdle() means every handler has run
+            dispatched = sequence + 1;
+        }
+    }
+
+    private void deliver(DomainEvent event) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.type.isInstance(event)) {
+                // Errors too: this is the only dispatcher, and the ring fills up without it
+                try {
+                    subscription.handler.accept(event);
+                } catch (Throwable e) {
+                    handlerErrorCount.increment();
+                    System.out.println("Error handling " + event.getClass().getSimpleName() + ": " + e);
+                }
+            }
+        }
+        deliveredCount.increment();
+    }
+}
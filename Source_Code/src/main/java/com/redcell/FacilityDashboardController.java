@@ -38,7 +38,11 @@ import java.util.ArrayList;
 public class FacilityDashboardController {
 
     public static boolean isLoggedIn = false;
+    private static String loggedInUsername;
+    // Event subscriptions of the dashboard currently shown; replaced when it is loaded again
+    private static final List<EventBus.Subscription> subscriptions = new ArrayList<>();
     private Facility currentFacility;
+    private int facilityId;
 
     @FXML private Text facilityNameText;
     @FXML private Text dateText;
@@ -74,6 +78,10 @@ public class FacilityDashboardController {
         isLoggedIn = state;
     }
 
+    public static void setLoggedInUsername(String username) {
+        loggedInUsername = username;
+    }
+
     @FXML
     public void initialize() {
         // Create a sample facility for demonstration
@@ -82,6 +90,9 @@ public class FacilityDashboardController {
         // Initialize the dashboard with facility data
         updateDashboard();
         
+        // Keep the counters and inventory current as requests and stock change
+        subscribeToChanges();
+        
         // Set up event handlers
         if (updateComponentButton != null) {
             updateComponentButton.setOnAction(e -> handleUpdateComponents());
@@ -120,30 +131,88 @@ public class FacilityDashboardController {
         updateComponentCheckboxes();
         
         // Update statistics
+        loadFacilityStats();
+        
+        // Update inventory grid
+        updateInventoryGrid();
+        loadInventoryStock();
+        
+        // Initialize the donation review table
+        initializeDonationReviewTable();
+        
+        // Initialize the donation status table
+        initializeDonationStatusTable();
+    }
+    
+    private void subscribeToChanges() {
+        subscriptions.forEach(EventBus.Subscription::cancel);
+        subscriptions.clear();
+        if (loggedInUsername == null) {
+            return;
+        }
+        AsyncDbHelper.deliver(AsyncDbHelper.getFacilityId(loggedInUsername),
+            id -> facilityId = id,
+            error -> System.out.println("Error looking up facility: " + error.getMessage()));
+        subscriptions.add(AsyncDbHelper.onEvent(DomainEvent.RequestCreated.class, event -> {
+            if (loggedInUsername.equals(event.getFacilityUsername())) {
+                loadFacilityStats();
+            }
+        }));
+        // Completions count towards the stats of the request's facility; reloading is one indexed read
+        subscriptions.add(AsyncDbHelper.onEvent(DomainEvent.RequestStatusChanged.class, event -> loadFacilityStats()));
+        subscriptions.add(AsyncDbHelper.onEvent(DomainEvent.InventoryChanged.class, event -> {
+            if (event.getFacilityId() == facilityId) {
+                loadInventoryStock();
+            }
+        }));
+        subscriptions.add(AsyncDbHelper.onEvent(DomainEvent.ExternalChange.class, event -> {
+            if (event.touches("requests")) {
+                loadFacilityStats();
+            }
+            if (event.touches("inventory")) {
+                loadInventoryStock();
+            }
+        }));
+    }
+    
+    private void loadFacilityStats() {
+        if (loggedInUsername == null) {
+            showFacilityStats(FacilityStats.empty());
+            return;
+        }
+        AsyncDbHelper.deliver(AsyncDbHelper.getFacilityStats(loggedInUsername),
+            this::showFacilityStats,
+            error -> System.out.println("Error loading facility stats: " + error.getMessage()));
+    }
+    
+    private void showFacilityStats(FacilityStats stats) {
         if (totalRequestsText != null) {
-            totalRequestsText.setText(String.valueOf((int)(Math.random() * 100) + 1)); // Random number between 1 and 100
+            totalRequestsText.setText(String.valueOf(stats.getTotalRequests()));
         }
         
         if (todaysRequestsText != null) {
-            todaysRequestsText.setText(String.valueOf((int)(Math.random() * 20) + 1)); // Random number between 1 and 20
+            todaysRequestsText.setText(String.valueOf(stats.getTodaysRequests()));
         }
         
         if (donationCompletionText != null) {
-            donationCompletionText.setText(String.valueOf((int)(Math.random() * 100) + 1)); // Random number between 1 and 100
+            donationCompletionText.setText(String.valueOf(stats.getTotalCompletions()));
         }
         
         if (todaysCompletionText != null) {
-            todaysCompletionText.setText(String.valueOf((int)(Math.random() * 20) + 1)); // Random number between 1 and 20
+            todaysCompletionText.setText(String.valueOf(stats.getTodaysCompletions()));
         }
-        
-        // Update inventory grid
-        updateInventoryGrid();
-        
-        // Initialize the donation review table
-        initializeDonationReviewTable();
-        
-        // Initialize the donation status table
-        initializeDonationStatusTable();
+    }
+    
+    private void loadInventoryStock() {
+        if (loggedInUsername == null) {
+            return; // Keep the sample inventory of the demonstration facility
+        }
+        AsyncDbHelper.deliver(AsyncDbHelper.getInventoryStock(loggedInUsername),
+            stock -> {
+                currentFacility.setInventory(stock.byBloodType());
+                updateInventoryGrid();
+            },
+            error -> System.out.println("Error loading inventory: " + error.getMessage()));
     }
     
     private void updateComponentCheckboxes() {
@@ -653,4 +722,4 @@ public class FacilityDashboardController {
         
         alert.showAndWait();
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Places every facility on the map, using the Gazetteer to locate its area (or, failing that,
+ * its location), and answers nearest-facility queries from a SpatialIndex.
+ * Facilities are loaded on the first query; DbHelper adds new registrations after they commit.
+ * Facilities whose area and location are both unknown to the gazetteer are never found.
+ */
+public class FacilityLocator {
+
+    static final String FACILITIES_SQL =
+        "SELECT f.id, u.username, f.name, u.area, f.location FROM facilities f JOIN users u ON f.user_id = u.id";
+
+    // About 2 km; facilities are far denser than gazetteer places
+    private static final double CELL_DEGREES = 0.02;
+
+    private static final class Site {
+        private final String username;
+        private final String name;
+        private final String area;
+
+        Site(String username, String name, String area) {
+            this.username = username;
+            this.name = name;
+            this.area = area;
+        }
+    }
+
+    private final Gazetteer gazetteer;
+    private final SpatialIndex<Integer> index = new SpatialIndex<>(CELL_DEGREES);
+    private final Map<Integer, Site> sites = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    public FacilityLocator(Gazetteer gazetteer) {
+        this.gazetteer = gazetteer;
+    }
+
+    /**
+     * Loads every facility unless already loaded
+     * @param conn Any connection; only read from
+     */
+    public synchronized void ensureLoaded(Connection conn) throws SQLException {
+        if (loaded) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(FACILITIES_SQL)) {
+            while (rs.next()) {
+                put(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5));
+            }
+        }
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Adds or moves a facility, e.g. after its registration committed
+     * @return true if the facility could be located
+     */
+    public boolean put(int facilityId, String username, String name, String area, String location) {
+        GeoPoint point = gazetteer.locate(area);
+        if (point == null) {
+            point = gazetteer.locate(location);
+        }
+        if (point == null) {
+            index.remove(facilityId);
+            sites.remove(facilityId);
+            return false;
+        }
+        sites.put(facilityId, new Site(username, name, area != null ? area : location));
+        index.put(facilityId, point);
+        return true;
+    }
+
+    /**
+     * Finds the facilities nearest to a point among those with stock
+     * @param unitsByFacility Matching units held, by facility id; facilities not in the map are skipped
+     * @param limit Most facilities to return
+     * @return Nearest first
+     */
+    public List<NearbyFacility> nearest(GeoPoint point, Map<Integer, Integer> unitsByFacility, int limit) {
+        List<NearbyFacility> nearby = new ArrayList<>();
+        for (SpatialIndex.Hit<Integer> hit : index.nearest(point, limit, unitsByFacility::containsKey)) {
+            Site site = sites.get(hit.getItem());
+            if (site != null) {
+                nearby.add(new NearbyFacility(hit.getItem(), site.username, site.name, site.area,
+                                              hit.getDistanceKm(), unitsByFacility.get(hit.getItem())));
+            }
+        }
+        return nearby;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Drops every facility; the next query loads them again
+     */
+    public synchronized void clear() {
+        index.clear();
+        sites.clear();
+        loaded = false;
+    }
+}
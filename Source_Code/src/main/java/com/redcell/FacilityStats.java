@@ -0,0 +1,32 @@
+package com.redcell;
+
+/**
+ * Request counters for one facility, as shown on the facility dashboard.
+ * A completion is a request of this facility that reached the "Completed" status.
+ */
+public class FacilityStats {
+
+    private final int totalRequests;
+    private final int todaysRequests;
+    private final int totalCompletions;
+    private final int todaysCompletions;
+
+    public FacilityStats(int totalRequests, int todaysRequests, int totalCompletions, int todaysCompletions) {
+        this.totalRequests = totalRequests;
+        this.todaysRequests = todaysRequests;
+        this.totalCompletions = totalCompletions;
+        this.todaysCompletions = todaysCompletions;
+    }
+
+    /**
+     * @return All counters zero, for unknown facilities and failed reads
+     */
+    public static FacilityStats empty() {
+        return new FacilityStats(0, 0, 0, 0);
+    }
+
+    public int getTotalRequests() { return totalRequests; }
+    public int getTodaysRequests() { return todaysRequests; }
+    public int getTotalCompletions() { return totalCompletions; }
+    public int getTodaysCompletions() { return todaysCompletions; }
+}
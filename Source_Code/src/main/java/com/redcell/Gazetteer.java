@@ -0,0 +1,182 @@
+package com.redcell;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Offline lookup from the free-text area names used across RedCell (users.area,
+ * facilities.location, Request.getArea()) to coordinates, read from gazetteer.csv on the
+ * classpath or the file named by -Dredcell.gazetteer.file. Names match ignoring case and
+ * extra spaces; "Mirpur, Dhaka" is tried whole, then part by part from the most specific.
+ * The places themselves are kept in a SpatialIndex, so "areas within 10 km" is a grid lookup.
+ */
+public class Gazetteer {
+
+    public static final String FILE_PROPERTY = "redcell.gazetteer.file";
+    private static final String RESOURCE = "/gazetteer.csv";
+
+    // About 5.5 km, the size of a neighbourhood
+    private static final double CELL_DEGREES = 0.05;
+
+    private static volatile Gazetteer defaultGazetteer;
+
+    private final Map<String, GeoPoint> points = new HashMap<>();
+    // Area name as written in the gazetteer, by lookup key
+    private final Map<String, String> names = new HashMap<>();
+    private final SpatialIndex<String> places = new SpatialIndex<>(CELL_DEGREES);
+
+    /**
+     * @return The gazetteer from -Dredcell.gazetteer.file or the bundled gazetteer.csv, read on first use.
+     *         An unreadable file gives an empty gazetteer, so area matching falls back to exact names.
+     */
+    public static Gazetteer getDefault() {
+        Gazetteer gazetteer = defaultGazetteer;
+        if (gazetteer == null) {
+            synchronized (Gazetteer.class) {
+                if (defaultGazetteer == null) {
+                    defaultGazetteer = readDefault();
+                }
+                gazetteer = defaultGazetteer;
+            }
+        }
+        return gazetteer;
+    }
+
+    private static Gazetteer readDefault() {
+        String file = System.getProperty(FILE_PROPERTY);
+        try (InputStream in = file != null ? Files.newInputStream(Paths.get(file)) : Gazetteer.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                System.out.println("Gazetteer " + RESOURCE + " not found; nearby matching is limited to exact areas");
+                return new Gazetteer();
+            }
+            Gazetteer gazetteer = read(new InputStreamReader(in, StandardCharsets.UTF_8));
+            System.out.println("Gazetteer loaded with " + gazetteer.size() + " places");
+            return gazetteer;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error reading gazetteer: " + e.getMessage());
+            return new Gazetteer();
+        }
+    }
+
+    /**
+     * Reads "name,latitude,longitude" lines. Blank lines, # comments and a header line are skipped.
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public static Gazetteer read(Reader source) throws IOException {
+        Gazetteer gazetteer = new Gazetteer();
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.equalsIgnoreCase("name,latitude,longitude")) {
+                continue;
+            }
+            // The name may itself contain commas, so split from the right
+            int lonComma = line.lastIndexOf(',');
+            int latComma = lonComma > 0 ? line.lastIndexOf(',', lonComma - 1) : -1;
+            if (latComma <= 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + " is not name,latitude,longitude: " + line);
+            }
+            try {
+                gazetteer.add(line.substring(0, latComma).trim(),
+                        new GeoPoint(Double.parseDouble(line.substring(latComma + 1, lonComma).trim()),
+                                     Double.parseDouble(line.substring(lonComma + 1).trim())));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return gazetteer;
+    }
+
+    /**
+     * Adds or moves a place
+     */
+    public void add(String name, GeoPoint point) {
+        String key = keyOf(name);
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Place name is empty");
+        }
+        points.put(key, point);
+        names.put(key, name.trim());
+        places.put(key, point);
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    /**
+     * @param area An area as typed by a user, e.g. "mirpur" or "Mirpur, Dhaka"
+     * @return Its coordinates, or null if no part of it is in the gazetteer
+     */
+    public GeoPoint locate(String area) {
+        String key = resolve(area);
+        return key == null ? null : points.get(key);
+    }
+
+    /**
+     * @return The gazetteer's name for the area, e.g. "Mirpur" for "mirpur, dhaka", or null if unknown
+     */
+    public String canonicalName(String area) {
+        String key = resolve(area);
+        return key == null ? null : names.get(key);
+    }
+
+    /**
+     * @return The gazetteer's names of the places within radiusKm of the point, nearest first
+     */
+    public List<String> placesWithin(GeoPoint point, double radiusKm) {
+        List<String> within = new ArrayList<>();
+        for (SpatialIndex.Hit<String> hit : places.within(point, radiusKm)) {
+            within.add(names.get(hit.getItem()));
+        }
+        return within;
+    }
+
+    /**
+     * @return The key areas naming the same place share: that of the place the area resolves to,
+     *         e.g. "mirpur" for both "Mirpur" and "Mirpur, Dhaka", else the area's own key
+     */
+    public String matchKey(String area) {
+        String key = resolve(area);
+        return key == null ? keyOf(area) : key;
+    }
+
+    // Lookup key of the whole name, else of its most specific (first) known part
+    private String resolve(String area) {
+        if (area == null) {
+            return null;
+        }
+        String whole = keyOf(area);
+        if (points.containsKey(whole)) {
+            return whole;
+        }
+        for (String part : area.split(",")) {
+            String key = keyOf(part);
+            if (points.containsKey(key)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The area with case and spacing normalized, as used for matching area names
+     */
+    static String keyOf(String area) {
+        return area == null ? "" : area.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,42 @@
+package com.redcell;
+
+/**
+ * A position on the earth in WGS84 degrees
+ */
+public final class GeoPoint {
+
+    static final double EARTH_RADIUS_KM = 6371.0;
+    // Length of one degree of latitude
+    static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180.0;
+
+    private final double latitude;
+    private final double longitude;
+
+    public GeoPoint(double latitude, double longitude) {
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Not a valid position: " + latitude + ", " + longitude);
+        }
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+
+    /**
+     * @return Great-circle (haversine) distance to the other point in kilometres
+     */
+    public double distanceKm(GeoPoint other) {
+        double dLat = Math.toRadians(other.latitude - latitude);
+        double dLon = Math.toRadians(other.longitude - longitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(other.latitude))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    @Override
+    public String toString() {
+        return latitude + ", " + longitude;
+    }
+}
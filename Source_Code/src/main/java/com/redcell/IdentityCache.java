@@ -0,0 +1,87 @@
+package com.redcell;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Remembers which rows a username maps to, so the insert paths can write the donor or
+ * facility id directly instead of joining users against donors/facilities every time.
+ * Entries are added when a user authenticates or registers and dropped on logout,
+ * re-registration or a role change, so the cache only ever holds the current session's users.
+ */
+public class IdentityCache {
+
+    /**
+     * The ids behind one username. donorId or facilityId is 0 when the user has no such row.
+     */
+    public static final class Identity {
+        private final String username;
+        private final int userId;
+        private final String role;
+        private final int donorId;
+        private final int facilityId;
+
+        public Identity(String username, int userId, String role, int donorId, int facilityId) {
+            this.username = username;
+            this.userId = userId;
+            this.role = role;
+            this.donorId = donorId;
+            this.facilityId = facilityId;
+        }
+
+        public String getUsername() { return username; }
+        public int getUserId() { return userId; }
+        public String getRole() { return role; }
+        public int getDonorId() { return donorId; }
+        public int getFacilityId() { return facilityId; }
+
+        public boolean isDonor() { return donorId > 0; }
+        public boolean isFacility() { return facilityId > 0; }
+    }
+
+    private static final LongAdder hitCounter = Metrics.counter("cache.identity.hits");
+    private static final LongAdder missCounter = Metrics.counter("cache.identity.misses");
+
+    private final ConcurrentHashMap<String, Identity> identities = new ConcurrentHashMap<>();
+
+    /**
+     * @return The cached identity, or null if the username has not been resolved this session
+     */
+    public Identity get(String username) {
+        Identity identity = username == null ? null : identities.get(username);
+        (identity != null ? hitCounter : missCounter).increment();
+        return identity;
+    }
+
+    public void put(Identity identity) {
+        identities.put(identity.getUsername(), identity);
+    }
+
+    /**
+     * Drops one username, e.g. after it was registered again or its role changed
+     */
+    public void invalidate(String username) {
+        if (username != null) {
+            identities.remove(username);
+        }
+    }
+
+    /**
+     * Drops the identities that match, e.g. those whose rows another call site changed
+     */
+    public void invalidateIf(Predicate<Identity> stale) {
+        identities.values().removeIf(stale);
+    }
+
+    /**
+     * Drops every entry, e.g. on logout
+     */
+    public void clear() {
+        identities.clear();
+    }
+
+    public int size() {
+        return identities.size();
+    }
+}
@@ -0,0 +1,56 @@
+package com.redcell;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of issuing units first-expiry-first-out: the lots the units came from, soonest expiry
+ * first, and the expired lots that were written off on the way. An allocation is all or nothing,
+ * so a request that could not be filled has no issued lots.
+ */
+public class InventoryAllocation {
+
+    private final int requestedUnits;
+    private final List<InventoryLot> issued;
+    private final List<InventoryLot> writtenOff;
+
+    public InventoryAllocation(int requestedUnits, List<InventoryLot> issued, List<InventoryLot> writtenOff) {
+        this.requestedUnits = requestedUnits;
+        this.issued = issued;
+        this.writtenOff = writtenOff;
+    }
+
+    /**
+     * @return An unfilled allocation, for unknown facilities and requests and failed writes
+     */
+    public static InventoryAllocation empty(int requestedUnits) {
+        return new InventoryAllocation(requestedUnits, Collections.emptyList(), Collections.emptyList());
+    }
+
+    public int getRequestedUnits() { return requestedUnits; }
+
+    /**
+     * @return The issued part of each lot used, soonest expiry first
+     */
+    public List<InventoryLot> getIssued() { return Collections.unmodifiableList(issued); }
+
+    /**
+     * @return Expired lots removed from stock while looking for units
+     */
+    public List<InventoryLot> getWrittenOff() { return Collections.unmodifiableList(writtenOff); }
+
+    public int getIssuedUnits() {
+        int total = 0;
+        for (InventoryLot lot : issued) {
+            total += lot.getUnits();
+        }
+        return total;
+    }
+
+    /**
+     * @return true if every requested unit was issued
+     */
+    public boolean isFilled() {
+        return !issued.isEmpty() && getIssuedUnits() == requestedUnits;
+    }
+}
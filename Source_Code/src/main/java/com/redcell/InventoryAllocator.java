@@ -0,0 +1,238 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Issues units first-expiry-first-out from the lots in the inventory table.
+ *
+ * For every facility it has served, the allocator keeps the facility's lots in memory as one
+ * priority queue per blood type and component, soonest expiry first (lots without an expiry date
+ * last, ties by lot id). A facility's lots are loaded on its first allocation; after that an
+ * allocation only walks the head of one queue instead of sorting the facility's lots in SQL.
+ *
+ * Methods run on the write queue's connection, inside the caller's transaction. The queues are
+ * changed only after every statement succeeded, and DbHelper calls invalidate() when the write
+ * did not commit, so the next allocation reloads the facility from the table. Issued and expired
+ * units are also recorded in the inventory ledger.
+ */
+public class InventoryAllocator {
+
+    static final String LOTS_SQL =
+        "SELECT id, blood_type, component_type, CAST(quantity AS INTEGER) AS units, expiry_date " +
+        "FROM inventory WHERE facility_id = ? AND quantity >= 1";
+
+    static final String INSERT_LOT_SQL =
+        "INSERT INTO inventory (facility_id, blood_type, component_type, quantity, expiry_date) VALUES (?, ?, ?, ?, ?)";
+
+    static final String ISSUE_FROM_LOT_SQL =
+        "UPDATE inventory SET quantity = quantity - ? WHERE id = ? AND quantity >= ?";
+
+    static final String DELETE_LOT_SQL =
+        "DELETE FROM inventory WHERE id = ?";
+
+    // Soonest expiry first, lots that never expire last
+    private static final Comparator<InventoryLot> FEFO_ORDER = Comparator
+            .comparing(InventoryLot::getExpiryDate, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()))
+            .thenComparingInt(InventoryLot::getId);
+
+    // Facility id -> "bloodType|component" -> lots in FEFO order
+    private final Map<Integer, Map<String, NavigableSet<InventoryLot>>> facilities = new HashMap<>();
+
+    /**
+     * Issues units of one blood type and component, taking them from the lots that expire first.
+     * Expired lots met on the way are written off. Nothing is issued unless all units are available.
+     * @param today Lots that expired before this day are not issued
+     * @param reference What the units are issued for, recorded in the ledger (e.g. "request 42")
+     * @return The allocation; unfilled if there were not enough units in date
+     * @throws SQLException if a statement failed or the table or ledger disagree with the queue;
+     *         the caller must roll back and invalidate the facility
+     */
+    public synchronized InventoryAllocation allocate(Connection conn, int facilityId, String bloodType, Component component,
+                                                     int units, LocalDate today, String reference) throws SQLException {
+        NavigableSet<InventoryLot> queue = lotsOf(conn, facilityId).get(key(bloodType, component));
+        if (queue == null || units <= 0) {
+            return InventoryAllocation.empty(units);
+        }
+
+        // Plan against the queue first; it is changed only once the statements succeeded
+        List<InventoryLot> expired = new ArrayList<>();
+        List<InventoryLot> issued = new ArrayList<>();
+        int needed = units;
+        for (InventoryLot lot : queue) {
+            if (lot.isExpired(today)) {
+                expired.add(lot);
+                continue;
+            }
+            if (needed == 0) {
+                break;
+            }
+            int take = Math.min(lot.getUnits(), needed);
+            issued.add(lot.withUnits(take));
+            needed -= take;
+        }
+        if (needed > 0) {
+            issued.clear();
+        }
+
+        for (InventoryLot lot : expired) {
+            deleteLot(conn, lot.getId());
+            // A lot the ledger no longer counts has nothing left to write off there
+            InventoryLedger.append(conn, facilityId, bloodType, component, InventoryMovementType.EXPIRED,
+                                   lot.getUnits(), "inventory lot " + lot.getId());
+        }
+        if (!issued.isEmpty()) {
+            issueFromLots(conn, queue, issued);
+            if (InventoryLedger.append(conn, facilityId, bloodType, component, InventoryMovementType.ISSUED,
+                                       units, reference) == 0) {
+                throw new SQLException("Inventory ledger holds fewer than " + units + " " + bloodType + " "
+                                       + component + " units at facility " + facilityId);
+            }
+        }
+
+        queue.removeAll(expired);
+        for (InventoryLot part : issued) {
+            InventoryLot lot = queue.ceiling(part);
+            if (lot.getUnits() == part.getUnits()) {
+                queue.remove(lot);
+            } else {
+                lot.setUnits(lot.getUnits() - part.getUnits());
+            }
+        }
+        return new InventoryAllocation(units, issued, expired);
+    }
+
+    /**
+     * Adds a new lot to the inventory table and the ledger, and to the facility's queue if it is loaded
+     * @param expiryDate Expiry date of the units, or null if they do not expire
+     * @return The new lot
+     */
+    public synchronized InventoryLot receive(Connection conn, int facilityId, String bloodType, Component component,
+                                             int units, LocalDate expiryDate) throws SQLException {
+        int lotId;
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_LOT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, facilityId);
+            stmt.setString(2, bloodType);
+            stmt.setString(3, component.toString());
+            stmt.setInt(4, units);
+            stmt.setString(5, expiryDate == null ? null : expiryDate.toString());
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                lotId = keys.getInt(1);
+            }
+        }
+        InventoryLedger.append(conn, facilityId, bloodType, component, InventoryMovementType.RECEIVED,
+                               units, "inventory lot " + lotId);
+
+        InventoryLot lot = new InventoryLot(lotId, facilityId, bloodType, component, units, expiryDate);
+        Map<String, NavigableSet<InventoryLot>> queues = facilities.get(facilityId);
+        if (queues != null) {
+            queues.computeIfAbsent(key(bloodType, component), k -> new TreeSet<>(FEFO_ORDER)).add(lot);
+        }
+        return lot.withUnits(units);
+    }
+
+    /**
+     * Drops a facility's queues, so its next allocation reloads them from the inventory table.
+     * Called when a write that used them did not commit.
+     */
+    public synchronized void invalidate(int facilityId) {
+        facilities.remove(facilityId);
+    }
+
+    /**
+     * Drops every facility's queues
+     */
+    public synchronized void clear() {
+        facilities.clear();
+    }
+
+    /**
+     * @return Number of facilities whose lots are held in memory
+     */
+    public synchronized int getLoadedFacilityCount() {
+        return facilities.size();
+    }
+
+    private Map<String, NavigableSet<InventoryLot>> lotsOf(Connection conn, int facilityId) throws SQLException {
+        Map<String, NavigableSet<InventoryLot>> queues = facilities.get(facilityId);
+        if (queues != null) {
+            return queues;
+        }
+        queues = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(LOTS_SQL)) {
+            stmt.setInt(1, facilityId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Component component = Component.fromDisplayName(rs.getString("component_type"));
+                    if (component == null) {
+                        continue;
+                    }
+                    String bloodType = rs.getString("blood_type");
+                    InventoryLot lot = new InventoryLot(rs.getInt("id"), facilityId, bloodType, component,
+                                                        rs.getInt("units"), parseDate(rs.getString("expiry_date")));
+                    queues.computeIfAbsent(key(bloodType, component), k -> new TreeSet<>(FEFO_ORDER)).add(lot);
+                }
+            }
+        }
+        facilities.put(facilityId, queues);
+        return queues;
+    }
+
+    // Lots used up are deleted, the last one is reduced; the ledger keeps the history
+    private static void issueFromLots(Connection conn, NavigableSet<InventoryLot> queue, List<InventoryLot> issued) throws SQLException {
+        try (PreparedStatement update = conn.prepareStatement(ISSUE_FROM_LOT_SQL)) {
+            for (InventoryLot part : issued) {
+                InventoryLot lot = queue.ceiling(part);
+                if (lot.getUnits() == part.getUnits()) {
+                    deleteLot(conn, lot.getId());
+                    continue;
+                }
+                update.setInt(1, part.getUnits());
+                update.setInt(2, lot.getId());
+                update.setInt(3, part.getUnits());
+                if (update.executeUpdate() != 1) {
+                    throw new SQLException("Inventory lot " + lot.getId() + " changed outside the allocator");
+                }
+            }
+        }
+    }
+
+    private static void deleteLot(Connection conn, int lotId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(DELETE_LOT_SQL)) {
+            stmt.setInt(1, lotId);
+            if (stmt.executeUpdate() != 1) {
+                throw new SQLException("Inventory lot " + lotId + " changed outside the allocator");
+            }
+        }
+    }
+
+    private static String key(String bloodType, Component component) {
+        return bloodType + "|" + component;
+    }
+
+    // Lots with a missing or unreadable expiry date are treated as not expiring
+    private static LocalDate parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
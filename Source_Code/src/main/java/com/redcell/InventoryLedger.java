@@ -0,0 +1,178 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Append-only inventory ledger. Every change to a facility's stock is a row in
+ * inventory_movements; rows are never updated or deleted, so the table is the audit trail.
+ *
+ * Every SNAPSHOT_INTERVAL movements of a facility, its full stock is written to
+ * inventory_snapshots tagged with the last movement it includes. Current stock is the latest
+ * snapshot plus the movements after it, so reading it costs O(movements since the snapshot)
+ * no matter how long the history is.
+ *
+ * All methods run on the caller's connection and transaction; DbHelper calls the write
+ * methods from the write queue so a movement and its snapshot commit together.
+ */
+public final class InventoryLedger {
+
+    // Movements per facility between snapshots (-Dredcell.inventory.snapshotInterval)
+    static final int SNAPSHOT_INTERVAL = Math.max(1, Integer.getInteger("redcell.inventory.snapshotInterval", 256));
+
+    static final String INSERT_MOVEMENT_SQL =
+        "INSERT INTO inventory_movements (facility_id, blood_type, component_type, quantity, kind, reference) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+
+    static final String LATEST_SNAPSHOT_SQL =
+        "SELECT COALESCE(MAX(movement_id), 0) FROM inventory_snapshots WHERE facility_id = ?";
+
+    // Latest snapshot rows plus the ledger tail after it, summed per blood type and component
+    static final String STOCK_SQL =
+        "SELECT blood_type, component_type, SUM(quantity) AS quantity, MAX(movement_id) AS movement_id FROM (" +
+        "SELECT blood_type, component_type, quantity, movement_id FROM inventory_snapshots " +
+        "WHERE facility_id = ?1 AND movement_id = ?2 " +
+        "UNION ALL " +
+        "SELECT blood_type, component_type, quantity, id FROM inventory_movements " +
+        "WHERE facility_id = ?1 AND id > ?2" +
+        ") GROUP BY blood_type, component_type";
+
+    static final String KEY_STOCK_SQL =
+        "SELECT COALESCE((SELECT quantity FROM inventory_snapshots " +
+        "WHERE facility_id = ?1 AND movement_id = ?2 AND blood_type = ?3 AND component_type = ?4), 0) + " +
+        "COALESCE((SELECT SUM(quantity) FROM inventory_movements " +
+        "WHERE facility_id = ?1 AND id > ?2 AND blood_type = ?3 AND component_type = ?4), 0)";
+
+    static final String TAIL_LENGTH_SQL =
+        "SELECT COUNT(*) FROM (SELECT 1 FROM inventory_movements WHERE facility_id = ? AND id > ? LIMIT ?)";
+
+    static final String INSERT_SNAPSHOT_SQL =
+        "INSERT INTO inventory_snapshots (facility_id, movement_id, blood_type, component_type, quantity) " +
+        "VALUES (?, ?, ?, ?, ?)";
+
+    private InventoryLedger() {
+    }
+
+    /**
+     * Appends one movement, then writes a snapshot if the facility's ledger tail has grown
+     * to SNAPSHOT_INTERVAL entries. Removals that would take the stock of this blood type and
+     * component below zero are refused.
+     * @param units Number of units, positive; the movement type decides the sign
+     * @param reference What caused the movement, e.g. a donation or request id (may be null)
+     * @return Id of the new movement, or 0 if it was refused for lack of stock
+     */
+    public static long append(Connection conn, int facilityId, String bloodType, Component component,
+                              InventoryMovementType type, int units, String reference) throws SQLException {
+        int quantity = type.signedUnits(units);
+        if (quantity < 0 && unitsInStock(conn, facilityId, bloodType, component) + quantity < 0) {
+            return 0;
+        }
+
+        long movementId;
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_MOVEMENT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, facilityId);
+            stmt.setString(2, bloodType);
+            stmt.setString(3, component.toString());
+            stmt.setInt(4, quantity);
+            stmt.setString(5, type.name());
+            stmt.setString(6, reference);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                movementId = keys.getLong(1);
+            }
+        }
+
+        if (tailLength(conn, facilityId, latestSnapshot(conn, facilityId)) >= SNAPSHOT_INTERVAL) {
+            snapshot(conn, facilityId);
+        }
+        return movementId;
+    }
+
+    /**
+     * @return The facility's stock: its latest snapshot plus every movement after it
+     */
+    public static InventoryStock currentStock(Connection conn, int facilityId) throws SQLException {
+        InventoryStock stock = new InventoryStock();
+        try (PreparedStatement stmt = conn.prepareStatement(STOCK_SQL)) {
+            stmt.setInt(1, facilityId);
+            stmt.setLong(2, latestSnapshot(conn, facilityId));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Component component = Component.fromDisplayName(rs.getString("component_type"));
+                    if (component != null) {
+                        stock.add(rs.getString("blood_type"), component, rs.getInt("quantity"), rs.getLong("movement_id"));
+                    }
+                }
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * @return Units of one blood type and component in stock at the facility
+     */
+    public static int unitsInStock(Connection conn, int facilityId, String bloodType, Component component) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(KEY_STOCK_SQL)) {
+            stmt.setInt(1, facilityId);
+            stmt.setLong(2, latestSnapshot(conn, facilityId));
+            stmt.setString(3, bloodType);
+            stmt.setString(4, component.toString());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the facility's current stock as a new snapshot. Combinations that ran out are
+     * kept with quantity 0, so a snapshot is never empty once the facility has had stock.
+     * @return The movement id the snapshot covers, or 0 if there was nothing new to snapshot
+     */
+    public static long snapshot(Connection conn, int facilityId) throws SQLException {
+        InventoryStock stock = currentStock(conn, facilityId);
+        long movementId = stock.getLastMovementId();
+        if (movementId == 0 || movementId == latestSnapshot(conn, facilityId)) {
+            return 0;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SNAPSHOT_SQL)) {
+            for (Map.Entry<String, Map<Component, Integer>> bloodType : stock.getUnits().entrySet()) {
+                for (Map.Entry<Component, Integer> component : bloodType.getValue().entrySet()) {
+                    stmt.setInt(1, facilityId);
+                    stmt.setLong(2, movementId);
+                    stmt.setString(3, bloodType.getKey());
+                    stmt.setString(4, component.getKey().toString());
+                    stmt.setInt(5, component.getValue());
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+        return movementId;
+    }
+
+    private static long latestSnapshot(Connection conn, int facilityId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(LATEST_SNAPSHOT_SQL)) {
+            stmt.setInt(1, facilityId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    // Movements after the snapshot, counted only up to SNAPSHOT_INTERVAL
+    private static int tailLength(Connection conn, int facilityId, long snapshotId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(TAIL_LENGTH_SQL)) {
+            stmt.setInt(1, facilityId);
+            stmt.setLong(2, snapshotId);
+            stmt.setInt(3, SNAPSHOT_INTERVAL);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.redcell;
+
+import java.time.LocalDate;
+
+/**
+ * One row of the inventory table: units of a blood type and component that share an expiry date
+ */
+public class InventoryLot {
+
+    private final int id;
+    private final int facilityId;
+    private final String bloodType;
+    private final Component component;
+    private final LocalDate expiryDate;
+    private int units;
+
+    public InventoryLot(int id, int facilityId, String bloodType, Component component, int units, LocalDate expiryDate) {
+        this.id = id;
+        this.facilityId = facilityId;
+        this.bloodType = bloodType;
+        this.component = component;
+        this.units = units;
+        this.expiryDate = expiryDate;
+    }
+
+    public int getId() { return id; }
+    public int getFacilityId() { return facilityId; }
+    public String getBloodType() { return bloodType; }
+    public Component getComponent() { return component; }
+    public int getUnits() { return units; }
+
+    /**
+     * @return The expiry date, or null if the lot does not expire
+     */
+    public LocalDate getExpiryDate() { return expiryDate; }
+
+    /**
+     * @return true if the lot expired before the given day
+     */
+    public boolean isExpired(LocalDate today) {
+        return expiryDate != null && expiryDate.isBefore(today);
+    }
+
+    void setUnits(int units) { this.units = units; }
+
+    /**
+     * @return A copy holding the given number of units, e.g. the part of this lot that was issued
+     */
+    InventoryLot withUnits(int units) {
+        return new InventoryLot(id, facilityId, bloodType, component, units, expiryDate);
+    }
+}
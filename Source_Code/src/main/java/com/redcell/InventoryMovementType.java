@@ -0,0 +1,27 @@
+package com.redcell;
+
+/**
+ * Kinds of inventory ledger entries. Each kind knows whether it adds or removes stock,
+ * so callers pass unit counts as positive numbers.
+ */
+public enum InventoryMovementType {
+    RECEIVED(1),       // A donation was processed into stock
+    ISSUED(-1),        // Units were issued against a request
+    EXPIRED(-1),       // Units passed their expiry date and were discarded
+    TRANSFER_IN(1),    // Units arrived from another facility
+    TRANSFER_OUT(-1),  // Units were sent to another facility
+    ADJUSTMENT(0);     // Opening balances and stocktake corrections, signed as given
+
+    private final int direction;
+
+    InventoryMovementType(int direction) {
+        this.direction = direction;
+    }
+
+    /**
+     * @return The change in stock for this many units: positive for additions, negative for removals
+     */
+    public int signedUnits(int units) {
+        return direction == 0 ? units : direction * Math.abs(units);
+    }
+}
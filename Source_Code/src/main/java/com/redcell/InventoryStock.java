@@ -0,0 +1,76 @@
+package com.redcell;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Units in stock at one facility by blood type and component, as derived from the
+ * inventory ledger (latest snapshot plus the movements after it).
+ */
+public class InventoryStock {
+
+    public static final String[] BLOOD_TYPES = {"A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-"};
+
+    private final Map<String, Map<Component, Integer>> units = new LinkedHashMap<>();
+    private long lastMovementId;
+
+    /**
+     * @return An empty stock, for unknown facilities and failed reads
+     */
+    public static InventoryStock empty() {
+        return new InventoryStock();
+    }
+
+    /**
+     * Adds units read from the ledger
+     * @param movementId Newest ledger entry the units include
+     */
+    void add(String bloodType, Component component, int quantity, long movementId) {
+        units.computeIfAbsent(bloodType, type -> new EnumMap<>(Component.class)).merge(component, quantity, Integer::sum);
+        lastMovementId = Math.max(lastMovementId, movementId);
+    }
+
+    public int getUnits(String bloodType, Component component) {
+        Map<Component, Integer> components = units.get(bloodType);
+        return components == null ? 0 : components.getOrDefault(component, 0);
+    }
+
+    /**
+     * @return Units of every component of this blood type
+     */
+    public int getUnits(String bloodType) {
+        Map<Component, Integer> components = units.get(bloodType);
+        int total = 0;
+        if (components != null) {
+            for (int quantity : components.values()) {
+                total += quantity;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return Units per blood type over all components, with every blood type present, in the shape of Facility.getInventory()
+     */
+    public Map<String, Integer> byBloodType() {
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        for (String bloodType : BLOOD_TYPES) {
+            totals.put(bloodType, getUnits(bloodType));
+        }
+        return totals;
+    }
+
+    /**
+     * @return Blood type to component to units, for every combination the ledger has seen
+     */
+    public Map<String, Map<Component, Integer>> getUnits() {
+        return Collections.unmodifiableMap(units);
+    }
+
+    /**
+     * @return Id of the newest ledger entry included, or 0 if the facility has none
+     */
+    public long getLastMovementId() { return lastMovementId; }
+}
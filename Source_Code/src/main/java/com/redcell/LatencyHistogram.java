@@ -0,0 +1,126 @@
+package com.redcell;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets.
+ * Values below 64 ns get their own bucket; above that every power of two is split
+ * into 32 equal sub-buckets, so any recorded value is reported within about 3% while the
+ * whole range up to Long.MAX_VALUE fits in fewer than 2000 counters. Recording is a
+ * single atomic increment, so it is safe to call from any thread on hot paths.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Values below this are counted exactly, one bucket per nanosecond
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+    private static final int FIRST_LOG_MAGNITUDE = SUB_BUCKET_BITS + 1;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - FIRST_LOG_MAGNITUDE) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one measurement
+     * @param nanos Elapsed time in nanoseconds; negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Records the time elapsed since a System.nanoTime() reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @param percentile Between 0 and 100, e.g. 99.0
+     * @return The latency at that percentile in milliseconds, or 0 if nothing was recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        // Take a snapshot so concurrent recording cannot push the walk past the end
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                // Report the top of the bucket, but never more than the largest value actually seen
+                return Math.min(upperBoundOf(i), maxNanos.get()) / 1_000_000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Clears all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    public String describe() {
+        return String.format("count=%d, mean=%.3f ms, p50=%.3f ms, p99=%.3f ms, max=%.3f ms",
+                getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return LINEAR_LIMIT + (magnitude - FIRST_LOG_MAGNITUDE) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int magnitude = FIRST_LOG_MAGNITUDE + (bucket - LINEAR_LIMIT) / SUB_BUCKET_COUNT;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKET_COUNT;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        // The top bucket's bound overflows; clamp it
+        long next = (long) (subBucket + SUB_BUCKET_COUNT + 1) << shift;
+        return next <= 0 ? Long.MAX_VALUE : next - 1;
+    }
+}
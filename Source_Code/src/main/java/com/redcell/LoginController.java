@@ -53,10 +53,22 @@ public class LoginController {
             return;
         }
         
+        // Authenticate off the FX thread and keep the form disabled while waiting
+        setLoading(true);
+        AsyncDbHelper.deliver(AsyncDbHelper.authenticateUser(user, pass),
+            authenticatedUser -> {
+                setLoading(false);
+                handleAuthenticationResult(user, authenticatedUser);
+            },
+            error -> {
+                setLoading(false);
+                showErrorMessage("Login error: " + error.getMessage());
+                error.printStackTrace();
+            });
+    }
+
+    private void handleAuthenticationResult(String user, ConcreteUser authenticatedUser) {
         try {
-            // Authenticate user using database
-            ConcreteUser authenticatedUser = DbHelper.authenticateUser(user, pass);
-            
             if (authenticatedUser == null) {
                 showErrorMessage("Invalid username or password");
                 return;
@@ -76,6 +88,7 @@ public class LoginController {
                 DonorDashboardController.setLoggedInUsername(user);
             } else if ("facility".equalsIgnoreCase(userRole)) {
                 FacilityDashboardController.setLoggedInState(true);
+                FacilityDashboardController.setLoggedInUsername(user);
             }
 
             RequestBloodController.setLoggedInState(true);
@@ -124,4 +137,11 @@ public class LoginController {
         errorMessage.setVisible(false);
         errorMessage.setManaged(false);
     }
+    
+    private void setLoading(boolean loading) {
+        loginButton.setDisable(loading);
+        username.setDisable(loading);
+        password.setDisable(loading);
+        loginButton.setText(loading ? "Signing in..." : "Sign In");
+    }
 }
\ No newline at end of file
@@ -42,6 +42,7 @@ public class LogoutController implements Initializable {
 
         DonorDashboardController.setLoggedInState(false);
         FacilityDashboardController.setLoggedInState(false);
+        FacilityDashboardController.setLoggedInUsername(null);
 
         // Set the login state in all relevant controllers according to the new rules
         isLoggedIn = true; // LogoutController's own flag is true when logged out
@@ -52,6 +53,9 @@ public class LogoutController implements Initializable {
         RequestBloodController.setLoggedInState(false);
         RegisterController.setLoggedInState(false);
         LoginController.setLoggedInState(false);
+        
+        // Cached identities belong to the session that just ended
+        DbHelper.clearIdentityCache();
 
         // Show success pop-up
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -74,4 +78,4 @@ public class LogoutController implements Initializable {
             // Consider adding a fallback here, though setting the DashboardController should be part of the app setup
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
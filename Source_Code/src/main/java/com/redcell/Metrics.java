@@ -0,0 +1,90 @@
+package com.redcell;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of latency histograms and counters.
+ * Names are dotted paths such as "db.authenticateUser", "view.load.home" or "cache.identity.hits".
+ * Everything is created on first use and never removed, so callers can record without setup.
+ */
+public final class Metrics {
+
+    private static final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final long startNanos = System.nanoTime();
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the histogram with this name, creating it on first use
+     */
+    public static LatencyHistogram timer(String name) {
+        LatencyHistogram timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns the counter with this name, creating it on first use
+     */
+    public static LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter : counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Records the time elapsed since a System.nanoTime() reading
+     */
+    public static void recordSince(String name, long startNanos) {
+        timer(name).recordSince(startNanos);
+    }
+
+    public static void increment(String name) {
+        counter(name).increment();
+    }
+
+    /**
+     * Records how long the future takes to complete, successfully or not
+     * @return The same future, for chaining
+     */
+    public static <T> CompletableFuture<T> timeFuture(String name, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        future.whenComplete((result, error) -> recordSince(name, start));
+        return future;
+    }
+
+    /**
+     * @return All histograms sorted by name
+     */
+    public static Map<String, LatencyHistogram> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    /**
+     * @return Current value of every counter, sorted by name
+     */
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    /**
+     * @return Seconds since the registry was first used
+     */
+    public static double getUptimeSeconds() {
+        return (System.nanoTime() - startNanos) / 1_000_000_000.0;
+    }
+
+    /**
+     * Clears every histogram and counter, e.g. before a measurement run
+     */
+    public static void reset() {
+        timers.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+}
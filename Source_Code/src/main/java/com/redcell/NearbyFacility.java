@@ -0,0 +1,29 @@
+package com.redcell;
+
+/**
+ * A facility found near a place, with its distance and the matching units it holds
+ */
+public class NearbyFacility {
+    private final int facilityId;
+    private final String username;
+    private final String name;
+    private final String area;
+    private final double distanceKm;
+    private final int units;
+
+    public NearbyFacility(int facilityId, String username, String name, String area, double distanceKm, int units) {
+        this.facilityId = facilityId;
+        this.username = username;
+        this.name = name;
+        this.area = area;
+        this.distanceKm = distanceKm;
+        this.units = units;
+    }
+
+    public int getFacilityId() { return facilityId; }
+    public String getUsername() { return username; }
+    public String getName() { return name; }
+    public String getArea() { return area; }
+    public double getDistanceKm() { return distanceKm; }
+    public int getUnits() { return units; }
+}
@@ -0,0 +1,100 @@
+package com.redcell;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Walks the pending blood requests one page at a time for a scrolling table.
+ * As soon as a page arrives the following page is fetched in the background, so by the
+ * time the user scrolls to the bottom the next rows are usually already in memory.
+ * Call nextPage() again only after the previous page has completed. A page that could not be
+ * read fails its future and leaves the cursor where it was, so the next call retries it.
+ * A donor's feed only walks the requests for blood types the donor can give to.
+ */
+public class PendingRequestFeed {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    private final int pageSize;
+    // Blood types shown, resolved once before the first page
+    private final CompletableFuture<Integer> bloodTypeMask;
+
+    // Cursor after the last page handed out; afterId 0 means the feed has not started
+    private String afterDate = null;
+    private int afterId = 0;
+    private boolean exhausted = false;
+    private CompletableFuture<RequestPage> prefetched;
+
+    public PendingRequestFeed() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    public PendingRequestFeed(int pageSize) {
+        this.pageSize = pageSize;
+        this.bloodTypeMask = CompletableFuture.completedFuture(BloodType.ALL);
+    }
+
+    /**
+     * @param bloodTypeMask Mask of the blood types to show, e.g. from AsyncDbHelper.getCompatibleRequestMask
+     */
+    public PendingRequestFeed(CompletableFuture<Integer> bloodTypeMask, int pageSize) {
+        this.pageSize = pageSize;
+        this.bloodTypeMask = bloodTypeMask;
+    }
+
+    /**
+     * The feed of requests the donor can give whole blood to
+     */
+    public static PendingRequestFeed forDonor(String donorUsername) {
+        return new PendingRequestFeed(AsyncDbHelper.getCompatibleRequestMask(donorUsername), DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @return true if the request belongs in this feed, e.g. for one announced by an event;
+     *         false while the blood types are still being resolved
+     */
+    public boolean accepts(Request request) {
+        Integer mask = bloodTypeMask.getNow(null);
+        return mask != null && ((mask & BloodType.ALL) == BloodType.ALL || BloodType.inMask(request.getBloodType(), mask));
+    }
+
+    /**
+     * @return A future for the next page; an empty last page once the feed is exhausted.
+     *         Fails if the page could not be read.
+     */
+    public synchronized CompletableFuture<RequestPage> nextPage() {
+        if (exhausted) {
+            return CompletableFuture.completedFuture(RequestPage.empty());
+        }
+        CompletableFuture<RequestPage> page = prefetched;
+        prefetched = null;
+        if (page == null || page.isCompletedExceptionally()) {
+            page = fetch(afterDate, afterId);
+        }
+        return page.thenApply(this::advance);
+    }
+
+    /**
+     * @return true once the last page has been handed out
+     */
+    public synchronized boolean isExhausted() {
+        return exhausted;
+    }
+
+    private synchronized RequestPage advance(RequestPage page) {
+        if (page == null) {
+            throw new IllegalStateException("Could not read pending blood requests");
+        }
+        if (!page.hasMore()) {
+            exhausted = true;
+            return page;
+        }
+        afterDate = page.getLastDate();
+        afterId = page.getLastId();
+        prefetched = fetch(afterDate, afterId);
+        return page;
+    }
+
+    private CompletableFuture<RequestPage> fetch(String date, int id) {
+        return bloodTypeMask.thenCompose(mask -> AsyncDbHelper.getPendingBloodRequestsPage(mask, date, id, pageSize));
+    }
+}
@@ -0,0 +1,365 @@
+package com.redcell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory copy of every pending blood request, partitioned by blood type.
+ * It is loaded once from the database and then kept current by DbHelper as request
+ * inserts and status changes commit, so the donor dashboard is served from memory.
+ * Each partition is ordered like the SQL feed (date DESC with undated rows last, then
+ * id DESC), so pages and keyset cursors are interchangeable with getPendingBloodRequestsPage.
+ * A donor's feed merges the partitions of the blood types the donor can give to.
+ * Callers always receive copies, so marking a row in a table never changes the index.
+ */
+public class PendingRequestIndex {
+
+    public static final String PENDING = "Pending";
+
+    /**
+     * Sort key matching ORDER BY r.date DESC, r.id DESC
+     */
+    private static final class Key {
+        private final String date;
+        private final int id;
+
+        Key(String date, int id) {
+            this.date = date;
+            this.id = id;
+        }
+    }
+
+    // SQLite puts NULLs first in ascending order, so they come last when sorting DESC
+    private static final Comparator<Key> FEED_ORDER = Comparator
+            .comparing((Key k) -> k.date, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparingInt(k -> k.id)
+            .reversed();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Request> byId = new HashMap<>();
+    private final NavigableMap<Key, Request> all = new TreeMap<>(FEED_ORDER);
+    private final Map<String, NavigableMap<Key, Request>> byBloodType = new HashMap<>();
+
+    // Ids changed while a load or refresh was running; what it read must not overwrite them
+    private final Set<Integer> changedDuringLoad = new HashSet<>();
+    private volatile boolean loading = false;
+    private volatile boolean loaded = false;
+    private boolean refreshing = false;
+
+    /**
+     * Fills the index from a stream of pending requests. Changes applied while loading win over the
+     * loaded rows, so inserts and status changes that commit during the load are not lost.
+     * If reading the stream fails, the rows read so far are dropped and the index stays
+     * not loaded, so the load can simply be run again.
+     * @param rows Pending requests in any order; the stream is consumed but not closed
+     */
+    public void load(Stream<Request> rows) {
+        lock.writeLock().lock();
+        try {
+            loading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        boolean complete = false;
+        try {
+            rows.forEach(request -> {
+                lock.writeLock().lock();
+                try {
+                    int id = idOf(request);
+                    if (!byId.containsKey(id) && !changedDuringLoad.contains(id)) {
+                        insert(request);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+            complete = true;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedDuringLoad.clear();
+                loading = false;
+                if (complete) {
+                    loaded = true;
+                } else {
+                    // Changes stop being applied now, so a partial copy would go stale
+                    clearRows();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return true once the initial load has finished and the index can answer queries
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return true while loading or loaded, i.e. when committed changes must be applied
+     */
+    public boolean isTracking() {
+        return loading || loaded;
+    }
+
+    /**
+     * Adds or replaces a request after its insert or status change committed.
+     * Requests that are not pending are removed instead.
+     */
+    public void put(Request request) {
+        // Same exact match as the SQL feed's r.status = 'Pending'
+        if (!PENDING.equals(request.getStatus())) {
+            remove(idOf(request));
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Request copy = copyOf(request);
+            delete(idOf(copy));
+            insert(copy);
+            if (loading || refreshing) {
+                changedDuringLoad.add(idOf(copy));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a request, e.g. after it left the Pending status
+     */
+    public void remove(int requestId) {
+        lock.writeLock().lock();
+        try {
+            delete(requestId);
+            if (loading || refreshing) {
+                changedDuringLoad.add(requestId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops everything and marks the index as not loaded
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            clearRows();
+            changedDuringLoad.clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts bringing a loaded index in line with the database without reloading it, e.g. after
+     * another process changed requests. Queries keep being answered meanwhile. Changes applied
+     * before finishRefresh() win over what the refresh read. Always call finishRefresh() afterwards.
+     * @return The ids indexed now, to compare with the pending ids in the database
+     */
+    public Set<Integer> beginRefresh() {
+        lock.writeLock().lock();
+        try {
+            refreshing = true;
+            return new HashSet<>(byId.keySet());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ends a refresh started by beginRefresh()
+     * @param gone Ids that are no longer pending in the database
+     * @param added Pending requests the index did not have
+     */
+    public void finishRefresh(Collection<Integer> gone, Collection<Request> added) {
+        lock.writeLock().lock();
+        try {
+            // A clear() while refreshing wins as well
+            if (loaded) {
+                for (int id : gone) {
+                    if (!changedDuringLoad.contains(id)) {
+                        delete(id);
+                    }
+                }
+                for (Request request : added) {
+                    int id = idOf(request);
+                    if (PENDING.equals(request.getStatus()) && !byId.containsKey(id) && !changedDuringLoad.contains(id)) {
+                        insert(copyOf(request));
+                    }
+                }
+            }
+            changedDuringLoad.clear();
+            refreshing = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns one page of pending requests, newest first
+     * @param bloodTypeMask Only requests for these blood types, e.g. from BloodCompatibility.recipientsOf;
+     *                      BloodType.ALL for every request
+     * @param afterDate Date of the last row already shown (may be null); ignored when afterId is 0
+     * @param afterId Id of the last row already shown, or 0 for the first page
+     * @param pageSize Maximum number of requests to return
+     */
+    public RequestPage page(int bloodTypeMask, String afterDate, int afterId, int pageSize) {
+        lock.readLock().lock();
+        try {
+            // Every partition contributes at most one page plus the row that tells whether more follow
+            List<Map.Entry<Key, Request>> candidates = new ArrayList<>();
+            for (NavigableMap<Key, Request> partition : partitions(bloodTypeMask)) {
+                if (afterId > 0) {
+                    partition = partition.tailMap(new Key(afterDate, afterId), false);
+                }
+                int taken = 0;
+                for (Map.Entry<Key, Request> entry : partition.entrySet()) {
+                    if (taken++ > pageSize) {
+                        break;
+                    }
+                    candidates.add(entry);
+                }
+            }
+            candidates.sort(Map.Entry.comparingByKey(FEED_ORDER));
+
+            List<Request> requests = new ArrayList<>(Math.min(pageSize, candidates.size()));
+            Key last = null;
+            for (Map.Entry<Key, Request> entry : candidates) {
+                if (requests.size() == pageSize) {
+                    break;
+                }
+                requests.add(copyOf(entry.getValue()));
+                last = entry.getKey();
+            }
+            return last == null
+                    ? RequestPage.empty()
+                    : new RequestPage(requests, last.date, last.id, candidates.size() > pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param bloodTypeMask Only requests for these blood types; BloodType.ALL for every request
+     * @return Every pending request for the blood types, newest first
+     */
+    public List<Request> getPending(int bloodTypeMask) {
+        lock.readLock().lock();
+        try {
+            List<Map.Entry<Key, Request>> entries = new ArrayList<>();
+            for (NavigableMap<Key, Request> partition : partitions(bloodTypeMask)) {
+                entries.addAll(partition.entrySet());
+            }
+            entries.sort(Map.Entry.comparingByKey(FEED_ORDER));
+            List<Request> requests = new ArrayList<>(entries.size());
+            for (Map.Entry<Key, Request> entry : entries) {
+                requests.add(copyOf(entry.getValue()));
+            }
+            return requests;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Requests whose blood type name is not a known BloodType are only in the full feed
+    private List<NavigableMap<Key, Request>> partitions(int bloodTypeMask) {
+        if ((bloodTypeMask & BloodType.ALL) == BloodType.ALL) {
+            return List.of(all);
+        }
+        List<NavigableMap<Key, Request>> partitions = new ArrayList<>();
+        for (String bloodType : BloodType.namesOf(bloodTypeMask)) {
+            NavigableMap<Key, Request> partition = byBloodType.get(bloodType);
+            if (partition != null) {
+                partitions.add(partition);
+            }
+        }
+        return partitions;
+    }
+
+    // Callers hold the write lock
+    private void clearRows() {
+        byId.clear();
+        all.clear();
+        byBloodType.clear();
+    }
+
+    // Callers hold the write lock
+    private void insert(Request request) {
+        Key key = keyOf(request);
+        byId.put(key.id, request);
+        all.put(key, request);
+        byBloodType.computeIfAbsent(request.getBloodType(), k -> new TreeMap<>(FEED_ORDER)).put(key, request);
+    }
+
+    // Callers hold the write lock
+    private void delete(int requestId) {
+        Request existing = byId.remove(requestId);
+        if (existing == null) {
+            return;
+        }
+        Key key = keyOf(existing);
+        all.remove(key);
+        removeFrom(byBloodType, existing.getBloodType(), key);
+    }
+
+    private static void removeFrom(Map<String, NavigableMap<Key, Request>> partitions, String name, Key key) {
+        NavigableMap<Key, Request> partition = partitions.get(name);
+        if (partition != null) {
+            partition.remove(key);
+            if (partition.isEmpty()) {
+                partitions.remove(name);
+            }
+        }
+    }
+
+    private static Key keyOf(Request request) {
+        return new Key(request.getDate(), idOf(request));
+    }
+
+    private static int idOf(Request request) {
+        return Integer.parseInt(request.getRequestId());
+    }
+
+    private static Request copyOf(Request request) {
+        return new Request(
+            request.getRequestId(),
+            request.getBloodType(),
+            request.getUnits(),
+            request.getHospital(),
+            request.getArea(),
+            request.getStatus(),
+            request.getDate(),
+            request.getPatientCondition(),
+            request.getTime(),
+            request.getContact(),
+            request.getCreatedBy()
+        );
+    }
+}
@@ -40,10 +40,44 @@ public class RedCellApp extends Application {
         primaryStage.show();
     }
 
+    @Override
+    public void stop() {
+        // Release the pooled database connections on exit
+        DbHelper.shutdown();
+    }
+
     public static void main(String[] args) {
-        DbHelper.createNewDatabase();
-        DbHelper.createTables();
-        DbHelper.updateSchema();
+        long startTime = System.nanoTime();
+        DbHelper.initializeDatabase();
+        System.out.printf("Database ready in %.1f ms%n", (System.nanoTime() - startTime) / 1_000_000.0);
+        
+        // Notice writes by other RedCell instances sharing the database file
+        DbHelper.startChangePolling();
+        
+        // Build the pending request index in the background; queries use SQL until it is ready
+        long indexStart = System.nanoTime();
+        AsyncDbHelper.loadPendingRequestIndex().thenAccept(count -> {
+            if (count >= 0) {
+                System.out.printf("Indexed %d pending requests in %.1f ms%n", count, (System.nanoTime() - indexStart) / 1_000_000.0);
+            }
+        });
+        
+        // Same for the eligible donor index; new requests alert no donors until it and the evaluation below are ready
+        long donorIndexStart = System.nanoTime();
+        AsyncDbHelper.loadEligibleDonorIndex().thenAccept(count ->
+            System.out.printf("Indexed %d donors in %.1f ms%n", count, (System.nanoTime() - donorIndexStart) / 1_000_000.0));
+        
+        // Evaluate every donor's deferral and status block in parallel
+        long eligibilityStart = System.nanoTime();
+        AsyncDbHelper.reevaluateEligibility().thenAccept(count ->
+            System.out.printf("Evaluated eligibility of %d donors in %.1f ms%n", count, (System.nanoTime() - eligibilityStart) / 1_000_000.0));
+        
+        // Flag statements whose plan scans a whole table; details go to the slow query log
+        AsyncDbHelper.checkQueryPlans().thenAccept(flagged -> {
+            if (!flagged.isEmpty()) {
+                System.out.println(flagged.size() + " queries do full table scans, see " + SlowQueryLog.getFile().toAbsolutePath());
+            }
+        });
         launch(RedCellApp.class,args);
     }
 }
\ No newline at end of file
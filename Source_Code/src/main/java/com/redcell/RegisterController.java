@@ -60,38 +60,62 @@ public class RegisterController {
             return;
         }
 
-        try {
-            // Check if username already exists
-            if (DbHelper.usernameExists(username.getText().trim())) {
-                showErrorMessage("Username already exists. Please choose a different username.");
-                return;
-            }
-            
-            // Register the user in the database
-            boolean registrationSuccess = DbHelper.registerUser(
-                username.getText().trim(),
-                password.getText(), // In production, hash the password
-                fullName.getText().trim(),
-                email.getText().trim(),
-                phone.getText().trim(),
-                address.getText().trim(),
-                bloodType.getValue(),
-                dateOfBirth.getValue().toString(),
-                "" // area - can be extracted from address or left empty for now
-            );
-            
-            if (registrationSuccess) {
-                showErrorMessage("Registration successful! You can now log in.");
-                // Clear all fields after successful registration
-                clearFields();
-            } else {
-                showErrorMessage("Registration failed. Please try again.");
-            }
+        String user = username.getText().trim();
+        String pass = password.getText(); // In production, hash the password
+        String name = fullName.getText().trim();
+        String mail = email.getText().trim();
+        String phoneNumber = phone.getText().trim();
+        String addr = address.getText().trim();
+        String blood = bloodType.getValue();
+        String birthDate = dateOfBirth.getValue().toString();
+
+        // Check the username and register on a background thread; the button is disabled meanwhile
+        setLoading(true);
+        AsyncDbHelper.deliver(AsyncDbHelper.supply(() -> {
+                // Check if username already exists
+                if (DbHelper.usernameExists(user)) {
+                    return RegistrationResult.USERNAME_TAKEN;
+                }
+
+                // Register the user in the database
+                boolean registrationSuccess = DbHelper.registerUser(
+                    user, pass, name, mail, phoneNumber, addr, blood, birthDate,
+                    "" // area - can be extracted from address or left empty for now
+                );
+                return registrationSuccess ? RegistrationResult.REGISTERED : RegistrationResult.FAILED;
+            }),
+            result -> {
+                setLoading(false);
+                switch (result) {
+                    case USERNAME_TAKEN:
+                        showErrorMessage("Username already exists. Please choose a different username.");
+                        break;
+                    case REGISTERED:
+                        showErrorMessage("Registration successful! You can now log in.");
+                        // Clear all fields after successful registration
+                        clearFields();
+                        break;
+                    default:
+                        showErrorMessage("Registration failed. Please try again.");
+                        break;
+                }
+            },
+            error -> {
+                setLoading(false);
+                showErrorMessage("Error during registration: " + error.getMessage());
+                error.printStackTrace();
+            });
+    }
 
-        } catch (Exception e) {
-            showErrorMessage("Error during registration: " + e.getMessage());
-            e.printStackTrace();
-        }
+    private enum RegistrationResult {
+        REGISTERED,
+        USERNAME_TAKEN,
+        FAILED
+    }
+
+    private void setLoading(boolean loading) {
+        registerButton.setDisable(loading);
+        registerButton.setText(loading ? "Registering..." : "Register");
     }
 
     private boolean validateFields() {
@@ -0,0 +1,45 @@
+package com.redcell;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of pending blood requests plus the keyset cursor for the page after it.
+ * The cursor is the (date, id) of the last row on this page, matching the feed's
+ * ORDER BY r.date DESC, r.id DESC.
+ */
+public class RequestPage {
+
+    private final List<Request> requests;
+    private final String lastDate;
+    private final int lastId;
+    private final boolean hasMore;
+
+    public RequestPage(List<Request> requests, String lastDate, int lastId, boolean hasMore) {
+        this.requests = Collections.unmodifiableList(requests);
+        this.lastDate = lastDate;
+        this.lastId = lastId;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * @return An empty last page, used once the feed is exhausted
+     */
+    public static RequestPage empty() {
+        return new RequestPage(Collections.emptyList(), null, 0, false);
+    }
+
+    public List<Request> getRequests() { return requests; }
+
+    /**
+     * @return Date of the last row on this page (may be null for requests without a date)
+     */
+    public String getLastDate() { return lastDate; }
+
+    /**
+     * @return Id of the last row on this page, or 0 if the page is empty
+     */
+    public int getLastId() { return lastId; }
+
+    public boolean hasMore() { return hasMore; }
+}
@@ -0,0 +1,54 @@
+package com.redcell;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of full-text search results over blood requests, best match first.
+ * Search results are ordered by relevance rather than by a column, so pages are
+ * addressed by offset instead of a keyset cursor.
+ */
+public class RequestSearchPage {
+
+    private final List<Request> requests;
+    private final int offset;
+    private final boolean hasMore;
+    private final boolean truncated;
+
+    /**
+     * @param truncated true if more requests matched than were ranked
+     */
+    public RequestSearchPage(List<Request> requests, int offset, boolean hasMore, boolean truncated) {
+        this.requests = Collections.unmodifiableList(requests);
+        this.offset = offset;
+        this.hasMore = hasMore;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @return An empty last page, for blank queries and failed searches
+     */
+    public static RequestSearchPage empty() {
+        return new RequestSearchPage(Collections.emptyList(), 0, false, false);
+    }
+
+    public List<Request> getRequests() { return requests; }
+
+    /**
+     * @return Number of results before this page
+     */
+    public int getOffset() { return offset; }
+
+    /**
+     * @return Offset to pass for the page after this one
+     */
+    public int getNextOffset() { return offset + requests.size(); }
+
+    public boolean hasMore() { return hasMore; }
+
+    /**
+     * @return true if the query matched more requests than DbHelper ranks, so the results are
+     *         the best of the newest matches only and older requests may be missing
+     */
+    public boolean isTruncated() { return truncated; }
+}
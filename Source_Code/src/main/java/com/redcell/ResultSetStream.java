@@ -0,0 +1,160 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily maps an open ResultSet to a Stream, one row at a time, so large reads run in constant memory.
+ * The stream owns its connection, statement and result set: they are closed when the last row
+ * has been read, when mapping fails, or when the stream is closed, whichever comes first.
+ * Callers that may stop early (limit, findFirst, an exception) must close the stream, e.g.
+ * with try-with-resources, otherwise the pooled connection is not returned.
+ */
+public final class ResultSetStream {
+
+    // Rows the driver fetches per round trip unless a caller asks otherwise
+    public static final int DEFAULT_FETCH_SIZE = Integer.getInteger("redcell.stream.fetchSize", 500);
+
+    /**
+     * Binds the query parameters before it is executed
+     */
+    @FunctionalInterface
+    public interface ParameterBinder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * Maps the current row; must not advance the ResultSet
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Thrown from stream operations when reading a row fails after the query has started
+     */
+    public static class StreamingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public StreamingException(String message, SQLException cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    private ResultSetStream() {
+    }
+
+    /**
+     * Runs a query and streams its rows
+     * @param conn Connection the stream takes ownership of; it is closed when the stream is
+     * @param sql The query
+     * @param fetchSize Rows fetched per round trip (0 or less uses DEFAULT_FETCH_SIZE)
+     * @param binder Sets the statement parameters
+     * @param mapper Turns each row into an object
+     * @throws SQLException if the query could not be started, or conn is null because no connection
+     *         could be checked out; the connection is closed in that case too
+     */
+    public static <T> Stream<T> query(Connection conn, String sql, int fetchSize,
+                                      ParameterBinder binder, RowMapper<T> mapper) throws SQLException {
+        if (conn == null) {
+            throw new SQLException("No database connection available");
+        }
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            stmt.setFetchSize(fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE);
+            binder.bind(stmt);
+            rs = stmt.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            closeAll(rs, stmt, conn);
+            throw e;
+        }
+
+        RowSpliterator<T> rows = new RowSpliterator<>(conn, stmt, rs, mapper);
+        return StreamSupport.stream(rows, false).onClose(rows::close);
+    }
+
+    private static void closeAll(ResultSet rs, PreparedStatement stmt, Connection conn) {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+        try {
+            if (conn != null) {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static final class RowSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+        private final Connection conn;
+        private final PreparedStatement stmt;
+        private final ResultSet rs;
+        private final RowMapper<T> mapper;
+        private boolean closed = false;
+
+        RowSpliterator(Connection conn, PreparedStatement stmt, ResultSet rs, RowMapper<T> mapper) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.conn = conn;
+            this.stmt = stmt;
+            this.rs = rs;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            T row;
+            try {
+                if (!rs.next()) {
+                    close();
+                    return false;
+                }
+                row = mapper.map(rs);
+            } catch (SQLException e) {
+                close();
+                throw new StreamingException("Error reading streamed row: " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            action.accept(row);
+            return true;
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                closeAll(rs, stmt, conn);
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned schema migrations for redcell.db.
+ * The applied version is stored in PRAGMA user_version, so an up-to-date database
+ * only costs one pragma read at startup. Pending migrations run in order inside a
+ * single transaction on one connection.
+ *
+ * Migrations 1-7 are the original createTables/updateSchema steps (see db_update_script.sql).
+ * They are idempotent so databases created before versioning (user_version = 0) upgrade cleanly.
+ * New schema changes must be appended with the next version number, never edited in place.
+ */
+public class SchemaMigrator {
+
+    /**
+     * A single schema change
+     */
+    @FunctionalInterface
+    public interface MigrationStep {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final MigrationStep step;
+
+        Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    static {
+        register(1, "Create base tables", stmt -> {
+            stmt.execute("CREATE TABLE IF NOT EXISTS users (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    username TEXT NOT NULL UNIQUE,\n" +
+                         "    password TEXT NOT NULL,\n" +
+                         "    role TEXT NOT NULL\n" +
+                         ");");
+            stmt.execute("CREATE TABLE IF NOT EXISTS donors (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    user_id INTEGER NOT NULL,\n" +
+                         "    blood_group TEXT NOT NULL,\n" +
+                         "    last_donation_date TEXT,\n" +
+                         "    FOREIGN KEY (user_id) REFERENCES users(id)\n" +
+                         ");");
+            stmt.execute("CREATE TABLE IF NOT EXISTS facilities (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    user_id INTEGER NOT NULL,\n" +
+                         "    name TEXT NOT NULL,\n" +
+                         "    location TEXT,\n" +
+                         "    FOREIGN KEY (user_id) REFERENCES users(id)\n" +
+                         ");");
+            stmt.execute("CREATE TABLE IF NOT EXISTS donations (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    donor_id INTEGER NOT NULL,\n" +
+                         "    date TEXT NOT NULL,\n" +
+                         "    blood_type TEXT NOT NULL,\n" +
+                         "    quantity REAL NOT NULL,\n" +
+                         "    FOREIGN KEY (donor_id) REFERENCES donors(id)\n" +
+                         ");");
+            stmt.execute("CREATE TABLE IF NOT EXISTS requests (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    facility_id INTEGER NOT NULL,\n" +
+                         "    blood_type TEXT NOT NULL,\n" +
+                         "    quantity REAL NOT NULL,\n" +
+                         "    status TEXT NOT NULL,\n" +
+                         "    FOREIGN KEY (facility_id) REFERENCES facilities(id)\n" +
+                         ");");
+        });
+
+        // Junction table for the Many-to-Many relationship between donations and requests
+        register(2, "Create donation_requests table", stmt ->
+            stmt.execute("CREATE TABLE IF NOT EXISTS donation_requests (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    donation_id INTEGER NOT NULL,\n" +
+                         "    request_id INTEGER NOT NULL,\n" +
+                         "    quantity REAL NOT NULL,\n" +
+                         "    date TEXT NOT NULL,\n" +
+                         "    FOREIGN KEY (donation_id) REFERENCES donations(id),\n" +
+                         "    FOREIGN KEY (request_id) REFERENCES requests(id)\n" +
+                         ");"));
+
+        register(3, "Create inventory table", stmt ->
+            stmt.execute("CREATE TABLE IF NOT EXISTS inventory (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    facility_id INTEGER NOT NULL,\n" +
+                         "    blood_type TEXT NOT NULL,\n" +
+                         "    component_type TEXT NOT NULL,\n" +
+                         "    quantity REAL NOT NULL,\n" +
+                         "    expiry_date TEXT,\n" +
+                         "    FOREIGN KEY (facility_id) REFERENCES facilities(id)\n" +
+                         ");"));
+
+        register(4, "Add name and area to users", stmt -> {
+            addColumnIfMissing(stmt, "users", "name", "TEXT");
+            addColumnIfMissing(stmt, "users", "area", "TEXT");
+        });
+
+        register(5, "Add status to donations", stmt ->
+            addColumnIfMissing(stmt, "donations", "status", "TEXT NOT NULL DEFAULT 'APPROVED'"));
+
+        register(6, "Add request detail columns", stmt -> {
+            addColumnIfMissing(stmt, "requests", "patient_condition", "TEXT");
+            addColumnIfMissing(stmt, "requests", "time", "TEXT");
+            addColumnIfMissing(stmt, "requests", "contact", "TEXT");
+            addColumnIfMissing(stmt, "requests", "created_by", "TEXT");
+            addColumnIfMissing(stmt, "requests", "date", "TEXT");
+        });
+
+        register(7, "Create foreign key and search indexes", stmt -> {
+            // Indexes for foreign keys
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_donors_user_id ON donors(user_id);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_facilities_user_id ON facilities(user_id);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_donations_donor_id ON donations(donor_id);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_requests_facility_id ON requests(facility_id);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_donation_requests_donation_id ON donation_requests(donation_id);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_donation_requests_request_id ON donation_requests(request_id);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_facility_id ON inventory(facility_id);");
+
+            // Indexes for common search fields
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_donations_blood_type ON donations(blood_type);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_requests_blood_type ON requests(blood_type);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_requests_status ON requests(status);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_blood_type ON inventory(blood_type);");
+        });
+
+        // Serves the keyset-paginated pending feed (WHERE status = ? ORDER BY date DESC, id DESC)
+        // without a sort step. It also covers status-only lookups, so idx_requests_status is dropped.
+        register(8, "Create composite index for the pending request feed", stmt -> {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_requests_status_date_id ON requests(status, date, id);");
+            stmt.execute("DROP INDEX IF EXISTS idx_requests_status;");
+        });
+
+        // Contentless FTS5 index over the searchable request text, keyed by request id. It stores
+        // only the index; results are joined back to requests. contentless_delete lets the triggers
+        // remove rows by rowid alone. Status changes do not touch the index.
+        register(9, "Create full-text search index for requests", stmt -> {
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS requests_fts USING fts5(\n" +
+                         "    patient_condition, facility_name, location, contact,\n" +
+                         "    content='', contentless_delete=1,\n" +
+                         "    tokenize='unicode61 remove_diacritics 2', prefix='2 3'\n" +
+                         ");");
+            // Matches in the patient condition count most, contact numbers least
+            stmt.execute("INSERT INTO requests_fts (requests_fts, rank) VALUES ('rank', 'bm25(4.0, 2.0, 1.0, 0.5)');");
+            stmt.execute("INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)\n" +
+                         "SELECT r.id, r.patient_condition, f.name, f.location, r.contact\n" +
+                         "FROM requests r LEFT JOIN facilities f ON r.facility_id = f.id;");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS requests_fts_insert AFTER INSERT ON requests BEGIN\n" +
+                         "    INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)\n" +
+                         "    SELECT new.id, new.patient_condition, f.name, f.location, new.contact\n" +
+                         "    FROM (SELECT 1) LEFT JOIN facilities f ON f.id = new.facility_id;\n" +
+                         "END;");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS requests_fts_update\n" +
+                         "AFTER UPDATE OF patient_condition, contact, facility_id ON requests BEGIN\n" +
+                         "    DELETE FROM requests_fts WHERE rowid = old.id;\n" +
+                         "    INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)\n" +
+                         "    SELECT new.id, new.patient_condition, f.name, f.location, new.contact\n" +
+                         "    FROM (SELECT 1) LEFT JOIN facilities f ON f.id = new.facility_id;\n" +
+                         "END;");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS requests_fts_delete AFTER DELETE ON requests BEGIN\n" +
+                         "    DELETE FROM requests_fts WHERE rowid = old.id;\n" +
+                         "END;");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS facilities_fts_update\n" +
+                         "AFTER UPDATE OF name, location ON facilities BEGIN\n" +
+                         "    DELETE FROM requests_fts WHERE rowid IN (SELECT id FROM requests WHERE facility_id = new.id);\n" +
+                         "    INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)\n" +
+                         "    SELECT r.id, r.patient_condition, new.name, new.location, r.contact\n" +
+                         "    FROM requests r WHERE r.facility_id = new.id;\n" +
+                         "END;");
+        });
+
+        // Per facility and day counts for the facility dashboard, so reading a facility's totals and
+        // today's numbers is one primary key range. Every request is counted on its own date ('' when
+        // it has none), in the triggers and in the rebuild alike; a change takes the request out of the
+        // day it was counted on and adds it to its new one, so no day can go negative.
+        register(10, "Create trigger-maintained facility daily stats", stmt -> {
+            stmt.execute("CREATE TABLE IF NOT EXISTS facility_daily_stats (\n" +
+                         "    facility_id INTEGER NOT NULL,\n" +
+                         "    day TEXT NOT NULL,\n" +
+                         "    requests INTEGER NOT NULL DEFAULT 0,\n" +
+                         "    completions INTEGER NOT NULL DEFAULT 0,\n" +
+                         "    PRIMARY KEY (facility_id, day),\n" +
+                         "    FOREIGN KEY (facility_id) REFERENCES facilities(id)\n" +
+                         ") WITHOUT ROWID;");
+            rebuildFacilityDailyStats(stmt);
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS facility_stats_request_insert AFTER INSERT ON requests BEGIN\n" +
+                         "    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)\n" +
+                         "    VALUES (new.facility_id, COALESCE(new.date, ''), 1, new.status = 'Completed')\n" +
+                         "    ON CONFLICT (facility_id, day) DO UPDATE SET\n" +
+                         "        requests = requests + excluded.requests, completions = completions + excluded.completions;\n" +
+                         "END;");
+            // Takes the request out of its old day and adds it to its new one
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS facility_stats_request_update AFTER UPDATE OF status, date, facility_id ON requests\n" +
+                         "WHEN (old.status = 'Completed') <> (new.status = 'Completed')\n" +
+                         "    OR old.date IS NOT new.date OR old.facility_id IS NOT new.facility_id BEGIN\n" +
+                         "    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)\n" +
+                         "    VALUES (old.facility_id, COALESCE(old.date, ''), -1, -(old.status = 'Completed'))\n" +
+                         "    ON CONFLICT (facility_id, day) DO UPDATE SET\n" +
+                         "        requests = requests + excluded.requests, completions = completions + excluded.completions;\n" +
+                         "    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)\n" +
+                         "    VALUES (new.facility_id, COALESCE(new.date, ''), 1, new.status = 'Completed')\n" +
+                         "    ON CONFLICT (facility_id, day) DO UPDATE SET\n" +
+                         "        requests = requests + excluded.requests, completions = completions + excluded.completions;\n" +
+                         "END;");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS facility_stats_request_delete AFTER DELETE ON requests BEGIN\n" +
+                         "    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)\n" +
+                         "    VALUES (old.facility_id, COALESCE(old.date, ''), -1, -(old.status = 'Completed'))\n" +
+                         "    ON CONFLICT (facility_id, day) DO UPDATE SET\n" +
+                         "        requests = requests + excluded.requests, completions = completions + excluded.completions;\n" +
+                         "END;");
+        });
+
+        // Append-only inventory ledger with per-facility snapshots (see InventoryLedger).
+        // Lots already in the inventory table become opening balance entries.
+        register(11, "Create inventory ledger and snapshots", stmt -> {
+            stmt.execute("CREATE TABLE IF NOT EXISTS inventory_movements (\n" +
+                         "    id INTEGER PRIMARY KEY AUTOINCREMENT,\n" +
+                         "    facility_id INTEGER NOT NULL,\n" +
+                         "    blood_type TEXT NOT NULL,\n" +
+                         "    component_type TEXT NOT NULL,\n" +
+                         "    quantity INTEGER NOT NULL,\n" +
+                         "    kind TEXT NOT NULL,\n" +
+                         "    reference TEXT,\n" +
+                         "    created_at TEXT NOT NULL DEFAULT (datetime('now', 'localtime')),\n" +
+                         "    FOREIGN KEY (facility_id) REFERENCES facilities(id)\n" +
+                         ");");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_movements_facility_id_id ON inventory_movements(facility_id, id);");
+            stmt.execute("CREATE TABLE IF NOT EXISTS inventory_snapshots (\n" +
+                         "    facility_id INTEGER NOT NULL,\n" +
+                         "    movement_id INTEGER NOT NULL,\n" +
+                         "    blood_type TEXT NOT NULL,\n" +
+                         "    component_type TEXT NOT NULL,\n" +
+                         "    quantity INTEGER NOT NULL,\n" +
+                         "    PRIMARY KEY (facility_id, movement_id, blood_type, component_type),\n" +
+                         "    FOREIGN KEY (facility_id) REFERENCES facilities(id)\n" +
+                         ") WITHOUT ROWID;");
+            recordInventoryOpeningBalances(stmt, 0);
+        });
+
+        // Inputs of the eligibility engine: a donor's block status (NULL when not blocked)
+        // and the component each donation gave; earlier donations were all whole blood
+        register(12, "Add donor status and donation component", stmt -> {
+            addColumnIfMissing(stmt, "donors", "status", "TEXT");
+            addColumnIfMissing(stmt, "donations", "component_type", "TEXT NOT NULL DEFAULT 'Whole Blood'");
+            // Covers the engine's "latest donation per component" query, so it never reads donation rows
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_donations_donor_component_date ON donations(donor_id, component_type, date, status);");
+        });
+
+        // One version per table ChangeCapture tracks, bumped once per transaction that changed it,
+        // so instances sharing the file can tell which tables another one wrote (see DataVersionPoller)
+        register(13, "Create table versions", stmt -> {
+            stmt.execute("CREATE TABLE IF NOT EXISTS table_versions (\n" +
+                         "    table_name TEXT PRIMARY KEY,\n" +
+                         "    version INTEGER NOT NULL DEFAULT 0\n" +
+                         ") WITHOUT ROWID;");
+            stmt.execute("INSERT OR IGNORE INTO table_versions (table_name) VALUES " +
+                         "('requests'), ('donations'), ('inventory'), ('users'), ('donors'), ('facilities');");
+        });
+    }
+
+    private static void register(int version, String description, MigrationStep step) {
+        if (version != MIGRATIONS.size() + 1) {
+            throw new IllegalStateException("Migration " + version + " registered out of order");
+        }
+        MIGRATIONS.add(new Migration(version, description, step));
+    }
+
+    /**
+     * @return The schema version this build of RedCell expects
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.size();
+    }
+
+    /**
+     * Reads the schema version recorded in the database file
+     */
+    public static int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version;")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Applies all pending migrations in one transaction
+     * @param conn A writable connection in auto-commit mode
+     * @return The number of migrations applied (0 if the schema was already current)
+     */
+    public static int migrate(Connection conn) throws SQLException {
+        int current = getCurrentVersion(conn);
+        int latest = getLatestVersion();
+        if (current >= latest) {
+            return 0;
+        }
+
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version > current) {
+                    migration.step.apply(stmt);
+                    System.out.println("Applied migration " + migration.version + ": " + migration.description);
+                }
+            }
+            // user_version does not accept bind parameters
+            stmt.execute("PRAGMA user_version = " + latest + ";");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return latest - current;
+    }
+
+    /**
+     * Recomputes facility_daily_stats from the requests table, e.g. after a bulk load.
+     * Each request is counted on its request date, like the triggers do.
+     */
+    public static void rebuildFacilityDailyStats(Statement stmt) throws SQLException {
+        stmt.execute("DELETE FROM facility_daily_stats;");
+        stmt.execute("INSERT INTO facility_daily_stats (facility_id, day, requests, completions)\n" +
+                     "SELECT facility_id, COALESCE(date, ''), COUNT(*), SUM(status = 'Completed')\n" +
+                     "FROM requests GROUP BY 1, 2;");
+    }
+
+    /**
+     * Adds an opening balance ledger entry for every inventory lot with an id above afterInventoryId,
+     * then snapshots each facility's stock so reads start from a snapshot
+     */
+    public static void recordInventoryOpeningBalances(Statement stmt, long afterInventoryId) throws SQLException {
+        stmt.execute("INSERT INTO inventory_movements (facility_id, blood_type, component_type, quantity, kind, reference)\n" +
+                     "SELECT facility_id, blood_type, component_type, CAST(quantity AS INTEGER), 'ADJUSTMENT', 'inventory lot ' || id\n" +
+                     "FROM inventory WHERE id > " + afterInventoryId + " ORDER BY id;");
+        // Summing the whole ledger is correct whatever snapshots exist; this only runs on bulk loads
+        stmt.execute("INSERT OR IGNORE INTO inventory_snapshots (facility_id, movement_id, blood_type, component_type, quantity)\n" +
+                     "SELECT m.facility_id, l.last_id, m.blood_type, m.component_type, SUM(m.quantity)\n" +
+                     "FROM inventory_movements m\n" +
+                     "JOIN (SELECT facility_id, MAX(id) AS last_id FROM inventory_movements GROUP BY facility_id) l\n" +
+                     "    ON l.facility_id = m.facility_id\n" +
+                     "GROUP BY m.facility_id, m.blood_type, m.component_type;");
+    }
+
+    /**
+     * Adds a column unless it already exists (databases created before versioning already have most columns)
+     */
+    private static void addColumnIfMissing(Statement stmt, String table, String column, String definition) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ");")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition + ";");
+    }
+}
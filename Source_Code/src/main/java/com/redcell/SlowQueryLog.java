@@ -0,0 +1,441 @@
+package com.redcell;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs every pooled statement that runs longer than a threshold, together with its
+ * (redacted) bind values and the EXPLAIN QUERY PLAN output, to a size-rotated local file.
+ *
+ * Tuned with system properties:
+ *   -Dredcell.slowQuery.thresholdMs  log statements slower than this (default 100, negative disables)
+ *   -Dredcell.slowQuery.file         log file (default logs/slow-queries.log)
+ *   -Dredcell.slowQuery.maxBytes     rotate once the file is larger than this (default 1 MB)
+ *   -Dredcell.slowQuery.files        rotated files to keep next to the current one (default 3)
+ */
+public final class SlowQueryLog {
+
+    private static final long THRESHOLD_NANOS = Long.getLong("redcell.slowQuery.thresholdMs", 100) * 1_000_000L;
+    private static final Path FILE = Paths.get(System.getProperty("redcell.slowQuery.file", "logs/slow-queries.log"));
+    private static final long MAX_BYTES = Long.getLong("redcell.slowQuery.maxBytes", 1024 * 1024);
+    private static final int KEPT_FILES = Integer.getInteger("redcell.slowQuery.files", 3);
+
+    private static final LongAdder slowQueries = Metrics.counter("db.slowQueries");
+
+    // EXPLAIN output per SQL text; plans only change with the schema
+    private static final Map<String, List<String>> plans = new ConcurrentHashMap<>();
+
+    private static final Object fileLock = new Object();
+
+    // Placeholder for parameters set through a setter that is not captured (streams, dates, ...)
+    private static final Object UNCAPTURED = new Object();
+
+    private static final Object[] NO_BINDS = new Object[0];
+
+    private SlowQueryLog() {
+    }
+
+    public static boolean isEnabled() {
+        return THRESHOLD_NANOS >= 0;
+    }
+
+    /**
+     * Wraps a statement so its executions are timed against the threshold
+     * @param statement The statement handed out by the pool
+     * @param sql The SQL it was prepared from
+     * @param connection The physical connection, used to EXPLAIN slow statements
+     */
+    public static PreparedStatement profile(PreparedStatement statement, String sql, Connection connection) {
+        return new ProfiledStatement(statement, sql, connection);
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN for the SQL. Parameters are left unbound, which does not
+     * change the chosen plan. Statements without a plan (e.g. INSERT ... VALUES) return an empty list.
+     * @return One line per plan step, indented by depth
+     */
+    public static List<String> explain(Connection connection, String sql) throws SQLException {
+        List<String> cached = plans.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        List<String> plan = new ArrayList<>();
+        Map<Integer, Integer> depths = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int depth = depths.getOrDefault(rs.getInt("parent"), -1) + 1;
+                depths.put(rs.getInt("id"), depth);
+                plan.add("  ".repeat(depth) + rs.getString("detail"));
+            }
+        }
+        plans.put(sql, plan);
+        return plan;
+    }
+
+    /**
+     * @return true if any step of the plan reads a whole table or index. Scans of a subquery's
+     *         result (already bounded by the subquery) and of FTS virtual tables (which seek in
+     *         their own index) do not count.
+     */
+    public static boolean hasFullScan(List<String> plan) {
+        Set<String> subqueries = new HashSet<>();
+        for (String step : plan) {
+            String detail = step.trim();
+            if (detail.startsWith("CO-ROUTINE ") || detail.startsWith("MATERIALIZE ")) {
+                subqueries.add(detail.substring(detail.indexOf(' ') + 1));
+            }
+        }
+        for (String step : plan) {
+            String detail = step.trim();
+            if (!detail.startsWith("SCAN ") || detail.equals("SCAN CONSTANT ROW")
+                    || detail.contains(" VIRTUAL TABLE INDEX ")) {
+                continue;
+            }
+            String target = detail.substring("SCAN ".length()).split(" ")[0];
+            if (!subqueries.contains(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets cached plans, e.g. after a migration changed the indexes
+     */
+    public static void clearPlans() {
+        plans.clear();
+    }
+
+    /**
+     * Writes a plan self-check warning to the log file
+     */
+    public static void logFullScan(String name, String sql, List<String> plan) {
+        StringBuilder entry = new StringBuilder();
+        entry.append(LocalDateTime.now()).append(" FULL SCAN in ").append(name).append('\n');
+        appendStatement(entry, sql, null, plan);
+        append(entry.toString());
+    }
+
+    public static Path getFile() {
+        return FILE;
+    }
+
+    private static void record(String sql, Object[] binds, long nanos, Connection connection) {
+        if (nanos < THRESHOLD_NANOS) {
+            return;
+        }
+        slowQueries.increment();
+
+        List<String> plan;
+        try {
+            plan = explain(connection, sql);
+        } catch (SQLException e) {
+            plan = List.of("(EXPLAIN failed: " + e.getMessage() + ")");
+        }
+
+        StringBuilder entry = new StringBuilder();
+        entry.append(LocalDateTime.now())
+             .append(String.format(" SLOW %.1f ms", nanos / 1_000_000.0))
+             .append(" in ").append(callingMethod()).append('\n');
+        appendStatement(entry, sql, binds, plan);
+        append(entry.toString());
+    }
+
+    private static void appendStatement(StringBuilder entry, String sql, Object[] binds, List<String> plan) {
+        entry.append("  SQL: ").append(sql).append('\n');
+        if (binds != null && binds.length > 0) {
+            entry.append("  Binds:");
+            for (int i = 0; i < binds.length; i++) {
+                entry.append(" [").append(i + 1).append("] ").append(redact(binds[i]));
+            }
+            entry.append('\n');
+        }
+        entry.append("  Plan:").append(plan.isEmpty() ? " (none)" : "").append('\n');
+        for (String step : plan) {
+            entry.append("    ").append(step).append('\n');
+        }
+    }
+
+    // Numbers and NULLs are kept; text may hold passwords, names or phone numbers
+    private static String redact(Object value) {
+        if (value == UNCAPTURED) {
+            return "?";
+        }
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof String) {
+            return "<text, " + ((String) value).length() + " chars>";
+        }
+        if (value instanceof byte[]) {
+            return "<blob, " + ((byte[]) value).length + " bytes>";
+        }
+        return "<" + value.getClass().getSimpleName() + ">";
+    }
+
+    // Only walked for slow statements
+    private static String callingMethod() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> frame.getClassName().equals(DbHelper.class.getName()))
+                .map(frame -> "DbHelper." + frame.getMethodName())
+                .findFirst()
+                .orElse("unknown caller"));
+    }
+
+    private static void append(String entry) {
+        synchronized (fileLock) {
+            try {
+                Path parent = FILE.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                if (Files.exists(FILE) && Files.size(FILE) + entry.length() > MAX_BYTES) {
+                    rotate();
+                }
+                try (Writer out = Files.newBufferedWriter(FILE, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    out.write(entry);
+                }
+            } catch (IOException e) {
+                System.out.println("Could not write slow query log: " + e.getMessage());
+            }
+        }
+    }
+
+    // slow-queries.log -> .1 -> .2 ... ; the oldest file is dropped
+    private static void rotate() throws IOException {
+        if (KEPT_FILES <= 0) {
+            Files.delete(FILE);
+            return;
+        }
+        Files.deleteIfExists(rotated(KEPT_FILES));
+        for (int i = KEPT_FILES - 1; i >= 1; i--) {
+            if (Files.exists(rotated(i))) {
+                Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(FILE, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Path rotated(int generation) {
+        return FILE.resolveSibling(FILE.getFileName() + "." + generation);
+    }
+
+    /**
+     * Times each execution and remembers the bind values set for it.
+     * Queries are timed until the statement is closed so reading the rows counts too,
+     * except streamed queries (those that set a fetch size), whose rows are read at the
+     * consumer's pace; for them only the time to the first row is counted.
+     * Bind values are only copied when a statement is rebound while its last query is still
+     * being timed; everything else reads the live array, and only slow statements format it.
+     */
+    private static final class ProfiledStatement extends DelegatingPreparedStatement {
+        private final PreparedStatement statement;
+        private final String sql;
+        private final Connection connection;
+        private Object[] binds = NO_BINDS;
+        private boolean streamed = false;
+
+        // Start of a query whose rows are still being read, or 0
+        private long queryStart = 0;
+        // The binds of that query; shared with binds until the statement is rebound
+        private Object[] queryBinds;
+
+        ProfiledStatement(PreparedStatement statement, String sql, Connection connection) {
+            this.statement = statement;
+            this.sql = sql;
+            this.connection = connection;
+        }
+
+        @Override
+        protected PreparedStatement delegate() {
+            return statement;
+        }
+
+        private void bind(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (binds == queryBinds) {
+                binds = binds.clone();
+            }
+            if (index > binds.length) {
+                int oldLength = binds.length;
+                binds = Arrays.copyOf(binds, index);
+                Arrays.fill(binds, oldLength, index, UNCAPTURED);
+            }
+            binds[index - 1] = value;
+        }
+
+        private void finishQuery() {
+            if (queryStart != 0) {
+                long elapsed = System.nanoTime() - queryStart;
+                queryStart = 0;
+                record(sql, queryBinds, elapsed, connection);
+                queryBinds = null;
+            }
+        }
+
+        private void startQuery(long start) {
+            finishQuery();
+            if (streamed) {
+                record(sql, binds, System.nanoTime() - start, connection);
+            } else {
+                queryStart = start;
+                queryBinds = binds;
+            }
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            long start = System.nanoTime();
+            ResultSet rs = statement.executeQuery();
+            startQuery(start);
+            return rs;
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            long start = System.nanoTime();
+            boolean hasResults = statement.execute();
+            startQuery(start);
+            return hasResults;
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            finishQuery();
+            long start = System.nanoTime();
+            int count = statement.executeUpdate();
+            record(sql, binds, System.nanoTime() - start, connection);
+            return count;
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            finishQuery();
+            long start = System.nanoTime();
+            int[] counts = statement.executeBatch();
+            record(sql, null, System.nanoTime() - start, connection);
+            return counts;
+        }
+
+        @Override
+        public void setFetchSize(int rows) throws SQLException {
+            streamed = true;
+            statement.setFetchSize(rows);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.close();
+            } finally {
+                finishQuery();
+            }
+        }
+
+        @Override
+        public void clearParameters() throws SQLException {
+            binds = NO_BINDS;
+            statement.clearParameters();
+        }
+
+        @Override
+        public void setNull(int parameterIndex, int sqlType) throws SQLException {
+            bind(parameterIndex, null);
+            statement.setNull(parameterIndex, sqlType);
+        }
+
+        @Override
+        public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+            bind(parameterIndex, null);
+            statement.setNull(parameterIndex, sqlType, typeName);
+        }
+
+        @Override
+        public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setBoolean(parameterIndex, x);
+        }
+
+        @Override
+        public void setInt(int parameterIndex, int x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setInt(parameterIndex, x);
+        }
+
+        @Override
+        public void setLong(int parameterIndex, long x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setLong(parameterIndex, x);
+        }
+
+        @Override
+        public void setDouble(int parameterIndex, double x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setDouble(parameterIndex, x);
+        }
+
+        @Override
+        public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setBigDecimal(parameterIndex, x);
+        }
+
+        @Override
+        public void setString(int parameterIndex, String x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setString(parameterIndex, x);
+        }
+
+        @Override
+        public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setBytes(parameterIndex, x);
+        }
+
+        @Override
+        public void setObject(int parameterIndex, Object x) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setObject(parameterIndex, x);
+        }
+
+        @Override
+        public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setObject(parameterIndex, x, targetSqlType);
+        }
+
+        @Override
+        public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+            bind(parameterIndex, x);
+            statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        }
+    }
+}
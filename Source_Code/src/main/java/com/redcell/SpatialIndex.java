@@ -0,0 +1,261 @@
+package com.redcell;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory grid index of items placed on the map. Each item lives in the cell of
+ * cellDegrees x cellDegrees that contains its position, so a radius query only looks at
+ * the cells overlapping the circle's bounding box, and a nearest query walks rings of
+ * cells outwards from the centre and stops as soon as no unvisited cell can hold
+ * anything closer than what it already found.
+ *
+ * The grid does not wrap at 180 degrees longitude, which is far from any area RedCell serves.
+ */
+public class SpatialIndex<T> {
+
+    /**
+     * An item found by a query, with its distance from the query's centre
+     */
+    public static final class Hit<T> {
+        private final T item;
+        private final double distanceKm;
+
+        Hit(T item, double distanceKm) {
+            this.item = item;
+            this.distanceKm = distanceKm;
+        }
+
+        public T getItem() { return item; }
+        public double getDistanceKm() { return distanceKm; }
+    }
+
+    private static final Comparator<Hit<?>> NEAREST_FIRST = Comparator.comparingDouble(Hit::getDistanceKm);
+
+    private final double cellDegrees;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, List<T>> cells = new HashMap<>();
+    private final Map<T, GeoPoint> positions = new HashMap<>();
+    // Bounds of every cell ever used; a nearest query never walks past them
+    private int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+    private int minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+
+    /**
+     * @param cellDegrees Cell size; about the radius of a typical query works best
+     */
+    public SpatialIndex(double cellDegrees) {
+        if (!(cellDegrees > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellDegrees);
+        }
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * Adds an item, or moves it if it is already in the index
+     */
+    public void put(T item, GeoPoint position) {
+        lock.writeLock().lock();
+        try {
+            delete(item);
+            int row = row(position.getLatitude());
+            int col = col(position.getLongitude());
+            cells.computeIfAbsent(key(row, col), k -> new ArrayList<>()).add(item);
+            positions.put(item, position);
+            minRow = Math.min(minRow, row);
+            maxRow = Math.max(maxRow, row);
+            minCol = Math.min(minCol, col);
+            maxCol = Math.max(maxCol, col);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(T item) {
+        lock.writeLock().lock();
+        try {
+            delete(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            cells.clear();
+            positions.clear();
+            minRow = minCol = Integer.MAX_VALUE;
+            maxRow = maxCol = Integer.MIN_VALUE;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return positions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The item's position, or null if it is not in the index
+     */
+    public GeoPoint positionOf(T item) {
+        lock.readLock().lock();
+        try {
+            return positions.get(item);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Every item within radiusKm of the centre, nearest first
+     */
+    public List<Hit<T>> within(GeoPoint center, double radiusKm) {
+        List<Hit<T>> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (positions.isEmpty() || radiusKm < 0) {
+                return hits;
+            }
+            double latSpan = radiusKm / GeoPoint.KM_PER_DEGREE;
+            double lonSpan = radiusKm / (GeoPoint.KM_PER_DEGREE * minCosine(center.getLatitude(), latSpan));
+            int fromRow = Math.max(minRow, row(center.getLatitude() - latSpan));
+            int toRow = Math.min(maxRow, row(center.getLatitude() + latSpan));
+            int fromCol = Math.max(minCol, col(center.getLongitude() - lonSpan));
+            int toCol = Math.min(maxCol, col(center.getLongitude() + lonSpan));
+            if ((long) (toRow - fromRow + 1) * (toCol - fromCol + 1) > cells.size()) {
+                // The circle covers more cells than are in use; checking the used ones is cheaper
+                for (List<T> items : cells.values()) {
+                    collect(items, center, radiusKm, hits);
+                }
+            } else {
+                for (int row = fromRow; row <= toRow; row++) {
+                    for (int col = fromCol; col <= toCol; col++) {
+                        List<T> items = cells.get(key(row, col));
+                        if (items != null) {
+                            collect(items, center, radiusKm, hits);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(NEAREST_FIRST);
+        return hits;
+    }
+
+    /**
+     * Finds the items closest to the centre that pass the filter
+     * @param limit Most items to return
+     * @param filter Which items count, e.g. facilities holding stock; called under the index's read lock
+     * @return Up to limit items, nearest first
+     */
+    public List<Hit<T>> nearest(GeoPoint center, int limit, Predicate<? super T> filter) {
+        // Farthest of the best hits so far on top
+        PriorityQueue<Hit<T>> best = new PriorityQueue<>(NEAREST_FIRST.reversed());
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            if (positions.isEmpty()) {
+                return new ArrayList<>();
+            }
+            int row0 = row(center.getLatitude());
+            int col0 = col(center.getLongitude());
+            int lastRing = Math.max(Math.max(row0 - minRow, maxRow - row0), Math.max(col0 - minCol, maxCol - col0));
+            for (int ring = 0; ring <= lastRing; ring++) {
+                for (int row = row0 - ring; row <= row0 + ring; row++) {
+                    // Inner rows of the ring only have its two edge cells
+                    int step = row == row0 - ring || row == row0 + ring ? 1 : Math.max(1, 2 * ring);
+                    for (int col = col0 - ring; col <= col0 + ring; col += step) {
+                        List<T> items = cells.get(key(row, col));
+                        if (items == null) {
+                            continue;
+                        }
+                        for (T item : items) {
+                            if (!filter.test(item)) {
+                                continue;
+                            }
+                            double distance = center.distanceKm(positions.get(item));
+                            if (best.size() < limit) {
+                                best.add(new Hit<>(item, distance));
+                            } else if (distance < best.peek().distanceKm) {
+                                best.poll();
+                                best.add(new Hit<>(item, distance));
+                            }
+                        }
+                    }
+                }
+                // Anything outside this ring is at least `ring` whole cells away
+                if (best.size() == limit && best.peek().distanceKm <= ringDistanceKm(center, ring)) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Hit<T>> hits = new ArrayList<>(best);
+        hits.sort(NEAREST_FIRST);
+        return hits;
+    }
+
+    // Callers hold the write lock
+    private void delete(T item) {
+        GeoPoint old = positions.remove(item);
+        if (old == null) {
+            return;
+        }
+        long key = key(row(old.getLatitude()), col(old.getLongitude()));
+        List<T> items = cells.get(key);
+        items.remove(item);
+        if (items.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    private void collect(List<T> items, GeoPoint center, double radiusKm, List<Hit<T>> hits) {
+        for (T item : items) {
+            double distance = center.distanceKm(positions.get(item));
+            if (distance <= radiusKm) {
+                hits.add(new Hit<>(item, distance));
+            }
+        }
+    }
+
+    // Lower bound on the distance from the centre to any point outside the ring
+    private double ringDistanceKm(GeoPoint center, int ring) {
+        double span = ring * cellDegrees;
+        return span * GeoPoint.KM_PER_DEGREE * minCosine(center.getLatitude(), span + cellDegrees);
+    }
+
+    // Smallest cos(latitude) within latSpan of the latitude, where a degree of longitude is shortest
+    private static double minCosine(double latitude, double latSpan) {
+        double farthest = Math.min(90.0, Math.abs(latitude) + latSpan);
+        return Math.max(Math.cos(Math.toRadians(farthest)), 1e-6);
+    }
+
+    private int row(double latitude) {
+        return (int) Math.floor(latitude / cellDegrees);
+    }
+
+    private int col(double longitude) {
+        return (int) Math.floor(longitude / cellDegrees);
+    }
+
+    private static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+}
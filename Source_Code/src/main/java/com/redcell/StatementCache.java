@@ -0,0 +1,182 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of PreparedStatements keyed by SQL text, owned by one pooled connection.
+ * Callers keep using try-with-resources: closing a cached statement only clears its
+ * parameters so the next prepareStatement() with the same SQL can reuse it.
+ */
+public class StatementCache {
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final Connection connection;
+    private final int capacity;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    // Totals across every connection's cache, for the diagnostics view
+    private static final LongAdder totalHits = Metrics.counter("cache.statement.hits");
+    private static final LongAdder totalMisses = Metrics.counter("cache.statement.misses");
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+        // Access order makes iteration order least-recently-used first
+        this.statements = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    evictions.increment();
+                    eldest.getValue().discard();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a prepared statement for the SQL, reusing a cached one when possible
+     * @param sql The SQL text
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return A statement whose close() hands it back to the cache
+     */
+    public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+            totalHits.increment();
+            cached.inUse = true;
+            return cached.handle();
+        }
+
+        misses.increment();
+        totalMisses.increment();
+        PreparedStatement stmt = connection.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null) {
+            // The same SQL is already open on this connection; hand out an uncached copy
+            return stmt;
+        }
+        CachedStatement created = new CachedStatement(stmt);
+        created.inUse = true;
+        statements.put(key, created);
+        return created.handle();
+    }
+
+    /**
+     * Closes every cached statement, e.g. after the schema has changed.
+     * Statements that are currently checked out are closed when their holder closes them.
+     */
+    public void invalidate() {
+        List<CachedStatement> cachedStatements = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement cached : cachedStatements) {
+            cached.discard();
+        }
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse = false;
+        private boolean discarded = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement handle() {
+            return new Handle(this);
+        }
+
+        void returned() {
+            inUse = false;
+            if (discarded) {
+                closeQuietly();
+                return;
+            }
+            try {
+                statement.clearParameters();
+            } catch (SQLException e) {
+                // A statement that cannot be reset is useless, drop it from the cache
+                discarded = true;
+                closeQuietly();
+            }
+        }
+
+        void discard() {
+            discarded = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    private static class Handle extends DelegatingPreparedStatement {
+        private final CachedStatement cached;
+        private boolean released = false;
+
+        Handle(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        protected PreparedStatement delegate() throws SQLException {
+            if (released) {
+                throw new SQLException("Statement has already been closed");
+            }
+            return cached.statement;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                cached.returned();
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return released || cached.statement.isClosed();
+        }
+    }
+}
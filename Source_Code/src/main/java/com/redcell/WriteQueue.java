@@ -0,0 +1,353 @@
+package com.redcell;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-writer pipeline with group commit.
+ * Callers submit write operations and get a future back. A dedicated writer thread drains
+ * the queue and runs up to maxBatchSize operations in one transaction, waiting at most
+ * maxLingerMillis for more work to arrive, so a burst of donations shares a single commit
+ * instead of paying one fsync each and fighting over the SQLite write lock.
+ * Each operation runs inside its own SAVEPOINT, so one failing operation does not
+ * roll back the rest of its batch.
+ *
+ * Committed batches are handed to a single completer thread, never completed on the writer
+ * thread, so bookkeeping after a commit does not hold up the next batch. The completer runs
+ * each write's after-commit callback and then completes its future, batch by batch in commit
+ * order, so index updates and events made there see the writes in the order they were
+ * committed. Callbacks run on the completer must not wait for another write, which only
+ * the completer could finish.
+ */
+public class WriteQueue {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    // Batches already form from writes that queue up while the previous batch commits.
+    // Lingering only adds latency with synchronous=NORMAL, so it is off unless configured.
+    public static final long DEFAULT_MAX_LINGER_MS = 0;
+
+    /**
+     * A unit of work run on the writer connection inside the current batch transaction
+     */
+    @FunctionalInterface
+    public interface WriteOperation {
+        /**
+         * @return true if the operation succeeded; false rolls back just this operation
+         */
+        boolean apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Bookkeeping for a write once its batch has finished, e.g. updating an in-memory index
+     */
+    @FunctionalInterface
+    public interface AfterCommit {
+        /**
+         * @param success Whether the operation succeeded and its batch committed
+         */
+        void accept(boolean success);
+    }
+
+    private static final class PendingWrite {
+        private final String name;
+        private final WriteOperation operation;
+        private final AfterCommit afterCommit;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final long enqueuedNanos = System.nanoTime();
+
+        PendingWrite(String name, WriteOperation operation, AfterCommit afterCommit) {
+            this.name = name;
+            this.operation = operation;
+            this.afterCommit = afterCommit;
+        }
+    }
+
+    // Marks the end of the queue during shutdown
+    private static final PendingWrite POISON = new PendingWrite("shutdown", conn -> true, null);
+
+    private final ConnectionPool pool;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    // Completes the futures of committed batches in commit order, one task per batch
+    private final ExecutorService completer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "redcell-write-completer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running = true;
+
+    // Batch metrics
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder operationCount = new LongAdder();
+    private final LongAdder failedOperationCount = new LongAdder();
+    private final LongAdder totalBatchNanos = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final LatencyHistogram batchTimer = Metrics.timer("writeQueue.batch");
+    private volatile int lastBatchSize;
+    private volatile double lastBatchMillis;
+
+    public WriteQueue(ConnectionPool pool, int maxBatchSize, long maxLingerMillis) {
+        this.pool = pool;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLingerMillis));
+        this.writerThread = new Thread(this::runWriter, "redcell-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a write operation
+     * @param name Short name used in log messages, e.g. "createDonation"
+     * @param operation The work to run on the writer connection
+     * @return A future completed with the operation's result once its batch has committed
+     */
+    public CompletableFuture<Boolean> submit(String name, WriteOperation operation) {
+        return submit(name, operation, null);
+    }
+
+    /**
+     * Queues a write operation with bookkeeping to run once its batch has finished
+     * @param afterCommit Run on the completer thread before the future completes, in commit
+     *                    order with the callbacks of other writes (may be null)
+     * @return A future completed with the operation's result after afterCommit has run
+     */
+    public CompletableFuture<Boolean> submit(String name, WriteOperation operation, AfterCommit afterCommit) {
+        PendingWrite write = new PendingWrite(name, operation, afterCommit);
+        if (!running) {
+            write.result.completeExceptionally(new IllegalStateException("Write queue has been shut down"));
+            return write.result;
+        }
+        queue.add(write);
+        return write.result;
+    }
+
+    /**
+     * Stops accepting writes, commits everything already queued and stops the writer thread
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        queue.add(POISON);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Batches already handed to the completer still complete
+        completer.shutdown();
+    }
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                PendingWrite first = queue.take();
+                if (first == POISON) {
+                    break;
+                }
+                batch.add(first);
+
+                // Linger briefly so writes arriving together share one commit
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == POISON) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commitBatch(batch);
+            } catch (InterruptedException e) {
+                stopping = true;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Anything still queued after shutdown can no longer be written
+        PendingWrite leftover;
+        while ((leftover = queue.poll()) != null) {
+            if (leftover != POISON) {
+                leftover.result.completeExceptionally(new IllegalStateException("Write queue has been shut down"));
+            }
+        }
+    }
+
+    private void commitBatch(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        boolean[] results = new boolean[batch.size()];
+
+        try (Connection conn = pool.acquireWriter();
+             Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < batch.size(); i++) {
+                results[i] = applyWithSavepoint(conn, stmt, batch.get(i));
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            // The whole transaction was lost, so no operation in the batch took effect
+            System.out.println("Error committing write batch: " + e.getMessage());
+            for (int i = 0; i < results.length; i++) {
+                results[i] = false;
+            }
+        }
+
+        long finished = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingWrite write = batch.get(i);
+            long latency = finished - write.enqueuedNanos;
+            totalLatencyNanos.add(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            if (!results[i]) {
+                failedOperationCount.increment();
+            }
+        }
+        // The batch list is reused for the next batch
+        List<PendingWrite> committed = new ArrayList<>(batch);
+        Runnable complete = () -> {
+            for (int i = 0; i < committed.size(); i++) {
+                complete(committed.get(i), results[i]);
+            }
+        };
+        try {
+            completer.execute(complete);
+        } catch (RejectedExecutionException e) {
+            // Shutdown gave up waiting for the writer; complete here rather than never
+            complete.run();
+        }
+
+        batchCount.increment();
+        operationCount.add(batch.size());
+        totalBatchNanos.add(finished - start);
+        batchTimer.record(finished - start);
+        lastBatchSize = batch.size();
+        lastBatchMillis = (finished - start) / 1_000_000.0;
+    }
+
+    private static void complete(PendingWrite write, boolean success) {
+        if (write.afterCommit != null) {
+            // Errors too, or the caller would wait on a future that never completes
+            try {
+                write.afterCommit.accept(success);
+            } catch (Throwable e) {
+                System.out.println("Error after " + write.name + ": " + e);
+                write.result.completeExceptionally(e);
+                return;
+            }
+        }
+        write.result.complete(success);
+    }
+
+    private boolean applyWithSavepoint(Connection conn, Statement stmt, PendingWrite write) throws SQLException {
+        ChangeCapture capture = pool.getChangeCapture();
+        int captured = capture == null ? 0 : capture.mark();
+        stmt.execute("SAVEPOINT write_op;");
+        boolean success;
+        try {
+            success = write.operation.apply(conn);
+        } catch (SQLException | RuntimeException e) {
+            System.out.println("Error in " + write.name + ": " + e.getMessage());
+            success = false;
+        }
+        if (!success) {
+            stmt.execute("ROLLBACK TO write_op;");
+            if (capture != null) {
+                capture.rollbackTo(captured);
+            }
+        }
+        stmt.execute("RELEASE write_op;");
+        return success;
+    }
+
+    // ==================== STATISTICS ====================
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getOperationCount() {
+        return operationCount.sum();
+    }
+
+    public long getFailedOperationCount() {
+        return failedOperationCount.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : (double) operationCount.sum() / batches;
+    }
+
+    public double getAverageBatchMillis() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : totalBatchNanos.sum() / 1_000_000.0 / batches;
+    }
+
+    /**
+     * @return Average time from submit() until the operation's batch committed
+     */
+    public double getAverageLatencyMillis() {
+        long operations = operationCount.sum();
+        return operations == 0 ? 0 : totalLatencyNanos.sum() / 1_000_000.0 / operations;
+    }
+
+    public double getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return Operations committed per second of writer time
+     */
+    public double getThroughputPerSecond() {
+        long nanos = totalBatchNanos.sum();
+        return nanos == 0 ? 0 : operationCount.sum() * 1_000_000_000.0 / nanos;
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public double getLastBatchMillis() {
+        return lastBatchMillis;
+    }
+
+    public String describeStats() {
+        return String.format("batches=%d, ops=%d, failed=%d, avgBatch=%.1f ops / %.3f ms, "
+                + "avgLatency=%.3f ms, maxLatency=%.3f ms, throughput=%.0f ops/s, queued=%d",
+                getBatchCount(), getOperationCount(), getFailedOperationCount(),
+                getAverageBatchSize(), getAverageBatchMillis(),
+                getAverageLatencyMillis(), getMaxLatencyMillis(),
+                getThroughputPerSecond(), getQueueDepth());
+    }
+}
@@ -1,7 +1,12 @@
 -- RedCell Database Update Script
 -- This script implements the changes recommended in dbplan.md
+--
+-- Reference copy only: the application applies these steps through SchemaMigrator,
+-- which records the applied version in PRAGMA user_version and skips all DDL on a
+-- current database. Migration 1 (base tables) lives in SchemaMigrator only.
+-- New changes must be added as the next migration in SchemaMigrator and listed here.
 
--- 1. Create junction table for donations and requests
+-- Migration 2: Create junction table for donations and requests
 CREATE TABLE IF NOT EXISTS donation_requests (
     id INTEGER PRIMARY KEY AUTOINCREMENT,
     donation_id INTEGER NOT NULL,
@@ -12,7 +17,7 @@ CREATE TABLE IF NOT EXISTS donation_requests (
     FOREIGN KEY (request_id) REFERENCES requests(id)
 );
 
--- 2. Create inventory table
+-- Migration 3: Create inventory table
 CREATE TABLE IF NOT EXISTS inventory (
     id INTEGER PRIMARY KEY AUTOINCREMENT,
     facility_id INTEGER NOT NULL,
@@ -23,21 +28,21 @@ CREATE TABLE IF NOT EXISTS inventory (
     FOREIGN KEY (facility_id) REFERENCES facilities(id)
 );
 
--- 3. Add missing fields to users table
+-- Migration 4: Add missing fields to users table
 ALTER TABLE users ADD COLUMN name TEXT;
 ALTER TABLE users ADD COLUMN area TEXT;
 
--- 4. Add status field to donations table
+-- Migration 5: Add status field to donations table
 ALTER TABLE donations ADD COLUMN status TEXT NOT NULL DEFAULT 'APPROVED';
 
--- 5. Add missing fields to requests table
+-- Migration 6: Add missing fields to requests table
 ALTER TABLE requests ADD COLUMN patient_condition TEXT;
 ALTER TABLE requests ADD COLUMN time TEXT;
 ALTER TABLE requests ADD COLUMN contact TEXT;
 ALTER TABLE requests ADD COLUMN created_by TEXT;
 ALTER TABLE requests ADD COLUMN date TEXT;
 
--- 6. Create indexes for performance
+-- Migration 7: Create indexes for performance
 
 -- Indexes for foreign keys
 CREATE INDEX IF NOT EXISTS idx_donors_user_id ON donors(user_id);
@@ -52,4 +57,137 @@ CREATE INDEX IF NOT EXISTS idx_inventory_facility_id ON inventory(facility_id);
 CREATE INDEX IF NOT EXISTS idx_donations_blood_type ON donations(blood_type);
 CREATE INDEX IF NOT EXISTS idx_requests_blood_type ON requests(blood_type);
 CREATE INDEX IF NOT EXISTS idx_requests_status ON requests(status);
-CREATE INDEX IF NOT EXISTS idx_inventory_blood_type ON inventory(blood_type);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_inventory_blood_type ON inventory(blood_type);
+
+-- Migration 8: Composite index for the keyset-paginated pending request feed
+CREATE INDEX IF NOT EXISTS idx_requests_status_date_id ON requests(status, date, id);
+DROP INDEX IF EXISTS idx_requests_status;
+
+-- Migration 9: Full-text search index for requests, kept in sync by triggers
+CREATE VIRTUAL TABLE IF NOT EXISTS requests_fts USING fts5(
+    patient_condition, facility_name, location, contact,
+    content='', contentless_delete=1,
+    tokenize='unicode61 remove_diacritics 2', prefix='2 3'
+);
+INSERT INTO requests_fts (requests_fts, rank) VALUES ('rank', 'bm25(4.0, 2.0, 1.0, 0.5)');
+INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)
+SELECT r.id, r.patient_condition, f.name, f.location, r.contact
+FROM requests r LEFT JOIN facilities f ON r.facility_id = f.id;
+
+CREATE TRIGGER IF NOT EXISTS requests_fts_insert AFTER INSERT ON requests BEGIN
+    INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)
+    SELECT new.id, new.patient_condition, f.name, f.location, new.contact
+    FROM (SELECT 1) LEFT JOIN facilities f ON f.id = new.facility_id;
+END;
+
+CREATE TRIGGER IF NOT EXISTS requests_fts_update
+AFTER UPDATE OF patient_condition, contact, facility_id ON requests BEGIN
+    DELETE FROM requests_fts WHERE rowid = old.id;
+    INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)
+    SELECT new.id, new.patient_condition, f.name, f.location, new.contact
+    FROM (SELECT 1) LEFT JOIN facilities f ON f.id = new.facility_id;
+END;
+
+CREATE TRIGGER IF NOT EXISTS requests_fts_delete AFTER DELETE ON requests BEGIN
+    DELETE FROM requests_fts WHERE rowid = old.id;
+END;
+
+CREATE TRIGGER IF NOT EXISTS facilities_fts_update
+AFTER UPDATE OF name, location ON facilities BEGIN
+    DELETE FROM requests_fts WHERE rowid IN (SELECT id FROM requests WHERE facility_id = new.id);
+    INSERT INTO requests_fts (rowid, patient_condition, facility_name, location, contact)
+    SELECT r.id, r.patient_condition, new.name, new.location, r.contact
+    FROM requests r WHERE r.facility_id = new.id;
+END;
+
+-- Migration 10: Per facility and day counters for the facility dashboard, maintained by triggers.
+-- Each request is counted on its own date ('' when it has none), so a change or delete corrects the day it was counted on
+CREATE TABLE IF NOT EXISTS facility_daily_stats (
+    facility_id INTEGER NOT NULL,
+    day TEXT NOT NULL,
+    requests INTEGER NOT NULL DEFAULT 0,
+    completions INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (facility_id, day),
+    FOREIGN KEY (facility_id) REFERENCES facilities(id)
+) WITHOUT ROWID;
+
+DELETE FROM facility_daily_stats;
+INSERT INTO facility_daily_stats (facility_id, day, requests, completions)
+SELECT facility_id, COALESCE(date, ''), COUNT(*), SUM(status = 'Completed')
+FROM requests GROUP BY 1, 2;
+
+CREATE TRIGGER IF NOT EXISTS facility_stats_request_insert AFTER INSERT ON requests BEGIN
+    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)
+    VALUES (new.facility_id, COALESCE(new.date, ''), 1, new.status = 'Completed')
+    ON CONFLICT (facility_id, day) DO UPDATE SET
+        requests = requests + excluded.requests, completions = completions + excluded.completions;
+END;
+
+CREATE TRIGGER IF NOT EXISTS facility_stats_request_update AFTER UPDATE OF status, date, facility_id ON requests
+WHEN (old.status = 'Completed') <> (new.status = 'Completed')
+    OR old.date IS NOT new.date OR old.facility_id IS NOT new.facility_id BEGIN
+    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)
+    VALUES (old.facility_id, COALESCE(old.date, ''), -1, -(old.status = 'Completed'))
+    ON CONFLICT (facility_id, day) DO UPDATE SET
+        requests = requests + excluded.requests, completions = completions + excluded.completions;
+    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)
+    VALUES (new.facility_id, COALESCE(new.date, ''), 1, new.status = 'Completed')
+    ON CONFLICT (facility_id, day) DO UPDATE SET
+        requests = requests + excluded.requests, completions = completions + excluded.completions;
+END;
+
+CREATE TRIGGER IF NOT EXISTS facility_stats_request_delete AFTER DELETE ON requests BEGIN
+    INSERT INTO facility_daily_stats (facility_id, day, requests, completions)
+    VALUES (old.facility_id, COALESCE(old.date, ''), -1, -(old.status = 'Completed'))
+    ON CONFLICT (facility_id, day) DO UPDATE SET
+        requests = requests + excluded.requests, completions = completions + excluded.completions;
+END;
+
+-- Migration 11: Append-only inventory ledger with per-facility snapshots
+CREATE TABLE IF NOT EXISTS inventory_movements (
+    id INTEGER PRIMARY KEY AUTOINCREMENT,
+    facility_id INTEGER NOT NULL,
+    blood_type TEXT NOT NULL,
+    component_type TEXT NOT NULL,
+    quantity INTEGER NOT NULL,
+    kind TEXT NOT NULL,
+    reference TEXT,
+    created_at TEXT NOT NULL DEFAULT (datetime('now', 'localtime')),
+    FOREIGN KEY (facility_id) REFERENCES facilities(id)
+);
+CREATE INDEX IF NOT EXISTS idx_inventory_movements_facility_id_id ON inventory_movements(facility_id, id);
+
+CREATE TABLE IF NOT EXISTS inventory_snapshots (
+    facility_id INTEGER NOT NULL,
+    movement_id INTEGER NOT NULL,
+    blood_type TEXT NOT NULL,
+    component_type TEXT NOT NULL,
+    quantity INTEGER NOT NULL,
+    PRIMARY KEY (facility_id, movement_id, blood_type, component_type),
+    FOREIGN KEY (facility_id) REFERENCES facilities(id)
+) WITHOUT ROWID;
+
+-- Opening balances from the existing inventory lots, then a first snapshot per facility
+INSERT INTO inventory_movements (facility_id, blood_type, component_type, quantity, kind, reference)
+SELECT facility_id, blood_type, component_type, CAST(quantity AS INTEGER), 'ADJUSTMENT', 'inventory lot ' || id
+FROM inventory WHERE id > 0 ORDER BY id;
+INSERT OR IGNORE INTO inventory_snapshots (facility_id, movement_id, blood_type, component_type, quantity)
+SELECT m.facility_id, l.last_id, m.blood_type, m.component_type, SUM(m.quantity)
+FROM inventory_movements m
+JOIN (SELECT facility_id, MAX(id) AS last_id FROM inventory_movements GROUP BY facility_id) l
+    ON l.facility_id = m.facility_id
+GROUP BY m.facility_id, m.blood_type, m.component_type;
+
+-- Migration 12: Donor block status and donation component for the eligibility engine
+ALTER TABLE donors ADD COLUMN status TEXT;
+ALTER TABLE donations ADD COLUMN component_type TEXT NOT NULL DEFAULT 'Whole Blood';
+CREATE INDEX IF NOT EXISTS idx_donations_donor_component_date ON donations(donor_id, component_type, date, status);
+
+-- Migration 13: Per-table versions, bumped by each transaction that changes the table,
+-- so RedCell instances sharing this file can tell which tables another one wrote
+CREATE TABLE IF NOT EXISTS table_versions (
+    table_name TEXT PRIMARY KEY,
+    version INTEGER NOT NULL DEFAULT 0
+) WITHOUT ROWID;
+INSERT OR IGNORE INTO table_versions (table_name) VALUES
+    ('requests'), ('donations'), ('inventory'), ('users'), ('donors'), ('facilities');